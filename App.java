@@ -1,8 +1,10 @@
 
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
+import javafx.geometry.Side;
 import javafx.scene.Scene;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
@@ -12,11 +14,18 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import Controlador.Arranque;
+import Controlador.CargadorAsincrono;
 import Controlador.SQLite;
 import Controlador.Sesion;
+import Controlador.TiemposPantalla;
 import Controlador.Control;
+import Controlador.GestorEscenas;
 import Controlador.GestorTile;
+import Controlador.IndiceNombres;
 import Modelo.Jugador;
 import Modelo.Puntuacion;
 import Modelo.Escenario;
@@ -36,10 +45,18 @@ public class App extends Application {
     private static Stage primeraEsc;
     private static String nombreJugadorActual = null;
     private static Jugador jugadorActual = null;
+    private static CargadorAsincrono cargasPantalla = null;
+    private static Arranque arranque;
+    private static final GestorEscenas escenas = new GestorEscenas();
 
     private static final String DIRECTORIO_ESCENARIOS = "escenarios";
     private static final String DIRECTORIO_JUGADORES = "jugadores";
     private static final String DIRECTORIO_PARTIDAS = "partidas";
+    private static final int SUGERENCIAS_NOMBRE = 8;
+    private static final String[] ESCENARIOS_POR_DEFECTO = {"nivel_default0.txt", "nivel_default1.txt", "nivel_default2.txt", "nivel_default3.txt"};
+    private static final String PANTALLA_INICIO = "PantallaDeInicio";
+    private static final String PANTALLA_REGISTRO = "RegistroJugador";
+    private static final String PANTALLA_JUEGO = "PantallaDeJuego";
     private static final String[] DIRECTORIOS_NECESARIOS = {DIRECTORIO_ESCENARIOS, DIRECTORIO_JUGADORES, DIRECTORIO_PARTIDAS};
 
     /**
@@ -50,9 +67,27 @@ public class App extends Application {
     public void init() throws Exception {
         super.init();
         System.out.println("Ejecutando App.init()...");
-        crearDirectoriosSiNoExisten();
-        SQLite.inicializarBaseDatos();
-        for (int i = 0; i < 4; i++) Sesion.crearEscenarios(i);
+        // Solo se espera a lo que necesita el dialogo de inicio; el resto se calienta mientras se escribe el nombre
+        arranque = new Arranque()
+                .fase("directorios", App::crearDirectoriosSiNoExisten)
+                .fase("baseDatos", SQLite::inicializarBaseDatos)
+                .fase("atlas", GestorTile::getAtlas)
+                // El dialogo autocompleta con el indice y busca el nombre en la cache
+                .fase("jugadores", () -> {
+                    Sesion.getIndiceNombres();
+                    Sesion.getCacheJugadores();
+                }, "directorios")
+                .fase("clasificacion", () -> {
+                    if (SQLite.getClasificacion().calentar()) SQLite.getClasificacion().comprobar();
+                }, "baseDatos")
+                .fase("escenarios", () -> {for (int i = 0; i < ESCENARIOS_POR_DEFECTO.length; i++) Sesion.crearEscenarios(i);}, "directorios")
+                .fase("niveles", () -> {
+                    Sesion.compilarEscenarios();
+                    Sesion.precargarEscenarios(ESCENARIOS_POR_DEFECTO).join();
+                }, "escenarios")
+                .fase("pantallas", App::precargarPantallas);
+        arranque.ejecutar();
+        arranque.esperar("jugadores", "baseDatos");
         System.out.println("App.init() completado.");
     }
 
@@ -72,6 +107,9 @@ public class App extends Application {
         dialogoNombre.setTitle("Inicio de Sesión");
         dialogoNombre.setHeaderText("Introduce tu nombre de jugador:");
         dialogoNombre.setContentText("Nombre:");
+        IndiceNombres indice = Sesion.getIndiceNombres();
+        if (indice != null) autocompletar(dialogoNombre.getEditor(), indice);
+        dialogoNombre.setOnShown(_ -> TiemposPantalla.registrar("Arranque", TiemposPantalla.PRIMERA_INTERACTIVA, System.nanoTime() - arranque.getInicioNanos()));
 
         Optional<String> resultado = dialogoNombre.showAndWait();
 
@@ -93,30 +131,36 @@ public class App extends Application {
         }
 
         primeraEsc.setOnCloseRequest(_ -> {
-            Scene escesnaActual = primeraEsc.getScene();
-            if (escesnaActual != null && escesnaActual.getUserData() instanceof PantallaDeJuego)
-                ((PantallaDeJuego) escesnaActual.getUserData()).paraJuego();
+            escenas.ocultarActual();
+            if (cargasPantalla != null) cargasPantalla.cancelar();
+            System.out.print("Tiempos de pantalla:\n" + TiemposPantalla.resumen());
+            System.out.println("Clasificacion en memoria: " + SQLite.getClasificacion().resumen());
+            SQLite.cerrar();
+            Sesion.cerrar();
             System.out.println("Cerrando aplicación.");
         });
     }
 
+    /**
+     * Se ejecuta al terminar la aplicacion, aunque no se cierre con la ventana
+     * Metodo soobrescrito de Application
+     */
+    @Override
+    public void stop() throws Exception {
+        SQLite.cerrar();
+        Sesion.cerrar();
+        super.stop();
+    }
+
     /**
      * Muestra la pantalla inicial con un boton de inicio y una tabla
      */
     public static void mostrarPantallaDeInicio() {
-        String rutaFXML = "/Escenas/PantallaDeInicio.fxml";
         try {
-            System.out.println("Cargando " + rutaFXML + "...");
-            URL fxmlUrl = App.class.getResource(rutaFXML);
-            if (fxmlUrl == null) fxmlUrl = App.class.getResource("Escenas/PantallaDeInicio.fxml");
-
-            if (fxmlUrl == null) {throw new IOException("FXML no encontrado: " + rutaFXML);}
-
-            FXMLLoader cargar = new FXMLLoader(fxmlUrl);
-            Parent raiz = cargar.load();
-            Scene escena = new Scene(raiz);
+            CargadorAsincrono cargas = nuevasCargas(PANTALLA_INICIO);
+            escenas.mostrar(primeraEsc, PANTALLA_INICIO, recursoEscena(PANTALLA_INICIO));
             primeraEsc.setTitle("Mejores Puntuaciones");
-            primeraEsc.setScene(escena);
+            medirPrimerPintado(primeraEsc.getScene(), cargas);
             System.out.println("Mostrando PantallaDeInicio.");
             primeraEsc.show();
         } catch (Exception e) {mostrarError("Error al cargar la pantalla de inicio", e);}
@@ -126,31 +170,13 @@ public class App extends Application {
      * Muestra pantalla de registro en caso de no exista el usuario o archivo
      */
     public static void mostrarPantallaRegistro() {
-        String rutaFXML = "/Escenas/RegistroJugador.fxml";
         try {
-            System.out.println("Intentando cargar FXML: " + rutaFXML);
-            URL fxmlUrl = App.class.getResource(rutaFXML);
-            if (fxmlUrl == null) fxmlUrl = App.class.getResource("Escenas/RegistroJugador.fxml");
-            if (fxmlUrl == null) {throw new IOException("No se pudo encontrar FXML: " + rutaFXML);}
-
-            System.out.println("URL del FXML encontrada: " + fxmlUrl);
-            FXMLLoader cargar = new FXMLLoader(fxmlUrl);
-            Parent raiz = cargar.load();
-            System.out.println("FXML de Registro cargado.");
-
-            RegistroJugadorController controlador = cargar.getController();
-            if (controlador != null) {
-                System.out.println("Controlador RegistroJugadorController obtenido.");
-                controlador.setNombreInicial(nombreJugadorActual);
-            } else
-                System.err.println("Advertencia: Controlador RegistroJugadorController es null.");
-
-            Scene escena = new Scene(raiz);
+            CargadorAsincrono cargas = nuevasCargas(PANTALLA_REGISTRO);
+            escenas.mostrar(primeraEsc, PANTALLA_REGISTRO, recursoEscena(PANTALLA_REGISTRO));
             primeraEsc.setTitle("Registrar Nuevo Jugador");
-            primeraEsc.setScene(escena);
+            medirPrimerPintado(primeraEsc.getScene(), cargas);
             System.out.println("Escena de Registro establecida.");
             primeraEsc.show();
-
         } catch (Exception e) {mostrarError("Error al mostrar la pantalla de registro", e);}
     }
 
@@ -158,37 +184,108 @@ public class App extends Application {
      * La pantalla principal con un GridPane y un textArea
      */
     public static void mostrarPantallaDeJuego() {
-        String rutaFXML = "/Escenas/PantallaDeJuego.fxml";
         try {
-            System.out.println("Cargando " + rutaFXML + "...");
-            URL fxmlUrl = App.class.getResource(rutaFXML);
-            if (fxmlUrl == null) {throw new IOException("FXML no encontrado: " + rutaFXML);}
-
-            FXMLLoader cargar = new FXMLLoader(fxmlUrl);
-            Parent raiz = cargar.load();
-            PantallaDeJuego control = cargar.getController();
-
+            CargadorAsincrono cargas = nuevasCargas(PANTALLA_JUEGO);
+            PantallaDeJuego control = escenas.mostrar(primeraEsc, PANTALLA_JUEGO, recursoEscena(PANTALLA_JUEGO));
             if (control == null) {
                 System.err.println("Error crítico: Controlador de PantallaDeJuego no encontrado.");
                 mostrarError("Error interno al iniciar el juego (controlador nulo).", null);
                 return;
             }
-            System.out.println("Controlador PantallaDeJuego obtenido.");
+            primeraEsc.setTitle("Juego - " + (jugadorActual != null ? jugadorActual.getNombre() : "Invitado"));
+            medirPrimerPintado(primeraEsc.getScene(), cargas);
+            System.out.println("Mostrando PantallaDeJuego.");
+        } catch (Exception e) {mostrarError("Error al cargar la pantalla de juego", e);}
+    }
 
-            Scene escena = new Scene(raiz);
+    /**
+     * Analiza los FXML de las tres pantallas para que el primer cambio a cada una ya no los lea
+     */
+    private static void precargarPantallas() {
+        for (String pantalla : new String[] {PANTALLA_INICIO, PANTALLA_REGISTRO, PANTALLA_JUEGO})
+            escenas.precargar(pantalla, recursoEscena(pantalla)).exceptionally(e -> {
+                System.err.println("No se pudo precargar " + pantalla + ": " + e.getCause());
+                return null;
+            }).join();
+    }
 
-            primeraEsc.setScene(escena);
-            primeraEsc.setTitle("Juego - " + (jugadorActual != null ? jugadorActual.getNombre() : "Invitado"));
-            System.out.println("Escena de Juego establecida.");
+    /**
+     * Ubicacion del FXML de una pantalla
+     *
+     * @param pantalla Nombre de la pantalla, el del archivo sin extension
+     * @return URL del FXML, o null si no esta
+     */
+    private static URL recursoEscena(String pantalla) {
+        URL fxmlUrl = App.class.getResource("/Escenas/" + pantalla + ".fxml");
+        return (fxmlUrl != null) ? fxmlUrl : App.class.getResource("Escenas/" + pantalla + ".fxml");
+    }
 
-            control.setCapInp(escena);
-            escena.setUserData(control);
+    /**
+     * Muestra bajo un campo los nombres de jugador que empiezan por lo escrito
+     *
+     * @param campo Campo del nombre
+     * @param indice Indice de nombres
+     */
+    private static void autocompletar(TextField campo, IndiceNombres indice) {
+        ContextMenu sugerencias = new ContextMenu();
+        campo.textProperty().addListener((obs, antes, texto) -> {
+            String prefijo = (texto != null) ? texto.trim() : "";
+            List<String> encontrados = prefijo.isEmpty() ? List.of() : indice.buscar(prefijo, SUGERENCIAS_NOMBRE);
+            if (encontrados.isEmpty() || (encontrados.size() == 1 && encontrados.get(0).equals(prefijo))) {
+                sugerencias.hide();
+                return;
+            }
+            List<MenuItem> opciones = new ArrayList<>(encontrados.size());
+            for (String nombre : encontrados) {
+                MenuItem opcion = new MenuItem(nombre);
+                opcion.setMnemonicParsing(false);
+                opcion.setOnAction(_ -> {
+                    campo.setText(nombre);
+                    campo.positionCaret(nombre.length());
+                });
+                opciones.add(opcion);
+            }
+            sugerencias.getItems().setAll(opciones);
+            if (!sugerencias.isShowing() && campo.getScene() != null) sugerencias.show(campo, Side.BOTTOM, 0, 0);
+        });
+        campo.focusedProperty().addListener((obs, antes, enfocado) -> {if (!enfocado) sugerencias.hide();});
+    }
 
-            System.out.println("Mostrando PantallaDeJuego.");
+    /**
+     * Cancela las cargas de la pantalla que se deja y prepara las de la nueva
+     *
+     * @param pantalla Nombre de la nueva pantalla
+     * @return Cargador de la nueva pantalla
+     */
+    private static CargadorAsincrono nuevasCargas(String pantalla) {
+        if (cargasPantalla != null) cargasPantalla.cancelar();
+        cargasPantalla = new CargadorAsincrono(pantalla);
+        return cargasPantalla;
+    }
 
-        } catch (Exception e) {mostrarError("Error al cargar la pantalla de juego", e);}
+    /**
+     * Apunta el tiempo hasta el primer pulso de la escena, el que la pinta por primera vez
+     *
+     * @param escena Escena nueva
+     * @param cargas Cargador de la pantalla, que tiene la hora de la navegacion
+     */
+    private static void medirPrimerPintado(Scene escena, CargadorAsincrono cargas) {
+        Runnable[] oyente = new Runnable[1];
+        oyente[0] = () -> {
+            escena.removePostLayoutPulseListener(oyente[0]);
+            TiemposPantalla.registrar(cargas.getPantalla(), TiemposPantalla.PRIMER_PINTADO, System.nanoTime() - cargas.getInicioNanos());
+        };
+        escena.addPostLayoutPulseListener(oyente[0]);
     }
 
+    /**
+     * Getter de las cargas de la pantalla actual
+     * Los controladores lanzan con el su E/S para no bloquear el hilo de JavaFX
+     *
+     * @return Cargador de la pantalla que se esta mostrando
+     */
+    public static CargadorAsincrono getCargas() {return cargasPantalla;}
+
     /**
      * Getter del nombre del jugador actual
      * 
@@ -0,0 +1,559 @@
+package Controlador;
+
+import Modelo.Jugador;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+/**
+ * Almacen de jugadores en un solo archivo de solo anadir
+ *
+ * Cabecera (big-endian): magia "JUGS" y version del archivo. Despues van los
+ * registros: longitud, datos y CRC32C de los datos. Los datos empiezan por
+ * su propia version y luego nombre, email, fila, columna y puntos. Guardar un
+ * jugador anade un registro nuevo; el ultimo de cada nombre es el valido.
+ *
+ * En memoria solo esta el indice nombre -> posicion, que se rehace al abrir
+ * recorriendo el archivo. Si el ultimo registro quedo a medias (corte de luz
+ * durante una escritura) no pasa el CRC y el archivo se trunca ahi, asi que
+ * un jugador tiene siempre su version anterior o la nueva completa. Solo se
+ * trunca una cola rota: un registro malo detras del cual no queda ninguno
+ * bueno. Si detras hay registros buenos el archivo no se toca y el almacen
+ * no se abre.
+ *
+ * El archivo se bloquea (FileLock) mientras esta abierto, para que dos
+ * instancias del juego no anadan registros a la vez.
+ *
+ * Cuando los registros sustituidos ocupan mas de la mitad del archivo se
+ * compacta: se copian los vigentes a un temporal que se renombra encima.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class AlmacenJugadores {
+
+    /** "JUGS" en ASCII. */
+    public static final int MAGIA = 0x4A554753;
+    public static final short VERSION = 1;
+    public static final String NOMBRE_ARCHIVO = "jugadores.alm";
+
+    private static final byte VERSION_REGISTRO = 1;
+    private static final int TAMANO_CABECERA = 4 + 2;
+    private static final int TAMANO_MAXIMO_REGISTRO = 1 << 20;
+    private static final long MINIMO_PARA_COMPACTAR = 64 * 1024;
+    private static final String DIRECTORIO_MIGRADOS = "migrados";
+
+    private final Path carpeta;
+    private final Path ruta;
+    private FileChannel canal;
+    // Identidad del archivo abierto, para saber si otro proceso lo sustituyo
+    private Object claveArchivo;
+    private final Map<String, Long> indice = new HashMap<>();
+    private long fin;
+    private long bytesMuertos = 0;
+
+    private long compactaciones = 0;
+    private long escrituras = 0;
+    private long lecturas = 0;
+    private long cambiosExternos = 0;
+
+    /**
+     * Abre (o crea) el almacen de una carpeta, migra los .dat que haya y rehace el indice
+     *
+     * @param carpeta Carpeta de jugadores
+     * @throws IOException Error al abrir o crear el archivo
+     */
+    public AlmacenJugadores(Path carpeta) throws IOException {
+        Files.createDirectories(carpeta);
+        this.carpeta = carpeta;
+        this.ruta = carpeta.resolve(NOMBRE_ARCHIVO);
+        abrir();
+        migrarDat();
+    }
+
+    /**
+     * Guarda un jugador, sustituyendo el registro anterior con su nombre
+     *
+     * @param jugador Jugador a guardar
+     * @return true si quedo escrito en disco
+     */
+    public synchronized boolean guardar(Jugador jugador) {
+        try {
+            escribir(jugador);
+            canal.force(false);
+            escrituras++;
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar el jugador '" + jugador.getNombre() + "': " + e.getMessage());
+            return false;
+        }
+        // El jugador ya esta en disco; si compactar falla el archivo sigue valiendo tal cual
+        if (fin > MINIMO_PARA_COMPACTAR && bytesMuertos * 2 > fin) {
+            try {compactar();}
+            catch (IOException e) {System.err.println("No se pudo compactar " + ruta + ": " + e.getMessage());}
+        }
+        return true;
+    }
+
+    /**
+     * Carga un jugador por su nombre
+     *
+     * @param nombre Nombre del jugador
+     * @return El jugador, o null si no existe o no se puede leer
+     */
+    public synchronized Jugador cargar(String nombre) {
+        Long posicion = indice.get(nombre);
+        if (posicion == null) return null;
+        try {
+            lecturas++;
+            return decodificar(leerRegistro(posicion));
+        } catch (IOException e) {
+            System.err.println("No se pudo leer el jugador '" + nombre + "': " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Comprueba si hay un jugador con ese nombre
+     *
+     * @param nombre Nombre del jugador
+     * @return true si esta en el indice
+     */
+    public synchronized boolean contiene(String nombre) {return indice.containsKey(nombre);}
+
+    /**
+     * Nombres de todos los jugadores guardados
+     *
+     * @return Copia de los nombres del indice
+     */
+    public synchronized List<String> nombres() {return new ArrayList<>(indice.keySet());}
+
+    /**
+     * Comprueba si el archivo cambio sin pasar por este almacen (otro
+     * proceso lo escribio o lo sustituyo)
+     *
+     * @return true si el tamano o la identidad del archivo no son los esperados
+     */
+    public synchronized boolean cambiadoFuera() {
+        try {
+            BasicFileAttributes atributos = Files.readAttributes(ruta, BasicFileAttributes.class);
+            return atributos.size() != fin || !Objects.equals(atributos.fileKey(), claveArchivo);
+        } catch (IOException e) {return true;}
+    }
+
+    /**
+     * Vuelve a abrir el archivo y rehace el indice desde disco
+     *
+     * @throws IOException Error al abrir
+     */
+    public synchronized void recargar() throws IOException {
+        canal.close();
+        indice.clear();
+        bytesMuertos = 0;
+        abrir();
+        cambiosExternos++;
+    }
+
+    /**
+     * Reescribe el archivo solo con el ultimo registro de cada jugador
+     *
+     * @throws IOException Error al escribir o renombrar; el archivo original queda intacto
+     */
+    public synchronized void compactar() throws IOException {
+        Path temporal = ruta.resolveSibling(NOMBRE_ARCHIVO + ".tmp");
+        Map<String, Long> nuevoIndice = new HashMap<>();
+        long posicion = TAMANO_CABECERA;
+        try (FileChannel salida = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            escribirCompleto(salida, cabecera(), 0);
+            for (Map.Entry<String, Long> entrada : indice.entrySet()) {
+                ByteBuffer registro = enmarcar(leerRegistro(entrada.getValue()));
+                int tamano = registro.remaining();
+                escribirCompleto(salida, registro, posicion);
+                nuevoIndice.put(entrada.getKey(), posicion);
+                posicion += tamano;
+            }
+            salida.force(true);
+        } catch (IOException e) {
+            try {Files.deleteIfExists(temporal);} catch (IOException ignorada) {}
+            throw e;
+        }
+        canal.close();
+        // Si el renombrado falla se reabre el original y el indice sigue valiendo
+        try {Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);}
+        finally {
+            canal = FileChannel.open(ruta, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            bloquear();
+            claveArchivo = Files.readAttributes(ruta, BasicFileAttributes.class).fileKey();
+        }
+        indice.clear();
+        indice.putAll(nuevoIndice);
+        fin = posicion;
+        bytesMuertos = 0;
+        compactaciones++;
+    }
+
+    /**
+     * Cierra el archivo
+     */
+    public synchronized void cerrar() {
+        try {canal.close();}
+        catch (IOException e) {System.err.println("Error al cerrar el almacen de jugadores: " + e.getMessage());}
+    }
+
+    /**
+     * Abre el archivo, lo crea si no existe y recorre los registros para rehacer el indice
+     *
+     * @throws IOException Error de lectura, archivo de otro formato o registro danado en medio
+     */
+    private void abrir() throws IOException {
+        canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        bloquear();
+        claveArchivo = Files.readAttributes(ruta, BasicFileAttributes.class).fileKey();
+        if (canal.size() < TAMANO_CABECERA) {
+            canal.truncate(0);
+            escribirCompleto(canal, cabecera(), 0);
+            canal.force(true);
+            fin = TAMANO_CABECERA;
+            return;
+        }
+
+        ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA);
+        leerCompleto(canal, cabecera, 0);
+        cabecera.flip();
+        if (cabecera.getInt() != MAGIA || cabecera.getShort() != VERSION) {
+            canal.close();
+            throw new IOException("'" + ruta + "' no es un almacen de jugadores valido");
+        }
+
+        long tamanoArchivo = canal.size();
+        long posicion = TAMANO_CABECERA;
+        ByteBuffer longitud = ByteBuffer.allocate(4);
+        while (posicion + 4 <= tamanoArchivo) {
+            longitud.clear();
+            leerCompleto(canal, longitud, posicion);
+            int tamano = longitud.getInt(0);
+            String problema = null;
+            byte[] datos = null;
+            if (tamano <= 0 || tamano > TAMANO_MAXIMO_REGISTRO) problema = "longitud " + tamano + " invalida";
+            else if (posicion + 8 + tamano > tamanoArchivo) problema = "longitud " + tamano + " pasa del final";
+            else {
+                try {datos = leerRegistro(posicion);}
+                catch (IOException e) {problema = e.getMessage();}
+            }
+            if (problema != null) {
+                // Es la escritura que se corto solo si detras no queda ningun registro bueno
+                if (hayRegistroValidoDespues(posicion, tamanoArchivo)) throw registroDanado(posicion, problema);
+                break;
+            }
+            Long anterior = indice.put(leerNombre(datos), posicion);
+            if (anterior != null) bytesMuertos += tamanoRegistro(anterior);
+            posicion += 8 + tamano;
+        }
+        if (posicion < tamanoArchivo) {
+            System.err.println("Advertencia: " + (tamanoArchivo - posicion) + " bytes incompletos al final de " + ruta + ", se descartan.");
+            canal.truncate(posicion);
+            canal.force(true);
+        }
+        fin = posicion;
+    }
+
+    /**
+     * Bloquea el archivo recien abierto para este proceso
+     *
+     * @throws IOException Otra instancia del juego lo tiene abierto
+     */
+    private void bloquear() throws IOException {
+        boolean bloqueado;
+        try {bloqueado = canal.tryLock() != null;}
+        catch (OverlappingFileLockException e) {bloqueado = false;}
+        if (!bloqueado) {
+            canal.close();
+            throw new IOException("'" + ruta + "' lo esta usando otra instancia del juego");
+        }
+    }
+
+    /**
+     * Cierra el archivo sin tocarlo y prepara el error de un registro danado
+     * con registros buenos detras
+     *
+     * @param posicion Inicio del registro
+     * @param motivo Que falla
+     * @return Excepcion a lanzar
+     */
+    private IOException registroDanado(long posicion, String motivo) {
+        try {canal.close();} catch (IOException ignorada) {}
+        return new IOException("Registro danado en la posicion " + posicion + " de '" + ruta + "' (" + motivo
+                + "); hay registros buenos detras, asi que no se trunca. Hay que revisar el archivo a mano.");
+    }
+
+    /**
+     * Busca un registro que pase el CRC en cualquier byte despues de uno malo
+     *
+     * @param malo Inicio del registro malo
+     * @param hasta Tamano del archivo
+     * @return true si hay alguno
+     * @throws IOException Error de lectura
+     */
+    private boolean hayRegistroValidoDespues(long malo, long hasta) throws IOException {
+        long inicio = malo + 1;
+        if (hasta - inicio < 9) return false;
+        ByteBuffer resto = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, hasta - inicio));
+        leerCompleto(canal, resto, inicio);
+        byte[] bytes = resto.array();
+        CRC32C crc = new CRC32C();
+        for (int i = 0; i + 9 <= bytes.length; i++) {
+            int tamano = resto.getInt(i);
+            if (tamano <= 0 || tamano > TAMANO_MAXIMO_REGISTRO || (long) i + 8 + tamano > bytes.length) continue;
+            // Los datos empiezan por la version del registro; descarta casi todo sin calcular el CRC
+            if (bytes[i + 4] != VERSION_REGISTRO) continue;
+            crc.reset();
+            crc.update(bytes, i + 4, tamano);
+            if ((int) crc.getValue() == resto.getInt(i + 4 + tamano)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Pasa al almacen los jugadores guardados con el formato anterior (un
+     * .dat serializado por jugador) y mueve esos archivos a migrados/
+     *
+     * @return Jugadores migrados
+     */
+    synchronized int migrarDat() {
+        int migrados = 0;
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(carpeta, "*.dat")) {
+            Path destino = null;
+            for (Path archivo : archivos) {
+                Jugador jugador;
+                try (ObjectInputStream entrada = new ObjectInputStream(Files.newInputStream(archivo))) {
+                    jugador = (Jugador) entrada.readObject();
+                } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                    System.err.println("No se pudo migrar '" + archivo + "': " + e);
+                    continue;
+                }
+                // Si ya esta en el almacen, lo del almacen es mas reciente
+                if (!indice.containsKey(jugador.getNombre())) escribir(jugador);
+                if (destino == null) destino = Files.createDirectories(carpeta.resolve(DIRECTORIO_MIGRADOS));
+                canal.force(false);
+                Files.move(archivo, destino.resolve(archivo.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                migrados++;
+            }
+        } catch (IOException e) {
+            System.err.println("Error al migrar los jugadores .dat: " + e.getMessage());
+        }
+        if (migrados > 0) {
+            System.out.println(migrados + " jugadores migrados de .dat a " + ruta + ".");
+            cambiosExternos++;
+        }
+        return migrados;
+    }
+
+    /**
+     * Anade el registro de un jugador al final y actualiza el indice
+     *
+     * @param jugador Jugador
+     * @throws IOException Error de escritura
+     */
+    private void escribir(Jugador jugador) throws IOException {
+        ByteBuffer registro = enmarcar(codificar(jugador));
+        int tamano = registro.remaining();
+        escribirCompleto(canal, registro, fin);
+        Long anterior = indice.put(jugador.getNombre(), fin);
+        if (anterior != null) bytesMuertos += tamanoRegistro(anterior);
+        fin += tamano;
+    }
+
+    /**
+     * Datos de un registro, comprobando su CRC
+     *
+     * @param posicion Inicio del registro
+     * @return Los datos sin longitud ni CRC
+     * @throws IOException Error de lectura o CRC incorrecto
+     */
+    private byte[] leerRegistro(long posicion) throws IOException {
+        int tamano = tamanoRegistro(posicion) - 8;
+        ByteBuffer buffer = ByteBuffer.allocate(tamano + 4);
+        leerCompleto(canal, buffer, posicion + 4);
+        buffer.flip();
+        byte[] datos = new byte[tamano];
+        buffer.get(datos);
+        CRC32C crc = new CRC32C();
+        crc.update(datos, 0, tamano);
+        if ((int) crc.getValue() != buffer.getInt()) throw new IOException("CRC incorrecto en la posicion " + posicion);
+        return datos;
+    }
+
+    /**
+     * Tamano total de un registro, con longitud y CRC
+     *
+     * @param posicion Inicio del registro
+     * @return Bytes que ocupa
+     * @throws IOException Error de lectura
+     */
+    private int tamanoRegistro(long posicion) throws IOException {
+        ByteBuffer longitud = ByteBuffer.allocate(4);
+        leerCompleto(canal, longitud, posicion);
+        return longitud.getInt(0) + 8;
+    }
+
+    /**
+     * Longitud + datos + CRC32C
+     *
+     * @param datos Datos del registro
+     * @return Buffer listo para escribir
+     */
+    private static ByteBuffer enmarcar(byte[] datos) {
+        CRC32C crc = new CRC32C();
+        crc.update(datos, 0, datos.length);
+        ByteBuffer registro = ByteBuffer.allocate(8 + datos.length);
+        registro.putInt(datos.length).put(datos).putInt((int) crc.getValue());
+        return registro.flip();
+    }
+
+    /**
+     * Datos de un jugador en binario
+     *
+     * @param jugador Jugador
+     * @return Los datos del registro
+     * @throws IOException Nombre o email demasiado largos
+     */
+    private static byte[] codificar(Jugador jugador) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream salida = new DataOutputStream(bytes)) {
+            salida.writeByte(VERSION_REGISTRO);
+            salida.writeUTF(jugador.getNombre());
+            salida.writeUTF((jugador.getEmail() != null) ? jugador.getEmail() : "");
+            salida.writeInt(jugador.getFilaActual());
+            salida.writeInt(jugador.getColumnaActual());
+            salida.writeInt(jugador.getPuntos());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Jugador a partir de los datos de un registro
+     *
+     * @param datos Datos del registro
+     * @return El jugador
+     * @throws IOException Version de registro desconocida o datos cortos
+     */
+    private static Jugador decodificar(byte[] datos) throws IOException {
+        try (DataInputStream entrada = entrada(datos)) {
+            String nombre = entrada.readUTF();
+            String email = entrada.readUTF();
+            return new Jugador(nombre, email, entrada.readInt(), entrada.readInt(), entrada.readInt());
+        }
+    }
+
+    /**
+     * Solo el nombre de un registro, para rehacer el indice
+     *
+     * @param datos Datos del registro
+     * @return El nombre
+     * @throws IOException Version de registro desconocida o datos cortos
+     */
+    private static String leerNombre(byte[] datos) throws IOException {
+        try (DataInputStream entrada = entrada(datos)) {return entrada.readUTF();}
+    }
+
+    /**
+     * Flujo sobre los datos de un registro, ya pasada la version
+     *
+     * @param datos Datos del registro
+     * @return Flujo posicionado en el nombre
+     * @throws IOException Version de registro desconocida
+     */
+    private static DataInputStream entrada(byte[] datos) throws IOException {
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(datos));
+        byte version = entrada.readByte();
+        if (version != VERSION_REGISTRO) throw new IOException("Version de registro desconocida: " + version);
+        return entrada;
+    }
+
+    /**
+     * Cabecera del archivo
+     * @return Buffer listo para escribir
+     */
+    private static ByteBuffer cabecera() {
+        return ByteBuffer.allocate(TAMANO_CABECERA).putInt(MAGIA).putShort(VERSION).flip();
+    }
+
+    /**
+     * Escribe un buffer entero en una posicion
+     *
+     * @param canal Canal de destino
+     * @param buffer Datos
+     * @param posicion Posicion en el archivo
+     * @throws IOException Error de escritura
+     */
+    private static void escribirCompleto(FileChannel canal, ByteBuffer buffer, long posicion) throws IOException {
+        while (buffer.hasRemaining()) posicion += canal.write(buffer, posicion);
+    }
+
+    /**
+     * Llena un buffer leyendo desde una posicion
+     *
+     * @param canal Canal de origen
+     * @param buffer Buffer a llenar
+     * @param posicion Posicion en el archivo
+     * @throws IOException Error de lectura o fin de archivo antes de tiempo
+     */
+    private static void leerCompleto(FileChannel canal, ByteBuffer buffer, long posicion) throws IOException {
+        while (buffer.hasRemaining()) {
+            int leidos = canal.read(buffer, posicion);
+            if (leidos < 0) throw new IOException("Fin de archivo inesperado");
+            posicion += leidos;
+        }
+    }
+
+    /**
+     * Getter de jugadores
+     * @return Jugadores distintos guardados
+     */
+    public synchronized int getJugadores() {return indice.size();}
+
+    /**
+     * Getter del tamano
+     * @return Bytes del archivo
+     */
+    public synchronized long getTamano() {return fin;}
+
+    /**
+     * Getter de cambios externos
+     * @return Veces que el indice cambio sin pasar por guardar (recargas y migraciones)
+     */
+    public synchronized long getCambiosExternos() {return cambiosExternos;}
+
+    /**
+     * Getter de bytes muertos
+     * @return Bytes de registros sustituidos, que se recuperan al compactar
+     */
+    public synchronized long getBytesMuertos() {return bytesMuertos;}
+
+    /**
+     * Resumen de los contadores
+     * @return Texto con jugadores, tamano, escrituras, lecturas y compactaciones
+     */
+    public synchronized String resumen() {
+        return "jugadores=" + indice.size() + " tamano=" + fin + " muertos=" + bytesMuertos + " escrituras=" + escrituras
+                + " lecturas=" + lecturas + " compactaciones=" + compactaciones;
+    }
+}
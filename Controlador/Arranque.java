@@ -0,0 +1,170 @@
+package Controlador;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Arranque de la aplicacion como grafo de fases
+ * Cada fase declara de que fases depende y se lanza en cuanto acaban todas
+ * ellas, asi las que no dependen entre si corren a la vez. Se apunta cuando
+ * empieza y cuanto dura cada una, para ver que fase alarga el arranque.
+ *
+ * Uso: definir las fases con fase(), llamar a ejecutar() y esperar solo las
+ * que hacen falta para la primera pantalla con esperar(); el resto sigue
+ * calentando en segundo plano.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class Arranque {
+
+    private final long inicioNanos = System.nanoTime();
+    private final Map<String, Fase> fases = new LinkedHashMap<>();
+    private ExecutorService hilos;
+
+    /**
+     * Define una fase; sus dependencias tienen que estar ya definidas
+     *
+     * @param nombre Nombre de la fase
+     * @param trabajo Lo que hace
+     * @param dependencias Fases que tienen que acabar antes
+     * @return Este arranque, para encadenar
+     */
+    public Arranque fase(String nombre, Runnable trabajo, String... dependencias) {
+        if (fases.containsKey(nombre)) throw new IllegalArgumentException("Fase repetida: " + nombre);
+        for (String dependencia : dependencias)
+            if (!fases.containsKey(dependencia)) throw new IllegalArgumentException("La fase " + nombre + " depende de " + dependencia + ", que no esta definida");
+        fases.put(nombre, new Fase(nombre, trabajo, dependencias));
+        return this;
+    }
+
+    /**
+     * Lanza todas las fases, cada una cuando acaben sus dependencias. No espera.
+     *
+     * @return Se completa cuando acaban todas
+     */
+    public synchronized CompletableFuture<Void> ejecutar() {
+        if (hilos != null) throw new IllegalStateException("El arranque ya se ejecuto");
+        hilos = Executors.newCachedThreadPool(tarea -> {
+            Thread hilo = new Thread(tarea, "arranque");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        for (Fase fase : fases.values()) {
+            CompletableFuture<?>[] previas = new CompletableFuture<?>[fase.dependencias.length];
+            for (int i = 0; i < previas.length; i++) previas[i] = fases.get(fase.dependencias[i]).hecho;
+            // Si falla una dependencia la fase se ejecuta igual: cada paso ya informa de sus errores
+            CompletableFuture.allOf(previas).handle((r, e) -> null).thenRunAsync(() -> ejecutar(fase), hilos);
+        }
+        CompletableFuture<?>[] todas = fases.values().stream().map(f -> f.hecho).toArray(CompletableFuture<?>[]::new);
+        CompletableFuture<Void> fin = CompletableFuture.allOf(todas);
+        fin.whenComplete((r, e) -> {
+            hilos.shutdown();
+            System.out.print("Arranque completo:\n" + resumen());
+        });
+        return fin;
+    }
+
+    /**
+     * Espera a unas fases (y, por tanto, a sus dependencias)
+     *
+     * @param nombres Fases a esperar
+     */
+    public void esperar(String... nombres) {
+        for (String nombre : nombres) {
+            Fase fase = fases.get(nombre);
+            if (fase == null) throw new IllegalArgumentException("Fase desconocida: " + nombre);
+            fase.hecho.join();
+        }
+        System.out.printf("Fases %s listas a los %.1f ms.%n", String.join(", ", nombres), (System.nanoTime() - inicioNanos) / 1e6);
+    }
+
+    /**
+     * Ejecuta una fase midiendo su tiempo
+     *
+     * @param fase Fase a ejecutar
+     */
+    private void ejecutar(Fase fase) {
+        fase.inicio = System.nanoTime();
+        fase.hilo = Thread.currentThread().getName() + "-" + Thread.currentThread().threadId();
+        try {
+            fase.trabajo.run();
+        } catch (RuntimeException | Error e) {
+            fase.error = e;
+            System.err.println("Error en la fase de arranque " + fase.nombre + ": " + e);
+        } finally {
+            fase.fin = System.nanoTime();
+            fase.hecho.complete(null);
+        }
+    }
+
+    /**
+     * Getter del inicio
+     * @return System.nanoTime() de cuando se creo el arranque
+     */
+    public long getInicioNanos() {return inicioNanos;}
+
+    /**
+     * Milisegundos de una fase
+     *
+     * @param nombre Nombre de la fase
+     * @return Duracion, o -1 si no ha acabado
+     */
+    public double getMs(String nombre) {
+        Fase fase = fases.get(nombre);
+        return (fase == null || !fase.hecho.isDone()) ? -1 : (fase.fin - fase.inicio) / 1e6;
+    }
+
+    /**
+     * Resumen de las fases: cuando empezo cada una desde el arranque, cuanto duro y en que hilo
+     * @return Una linea por fase
+     */
+    public String resumen() {
+        StringBuilder texto = new StringBuilder();
+        long ultimoFin = inicioNanos;
+        List<Fase> ordenadas = new ArrayList<>(fases.values());
+        for (Fase fase : ordenadas) {
+            if (!fase.hecho.isDone()) {
+                texto.append(String.format("  %-14s en curso%n", fase.nombre));
+                continue;
+            }
+            ultimoFin = Math.max(ultimoFin, fase.fin);
+            texto.append(String.format("  %-14s empieza %7.1f ms  dura %7.1f ms  %s%s%n", fase.nombre,
+                    (fase.inicio - inicioNanos) / 1e6, (fase.fin - fase.inicio) / 1e6, fase.hilo, (fase.error != null) ? "  ERROR" : ""));
+        }
+        texto.append(String.format("  total %.1f ms%n", (ultimoFin - inicioNanos) / 1e6));
+        return texto.toString();
+    }
+
+    /**
+     * Una fase del grafo
+     */
+    private static class Fase {
+        final String nombre;
+        final Runnable trabajo;
+        final String[] dependencias;
+        final CompletableFuture<Void> hecho = new CompletableFuture<>();
+        volatile long inicio, fin;
+        volatile String hilo;
+        volatile Throwable error;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param nombre Nombre de la fase
+         * @param trabajo Lo que hace
+         * @param dependencias Fases previas
+         */
+        Fase(String nombre, Runnable trabajo, String[] dependencias) {
+            this.nombre = nombre;
+            this.trabajo = trabajo;
+            this.dependencias = dependencias;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package Controlador;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Atlas de tiles descrito en un archivo de texto (ver tiles.atlas).
+ * Se recortan todos los tiles al cargarlo, en paralelo, y se guardan en un
+ * array indexado por el codigo del tile, asi buscar una imagen es un acceso
+ * directo sin HashMap ni autoboxing.
+ *
+ * Formato del descriptor, una entrada por linea ('#' es comentario):
+ * <pre>
+ * tileset &lt;nombre&gt; &lt;archivo.png&gt; &lt;tamano&gt;
+ * tile &lt;codigo&gt; &lt;tileset&gt; &lt;col&gt; &lt;fila&gt; [&lt;col&gt; &lt;fila&gt; ...] [@&lt;ms por frame&gt;]
+ * fallback &lt;codigo&gt;
+ * </pre>
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class AtlasTiles {
+
+    private static final int NUM_CODIGOS = Character.MAX_VALUE + 1;
+
+    private final Entrada[] entradas = new Entrada[NUM_CODIGOS];
+    private final int tamano;
+    private final AtomicLong codigosDesconocidos = new AtomicLong();
+    private char codigoFallback = 'E';
+    private int tilesCargados = 0;
+
+    /**
+     * Constructor parametrizado
+     *
+     * @param tamano Lado de los tiles en pixeles, igual para todos los tilesets
+     */
+    public AtlasTiles(int tamano) {this.tamano = tamano;}
+
+    /**
+     * Carga un atlas desde su descriptor. Las rutas de los tilesets son
+     * relativas a la carpeta del descriptor.
+     *
+     * @param descriptor Archivo .atlas
+     * @param tamano Lado de los tiles en pixeles
+     * @return El atlas cargado
+     * @throws IOException Error al leer el descriptor
+     */
+    public static AtlasTiles cargar(Path descriptor, int tamano) throws IOException {
+        AtlasTiles atlas = new AtlasTiles(tamano);
+        Map<String, Image> tilesets = new HashMap<>();
+        List<Recorte> recortes = new ArrayList<>();
+        Path carpeta = descriptor.toAbsolutePath().getParent();
+
+        try (BufferedReader lector = Files.newBufferedReader(descriptor)) {
+            String linea;
+            int numero = 0;
+            while ((linea = lector.readLine()) != null) {
+                numero++;
+                int comentario = linea.indexOf('#');
+                if (comentario >= 0) linea = linea.substring(0, comentario);
+                linea = linea.trim();
+                if (linea.isEmpty()) continue;
+
+                String[] partes = linea.split("\\s+");
+                try {
+                    switch (partes[0]) {
+                        case "tileset" -> {
+                            if (Integer.parseInt(partes[3]) != tamano) throw new IllegalArgumentException("tamano distinto de " + tamano);
+                            Image img = atlas.cargarTileset(carpeta.resolve(partes[2]));
+                            if (img != null) tilesets.put(partes[1], img);
+                        }
+                        case "tile" -> recortes.add(atlas.leerTile(partes, tilesets));
+                        case "fallback" -> atlas.codigoFallback = partes[1].charAt(0);
+                        default -> throw new IllegalArgumentException("entrada desconocida '" + partes[0] + "'");
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Error en " + descriptor + ":" + numero + " (" + e.getMessage() + "), se ignora la linea.");
+                }
+            }
+        }
+        atlas.recortar(recortes);
+        return atlas;
+    }
+
+    /**
+     * Atlas con una sola entrada por codigo, para cuando no hay descriptor
+     *
+     * @param tileset Imagen del tileset
+     * @param tamano Lado de los tiles en pixeles
+     * @param codigos Codigos de tile
+     * @param columnas Columna de cada codigo en el tileset
+     * @param filas Fila de cada codigo en el tileset
+     * @return El atlas ya recortado
+     */
+    public static AtlasTiles desdeCoordenadas(Image tileset, int tamano, char[] codigos, int[] columnas, int[] filas) {
+        AtlasTiles atlas = new AtlasTiles(tamano);
+        List<Recorte> recortes = new ArrayList<>();
+        for (int i = 0; i < codigos.length; i++)
+            recortes.add(new Recorte(codigos[i], tileset, new int[]{columnas[i]}, new int[]{filas[i]}, 0));
+        atlas.recortar(recortes);
+        return atlas;
+    }
+
+    /**
+     * Imagen de un tile (primer frame). Los codigos sin entrada usan el fallback
+     * y se cuentan en getCodigosDesconocidos.
+     *
+     * @param codigo Codigo del tile
+     * @return La imagen, o null si ni el fallback existe
+     */
+    public Image getImagen(char codigo) {
+        Entrada entrada = entrada(codigo);
+        return (entrada != null) ? entrada.frames[0] : null;
+    }
+
+    /**
+     * Imagen de un tile animado en un instante
+     *
+     * @param codigo Codigo del tile
+     * @param ahoraNanos Tiempo actual (p.ej. el del AnimationTimer)
+     * @return El frame que toca, o null si no hay imagen
+     */
+    public Image getImagen(char codigo, long ahoraNanos) {
+        Entrada entrada = entrada(codigo);
+        if (entrada == null) return null;
+        if (entrada.frames.length == 1 || entrada.nanosPorFrame <= 0) return entrada.frames[0];
+        // nanoTime puede ser negativo; floorMod no da indices negativos
+        return entrada.frames[(int) Math.floorMod(Math.floorDiv(ahoraNanos, entrada.nanosPorFrame), (long) entrada.frames.length)];
+    }
+
+    /**
+     * Pixeles ARGB del primer frame de un tile
+     *
+     * @param codigo Codigo del tile
+     * @return tamano x tamano pixeles, o null si no hay imagen
+     */
+    public int[] getPixeles(char codigo) {
+        Entrada entrada = entrada(codigo);
+        return (entrada != null) ? entrada.pixeles : null;
+    }
+
+    /**
+     * Comprueba si un codigo tiene entrada propia
+     *
+     * @param codigo Codigo del tile
+     * @return true si esta en el atlas
+     */
+    public boolean contiene(char codigo) {return entradas[codigo] != null;}
+
+    /**
+     * Comprueba si un codigo esta animado
+     *
+     * @param codigo Codigo del tile
+     * @return true si tiene mas de un frame
+     */
+    public boolean esAnimado(char codigo) {return entradas[codigo] != null && entradas[codigo].frames.length > 1;}
+
+    /**
+     * Getter de codigos desconocidos
+     * @return Veces que se pidio un codigo sin entrada
+     */
+    public long getCodigosDesconocidos() {return codigosDesconocidos.get();}
+
+    /**
+     * Getter de tiles cargados
+     * @return Codigos con entrada en el atlas
+     */
+    public int getTilesCargados() {return tilesCargados;}
+
+    /**
+     * Getter del tamano
+     * @return Lado de los tiles en pixeles
+     */
+    public int getTamano() {return tamano;}
+
+    /**
+     * Resumen de los contadores
+     * @return Texto con los tiles cargados y los codigos pedidos sin entrada
+     */
+    public String resumen() {return "tiles=" + tilesCargados + " codigosDesconocidos=" + codigosDesconocidos.get();}
+
+    /**
+     * Entrada de un codigo, o la del fallback contando el fallo
+     *
+     * @param codigo Codigo del tile
+     * @return La entrada o null
+     */
+    private Entrada entrada(char codigo) {
+        Entrada entrada = entradas[codigo];
+        if (entrada != null) return entrada;
+        codigosDesconocidos.incrementAndGet();
+        return entradas[codigoFallback];
+    }
+
+    /**
+     * Carga la imagen de un tileset y comprueba que sea usable
+     *
+     * @param ruta Archivo .png
+     * @return La imagen o null si no se pudo cargar
+     */
+    private Image cargarTileset(Path ruta) {
+        System.out.println("Intentando cargar tileset desde: " + ruta);
+        Image img = new Image(ruta.toUri().toString());
+        if (img.isError()) {
+            System.err.println("ERROR GRAVE: No se pudo cargar el tileset: " + ruta + " (" + img.getException() + ")");
+            return null;
+        }
+        if (img.getWidth() < tamano || img.getHeight() < tamano) {
+            System.err.println("ERROR GRAVE: El tileset " + ruta + " es más pequeño que un tile de " + tamano + "px.");
+            return null;
+        }
+        System.out.println("Tileset cargado correctamente. Dimensiones: " + img.getWidth() + "x" + img.getHeight());
+        return img;
+    }
+
+    /**
+     * Interpreta una linea "tile"
+     *
+     * @param partes Linea separada por espacios
+     * @param tilesets Tilesets ya cargados
+     * @return El recorte pendiente
+     */
+    private Recorte leerTile(String[] partes, Map<String, Image> tilesets) {
+        if (partes[1].length() != 1) throw new IllegalArgumentException("el codigo debe ser un caracter");
+        Image tileset = tilesets.get(partes[2]);
+        if (tileset == null) throw new IllegalArgumentException("tileset '" + partes[2] + "' no cargado");
+
+        int ms = 0;
+        int fin = partes.length;
+        if (partes[fin - 1].startsWith("@")) {
+            ms = Integer.parseInt(partes[fin - 1].substring(1));
+            fin--;
+        }
+        int numFrames = (fin - 3) / 2;
+        if (numFrames < 1 || (fin - 3) % 2 != 0) throw new IllegalArgumentException("faltan coordenadas");
+        int[] columnas = new int[numFrames];
+        int[] filas = new int[numFrames];
+        for (int i = 0; i < numFrames; i++) {
+            columnas[i] = Integer.parseInt(partes[3 + i * 2]);
+            filas[i] = Integer.parseInt(partes[4 + i * 2]);
+        }
+        return new Recorte(partes[1].charAt(0), tileset, columnas, filas, ms);
+    }
+
+    /**
+     * Recorta todos los frames en paralelo y los deja en el array de entradas
+     *
+     * @param recortes Tiles pendientes de recortar
+     */
+    private void recortar(List<Recorte> recortes) {
+        recortes.parallelStream().forEach(recorte -> {
+            Entrada entrada = recorte.cortar(tamano);
+            if (entrada != null) entradas[recorte.codigo] = entrada;
+        });
+        int total = 0;
+        for (Recorte recorte : recortes) if (entradas[recorte.codigo] != null) total++;
+        tilesCargados = total;
+    }
+
+    /**
+     * Tile del descriptor pendiente de recortar
+     */
+    private static class Recorte {
+        final char codigo;
+        final Image tileset;
+        final int[] columnas, filas;
+        final int ms;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param codigo Codigo del tile
+         * @param tileset Imagen de origen
+         * @param columnas Columna de cada frame
+         * @param filas Fila de cada frame
+         * @param ms Milisegundos por frame (0 si no es animado)
+         */
+        Recorte(char codigo, Image tileset, int[] columnas, int[] filas, int ms) {
+            this.codigo = codigo;
+            this.tileset = tileset;
+            this.columnas = columnas;
+            this.filas = filas;
+            this.ms = ms;
+        }
+
+        /**
+         * Recorta los frames del tileset
+         *
+         * @param tamano Lado del tile en pixeles
+         * @return La entrada, o null si algun frame se sale del tileset
+         */
+        Entrada cortar(int tamano) {
+            PixelReader lector = tileset.getPixelReader();
+            Image[] frames = new Image[columnas.length];
+            for (int i = 0; i < frames.length; i++) {
+                int x = columnas[i] * tamano;
+                int y = filas[i] * tamano;
+                if (x < 0 || y < 0 || x + tamano > tileset.getWidth() || y + tamano > tileset.getHeight()) {
+                    System.err.println("Error: Coordenadas (" + x + "," + y + ") para tile '" + codigo + "' están fuera de los límites del tileset.");
+                    return null;
+                }
+                frames[i] = new WritableImage(lector, x, y, tamano, tamano);
+            }
+            int[] pixeles = new int[tamano * tamano];
+            lector.getPixels(columnas[0] * tamano, filas[0] * tamano, tamano, tamano, PixelFormat.getIntArgbInstance(), pixeles, 0, tamano);
+            return new Entrada(frames, ms * 1_000_000L, pixeles);
+        }
+    }
+
+    /**
+     * Tile ya recortado
+     */
+    private static class Entrada {
+        final Image[] frames;
+        final long nanosPorFrame;
+        final int[] pixeles;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param frames Imagenes de cada frame
+         * @param nanosPorFrame Duracion de cada frame
+         * @param pixeles ARGB del primer frame
+         */
+        Entrada(Image[] frames, long nanosPorFrame, int[] pixeles) {
+            this.frames = frames;
+            this.nanosPorFrame = nanosPorFrame;
+            this.pixeles = pixeles;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package Controlador;
+
+/**
+ * Bucle de juego con paso de simulacion fijo
+ * Se le pasa el tiempo de cada frame (p.ej. desde un AnimationTimer) y ejecuta
+ * tantos ticks de simulacion como correspondan a ese tiempo, acumulando el
+ * resto para el siguiente frame. Asi la simulacion va igual a 60 que a 144 Hz.
+ * Despues de los ticks se presenta el frame con el factor de interpolacion
+ * entre el ultimo estado y el siguiente.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class BucleJuego {
+
+    public static final int TICKS_DEFECTO = 60;
+    public static final int MAX_TICKS_POR_FRAME_DEFECTO = 5;
+
+    private final Simulacion simulacion;
+    private final Presentacion presentacion;
+
+    private long nanosPorTick;
+    private int maxTicksPorFrame = MAX_TICKS_POR_FRAME_DEFECTO;
+
+    private long ultimoFrame = -1;
+    private long acumulado = 0;
+    private long tickActual = 0;
+
+    // Estadisticas
+    private long frames = 0;
+    private long ticksDescartados = 0;
+    private long nanosTicks = 0, maxNanosTick = 0;
+    private long nanosFrames = 0, maxNanosFrame = 0;
+
+    /**
+     * Constructor parametrizado
+     *
+     * @param ticksPorSegundo Frecuencia de la simulacion
+     * @param simulacion Lo que se ejecuta en cada tick
+     * @param presentacion Lo que se ejecuta en cada frame, puede ser null
+     */
+    public BucleJuego(int ticksPorSegundo, Simulacion simulacion, Presentacion presentacion) {
+        if (simulacion == null) throw new IllegalArgumentException("La simulacion no puede ser null");
+        this.simulacion = simulacion;
+        this.presentacion = presentacion;
+        setTicksPorSegundo(ticksPorSegundo);
+    }
+
+    /**
+     * Avanza el bucle hasta el instante dado
+     *
+     * @param ahoraNanos Tiempo actual en nanosegundos (el del AnimationTimer o System.nanoTime)
+     * @return Ticks ejecutados en este frame
+     */
+    public int avanzar(long ahoraNanos) {
+        long inicioFrame = System.nanoTime();
+        if (ultimoFrame < 0) ultimoFrame = ahoraNanos;
+        long delta = ahoraNanos - ultimoFrame;
+        ultimoFrame = ahoraNanos;
+        if (delta > 0) acumulado += delta;
+
+        int ejecutados = 0;
+        while (acumulado >= nanosPorTick && ejecutados < maxTicksPorFrame) {
+            long inicioTick = System.nanoTime();
+            simulacion.tick(tickActual++);
+            long duracion = System.nanoTime() - inicioTick;
+            nanosTicks += duracion;
+            if (duracion > maxNanosTick) maxNanosTick = duracion;
+            acumulado -= nanosPorTick;
+            ejecutados++;
+        }
+        // Si nos quedamos atras (pausa, parón del GC...) no intentamos recuperar todo
+        if (acumulado >= nanosPorTick) {
+            ticksDescartados += acumulado / nanosPorTick;
+            acumulado %= nanosPorTick;
+        }
+
+        if (presentacion != null) presentacion.presentar(getAlfa());
+        long duracionFrame = System.nanoTime() - inicioFrame;
+        nanosFrames += duracionFrame;
+        if (duracionFrame > maxNanosFrame) maxNanosFrame = duracionFrame;
+        frames++;
+        return ejecutados;
+    }
+
+    /**
+     * Olvida el tiempo acumulado, para reanudar tras una pausa sin ticks de golpe
+     */
+    public void reiniciarReloj() {
+        ultimoFrame = -1;
+        acumulado = 0;
+    }
+
+    /**
+     * Factor de interpolacion entre el ultimo tick y el siguiente
+     * @return Valor en [0, 1)
+     */
+    public double getAlfa() {return (double) acumulado / nanosPorTick;}
+
+    /**
+     * Setter de la frecuencia de simulacion
+     * @param ticksPorSegundo Ticks por segundo, mayor que 0
+     */
+    public void setTicksPorSegundo(int ticksPorSegundo) {
+        if (ticksPorSegundo <= 0) throw new IllegalArgumentException("Ticks por segundo invalidos: " + ticksPorSegundo);
+        this.nanosPorTick = 1_000_000_000L / ticksPorSegundo;
+    }
+
+    /**
+     * Setter del limite de recuperacion
+     * @param maxTicksPorFrame Ticks maximos por frame, mayor que 0
+     */
+    public void setMaxTicksPorFrame(int maxTicksPorFrame) {
+        if (maxTicksPorFrame <= 0) throw new IllegalArgumentException("Maximo de ticks invalido: " + maxTicksPorFrame);
+        this.maxTicksPorFrame = maxTicksPorFrame;
+    }
+
+    /**
+     * Getter de la duracion del tick
+     * @return Nanosegundos por tick
+     */
+    public long getNanosPorTick() {return nanosPorTick;}
+
+    /**
+     * Getter de ticks
+     * @return Ticks ejecutados desde el inicio
+     */
+    public long getTicks() {return tickActual;}
+
+    /**
+     * Getter de frames
+     * @return Frames presentados desde el inicio
+     */
+    public long getFrames() {return frames;}
+
+    /**
+     * Getter de ticks descartados
+     * @return Ticks que no se ejecutaron por superar el limite de recuperacion
+     */
+    public long getTicksDescartados() {return ticksDescartados;}
+
+    /**
+     * Getter del coste medio del tick
+     * @return Nanosegundos medios por tick
+     */
+    public double getMediaNanosTick() {return (tickActual == 0) ? 0 : (double) nanosTicks / tickActual;}
+
+    /**
+     * Getter del peor tick
+     * @return Nanosegundos del tick mas lento
+     */
+    public long getMaxNanosTick() {return maxNanosTick;}
+
+    /**
+     * Getter del coste medio del frame (ticks + presentacion)
+     * @return Nanosegundos medios por frame
+     */
+    public double getMediaNanosFrame() {return (frames == 0) ? 0 : (double) nanosFrames / frames;}
+
+    /**
+     * Getter del peor frame
+     * @return Nanosegundos del frame mas lento
+     */
+    public long getMaxNanosFrame() {return maxNanosFrame;}
+
+    /**
+     * Resumen de las estadisticas
+     * @return Texto con ticks, frames y tiempos
+     */
+    public String resumen() {
+        return String.format("ticks=%d frames=%d descartados=%d tick(media=%.1fus max=%.1fus) frame(media=%.1fus max=%.1fus)",
+                tickActual, frames, ticksDescartados,
+                getMediaNanosTick() / 1000.0, maxNanosTick / 1000.0,
+                getMediaNanosFrame() / 1000.0, maxNanosFrame / 1000.0);
+    }
+
+    /**
+     * Paso de simulacion
+     */
+    public interface Simulacion {
+        /**
+         * @param numeroTick Numero de tick, empieza en 0
+         */
+        void tick(long numeroTick);
+    }
+
+    /**
+     * Dibujado de un frame
+     */
+    public interface Presentacion {
+        /**
+         * @param alfa Fraccion del tick siguiente ya transcurrida, para interpolar
+         */
+        void presentar(double alfa);
+    }
+}
@@ -0,0 +1,200 @@
+package Controlador;
+
+import Modelo.Escenario;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Cache de la capa estatica del mapa: cada chunk de LADO_CHUNK x LADO_CHUNK tiles
+ * se pinta una sola vez en un WritableImage. Un chunk solo se vuelve a pintar si
+ * setTile cambia alguno de sus tiles. La memoria de las imagenes esta limitada y
+ * se expulsan primero los chunks usados hace mas tiempo.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class CacheCapasChunk implements Escenario.OyenteTiles {
+
+    /** Lado del chunk en tiles. */
+    public static final int LADO_CHUNK = 16;
+
+    private final Escenario escenario;
+    private final int tamanoTile;
+    private final long presupuestoBytes;
+    private final int chunksPorFila;
+    private final LinkedHashMap<Long, WritableImage> imagenes = new LinkedHashMap<>(64, 0.75f, true);
+    private final int[][] pixelesPorIndice = new int[Escenario.MAX_PALETA][];
+    private final int[] bufferChunk;
+
+    private long bytesUsados = 0;
+    private long aciertos = 0;
+    private long horneados = 0;
+    private long expulsiones = 0;
+    private long invalidaciones = 0;
+
+    /**
+     * Constructor parametrizado. Se registra como oyente del escenario.
+     *
+     * @param escenario Escenario a pintar
+     * @param tamanoTile Lado del tile en pixeles
+     * @param presupuestoBytes Memoria maxima para las imagenes de chunk
+     */
+    public CacheCapasChunk(Escenario escenario, int tamanoTile, long presupuestoBytes) {
+        this.escenario = escenario;
+        this.tamanoTile = tamanoTile;
+        this.presupuestoBytes = presupuestoBytes;
+        this.chunksPorFila = (escenario.getColumnas() + LADO_CHUNK - 1) / LADO_CHUNK;
+        this.bufferChunk = new int[LADO_CHUNK * tamanoTile * LADO_CHUNK * tamanoTile];
+        escenario.agregarOyente(this);
+    }
+
+    /**
+     * Imagen de un chunk, pintandola si no estaba en la cache
+     *
+     * @param chunkFila Fila del chunk
+     * @param chunkColumna Columna del chunk
+     * @return La imagen del chunk
+     */
+    public WritableImage obtener(int chunkFila, int chunkColumna) {
+        long id = (long) chunkFila * chunksPorFila + chunkColumna;
+        WritableImage img = imagenes.get(id);
+        if (img != null) {
+            aciertos++;
+            return img;
+        }
+        img = hornear(chunkFila, chunkColumna);
+        imagenes.put(id, img);
+        bytesUsados += pesoImagen(img);
+        // Siempre se deja al menos el chunk que se acaba de pintar
+        while (bytesUsados > presupuestoBytes && imagenes.size() > 1) expulsarMasAntiguo();
+        return img;
+    }
+
+    /**
+     * Un tile ha cambiado: su chunk se tira y se repinta cuando se vuelva a pedir
+     *
+     * @param fila Fila del tile
+     * @param columna Columna del tile
+     */
+    @Override
+    public void tileCambiado(int fila, int columna) {
+        WritableImage img = imagenes.remove((long) (fila / LADO_CHUNK) * chunksPorFila + (columna / LADO_CHUNK));
+        if (img != null) {
+            bytesUsados -= pesoImagen(img);
+            invalidaciones++;
+        }
+    }
+
+    /**
+     * Vacia la cache y deja de escuchar al escenario
+     */
+    public void desconectar() {
+        escenario.quitarOyente(this);
+        imagenes.clear();
+        bytesUsados = 0;
+    }
+
+    /**
+     * Getter de bytes usados
+     * @return Memoria aproximada de las imagenes en cache
+     */
+    public long getBytesUsados() {return bytesUsados;}
+
+    /**
+     * Getter de aciertos
+     * @return Chunks servidos desde la cache
+     */
+    public long getAciertos() {return aciertos;}
+
+    /**
+     * Getter de horneados
+     * @return Chunks que se han tenido que pintar
+     */
+    public long getHorneados() {return horneados;}
+
+    /**
+     * Getter de expulsiones
+     * @return Chunks expulsados por el presupuesto de memoria
+     */
+    public long getExpulsiones() {return expulsiones;}
+
+    /**
+     * Getter de invalidaciones
+     * @return Chunks tirados porque cambio alguno de sus tiles
+     */
+    public long getInvalidaciones() {return invalidaciones;}
+
+    /**
+     * Pinta los tiles de un chunk en una imagen nueva
+     *
+     * @param chunkFila Fila del chunk
+     * @param chunkColumna Columna del chunk
+     * @return La imagen con el chunk
+     */
+    private WritableImage hornear(int chunkFila, int chunkColumna) {
+        int fila0 = chunkFila * LADO_CHUNK;
+        int columna0 = chunkColumna * LADO_CHUNK;
+        int altoTiles = Math.min(LADO_CHUNK, escenario.getFilas() - fila0);
+        int anchoTiles = Math.min(LADO_CHUNK, escenario.getColumnas() - columna0);
+        int anchoPx = anchoTiles * tamanoTile;
+        int altoPx = altoTiles * tamanoTile;
+
+        for (int f = 0; f < altoTiles; f++) {
+            for (int c = 0; c < anchoTiles; c++) {
+                int[] pixeles = pixelesIndice(escenario.getIndice(fila0 + f, columna0 + c));
+                int destino = f * tamanoTile * anchoPx + c * tamanoTile;
+                for (int y = 0; y < tamanoTile; y++) {
+                    if (pixeles != null) System.arraycopy(pixeles, y * tamanoTile, bufferChunk, destino + y * anchoPx, tamanoTile);
+                    else Arrays.fill(bufferChunk, destino + y * anchoPx, destino + y * anchoPx + tamanoTile, 0xFF000000);
+                }
+            }
+        }
+
+        WritableImage img = new WritableImage(anchoPx, altoPx);
+        PixelWriter pw = img.getPixelWriter();
+        pw.setPixels(0, 0, anchoPx, altoPx, PixelFormat.getIntArgbInstance(), bufferChunk, 0, anchoPx);
+        horneados++;
+        return img;
+    }
+
+    /**
+     * Pixeles ARGB de un indice de paleta, pedidos a GestorTile una sola vez
+     *
+     * @param indice Indice de paleta
+     * @return tamanoTile x tamanoTile pixeles, o null si el tile no tiene imagen
+     */
+    private int[] pixelesIndice(int indice) {
+        int[] pixeles = pixelesPorIndice[indice];
+        if (pixeles == null) {
+            char[] paleta = escenario.getPaleta();
+            if (indice >= paleta.length || paleta[indice] == '\0') return null;
+            pixeles = GestorTile.getPixelesTile(paleta[indice]);
+            pixelesPorIndice[indice] = pixeles;
+        }
+        return pixeles;
+    }
+
+    /**
+     * Expulsa la imagen usada hace mas tiempo
+     */
+    private void expulsarMasAntiguo() {
+        Iterator<Map.Entry<Long, WritableImage>> it = imagenes.entrySet().iterator();
+        bytesUsados -= pesoImagen(it.next().getValue());
+        it.remove();
+        expulsiones++;
+    }
+
+    /**
+     * Memoria aproximada de una imagen (4 bytes por pixel)
+     *
+     * @param img Imagen
+     * @return Bytes
+     */
+    private static long pesoImagen(WritableImage img) {return (long) img.getWidth() * (long) img.getHeight() * 4;}
+}
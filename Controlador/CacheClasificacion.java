@@ -0,0 +1,246 @@
+package Controlador;
+
+import Modelo.Puntuacion;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Clasificacion en memoria con las K mejores puntuaciones
+ * Se carga una vez de la base de datos y despues SQLite le pasa cada
+ * puntuacion que confirma, asi la pantalla de inicio no hace la consulta.
+ * Las entradas estan en un array ordenado de mayor a menor; como K es
+ * pequeno, insertar desplazando es mas rapido que un arbol o un monticulo.
+ * Con empates va antes el id menor, el mismo orden (puntuacion DESC, id) que
+ * la tabla, asi la ultima entrada sirve de cursor para la siguiente pagina.
+ *
+ * Cargar y comprobar se hacen con el cerrojo de SQLite, el mismo que tienen
+ * las escrituras, para que no se cuele ninguna entre la consulta y la carga.
+ * Se comprueba al arrancar, despues de calentar, y cada cierto numero de
+ * lotes del EscritorPuntuaciones; las inconsistencias salen en resumen().
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class CacheClasificacion {
+
+    public static final int K_DEFECTO = 10;
+
+    private final int capacidad;
+    private final String[] nombres;
+    private final int[] puntos;
+    private final long[] ids;
+    private int tamano = 0;
+    private boolean calentada = false;
+
+    private long aciertos = 0;
+    private long fallos = 0;
+    private long registradas = 0;
+    private long descartadas = 0;
+    private long comprobaciones = 0;
+    private long inconsistencias = 0;
+
+    /**
+     * Constructor parametrizado
+     *
+     * @param capacidad Numero de puntuaciones que se guardan (K)
+     */
+    public CacheClasificacion(int capacidad) {
+        if (capacidad <= 0) throw new IllegalArgumentException("Capacidad invalida: " + capacidad);
+        this.capacidad = capacidad;
+        this.nombres = new String[capacidad];
+        this.puntos = new int[capacidad];
+        this.ids = new long[capacidad];
+    }
+
+    /**
+     * Carga las K mejores de la base de datos, sustituyendo lo que hubiera
+     *
+     * @return true si se pudo consultar la base
+     */
+    public boolean calentar() {
+        synchronized (SQLite.class) {
+            List<Puntuacion> mejores = SQLite.consultarMejoresPuntuaciones(capacidad);
+            if (mejores == null) return false;
+            cargar(mejores);
+            return true;
+        }
+    }
+
+    /**
+     * Las mejores puntuaciones, de mayor a menor. Si la cache no esta
+     * caliente (fallo) se carga antes de la base de datos.
+     *
+     * @return Copia de la clasificacion
+     */
+    public List<Puntuacion> obtener() {return primeraPagina().getFilas();}
+
+    /**
+     * Las mejores puntuaciones como primera pagina de Clasificacion.pagina,
+     * con el cursor en la ultima que devuelve. Si la cache no se pudo cargar
+     * la pagina sale vacia con el cursor al principio.
+     *
+     * @return La pagina; nunca es la ultima, lo que haya detras lo dice la tabla
+     */
+    public Clasificacion.Pagina primeraPagina() {
+        synchronized (this) {
+            if (calentada) {
+                aciertos++;
+                return copia();
+            }
+            fallos++;
+        }
+        calentar();
+        synchronized (this) {return copia();}
+    }
+
+    /**
+     * Avisa de una puntuacion ya guardada en la base; entra si mejora la ultima
+     *
+     * @param nombre Nombre del jugador
+     * @param puntuacion Puntuacion guardada
+     * @param id Id de su fila en Puntuaciones
+     */
+    public synchronized void registrar(String nombre, int puntuacion, long id) {
+        registradas++;
+        if (!calentada) return;
+        if (tamano == capacidad && !vaAntes(puntuacion, id, tamano - 1)) {
+            descartadas++;
+            return;
+        }
+        int i = (tamano < capacidad) ? tamano++ : tamano - 1;
+        while (i > 0 && vaAntes(puntuacion, id, i - 1)) {
+            puntos[i] = puntos[i - 1];
+            nombres[i] = nombres[i - 1];
+            ids[i] = ids[i - 1];
+            i--;
+        }
+        puntos[i] = puntuacion;
+        nombres[i] = nombre;
+        ids[i] = id;
+    }
+
+    /**
+     * Orden (puntuacion DESC, id) de la tabla
+     *
+     * @param puntuacion Puntuacion nueva
+     * @param id Su id
+     * @param i Entrada con la que se compara
+     * @return true si la nueva va delante de la entrada i
+     */
+    private boolean vaAntes(int puntuacion, long id, int i) {
+        return puntuacion > puntos[i] || (puntuacion == puntos[i] && id < ids[i]);
+    }
+
+    /**
+     * Compara la cache con la tabla. Si no coinciden las puntuaciones se
+     * cuenta como inconsistencia y se recarga de la base.
+     *
+     * @return true si coincidian (o la cache aun no estaba caliente)
+     */
+    public boolean comprobar() {
+        synchronized (SQLite.class) {
+            List<Puntuacion> mejores = SQLite.consultarMejoresPuntuaciones(capacidad);
+            if (mejores == null) return false;
+            synchronized (this) {
+                comprobaciones++;
+                if (!calentada) return true;
+                boolean iguales = mejores.size() == tamano;
+                for (int i = 0; iguales && i < tamano; i++) iguales = mejores.get(i).getPuntuacion() == puntos[i] && mejores.get(i).getId() == ids[i];
+                if (iguales) return true;
+                inconsistencias++;
+                System.err.println("Clasificacion en memoria distinta de la tabla, se recarga.");
+                cargar(mejores);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Marca la cache como fria, p.ej. al cambiar de base de datos
+     */
+    public synchronized void invalidar() {
+        calentada = false;
+        tamano = 0;
+        Arrays.fill(nombres, null);
+    }
+
+    /**
+     * Sustituye el contenido
+     *
+     * @param mejores Puntuaciones ordenadas de mayor a menor
+     */
+    private synchronized void cargar(List<Puntuacion> mejores) {
+        tamano = Math.min(capacidad, mejores.size());
+        for (int i = 0; i < tamano; i++) {
+            nombres[i] = mejores.get(i).getNombre();
+            puntos[i] = mejores.get(i).getPuntuacion();
+            ids[i] = mejores.get(i).getId();
+        }
+        calentada = true;
+    }
+
+    /**
+     * Copia del contenido
+     *
+     * @return Pagina nueva con el cursor en la ultima entrada
+     */
+    private Clasificacion.Pagina copia() {
+        List<Puntuacion> lista = new ArrayList<>(tamano);
+        for (int i = 0; i < tamano; i++) lista.add(new Puntuacion(nombres[i], puntos[i], ids[i]));
+        Clasificacion.Cursor siguiente = (tamano > 0) ? new Clasificacion.Cursor(puntos[tamano - 1], ids[tamano - 1]) : Clasificacion.Cursor.INICIO;
+        return new Clasificacion.Pagina(lista, siguiente, false);
+    }
+
+    /**
+     * Getter de capacidad
+     * @return K
+     */
+    public int getCapacidad() {return capacidad;}
+
+    /**
+     * Comprueba si ya se cargo de la base
+     * @return true si esta caliente
+     */
+    public synchronized boolean estaCalentada() {return calentada;}
+
+    /**
+     * Getter de aciertos
+     * @return Lecturas servidas desde memoria
+     */
+    public synchronized long getAciertos() {return aciertos;}
+
+    /**
+     * Getter de fallos
+     * @return Lecturas que tuvieron que consultar la base
+     */
+    public synchronized long getFallos() {return fallos;}
+
+    /**
+     * Getter de registradas
+     * @return Puntuaciones recibidas por escritura
+     */
+    public synchronized long getRegistradas() {return registradas;}
+
+    /**
+     * Getter de descartadas
+     * @return Puntuaciones recibidas que no entraban en el top
+     */
+    public synchronized long getDescartadas() {return descartadas;}
+
+    /**
+     * Getter de inconsistencias
+     * @return Comprobaciones en las que la cache no coincidia con la tabla
+     */
+    public synchronized long getInconsistencias() {return inconsistencias;}
+
+    /**
+     * Resumen de los contadores
+     * @return Texto con aciertos, fallos, escrituras y comprobaciones
+     */
+    public synchronized String resumen() {
+        return "aciertos=" + aciertos + " fallos=" + fallos + " registradas=" + registradas + " descartadas=" + descartadas
+                + " comprobaciones=" + comprobaciones + " inconsistencias=" + inconsistencias;
+    }
+}
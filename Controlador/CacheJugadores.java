@@ -0,0 +1,267 @@
+package Controlador;
+
+import Modelo.Jugador;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache de jugadores delante de AlmacenJugadores
+ * Un ConcurrentHashMap nombre -> Jugador con tamano maximo, asi las
+ * busquedas no se esperan unas a otras. Cada entrada apunta cuando se uso
+ * por ultima vez; al pasarse del tamano se miran unas pocas entradas y sale
+ * la usada hace mas tiempo (LRU aproximado, sin lista que reordenar en cada
+ * acierto). Al crearse se precarga con los jugadores del almacen hasta
+ * llenarse, asi un inicio de sesion es una busqueda en el mapa. Se
+ * devuelven y guardan copias, porque Jugador es mutable y la partida lo va
+ * cambiando.
+ *
+ * Una busqueda que falla lee del almacen sin cerrojo. Si mientras tanto se
+ * guardo algun jugador o se invalido la cache, lo leido no se queda en la
+ * cache: podria ser anterior a lo guardado.
+ *
+ * Un hilo vigila la carpeta con WatchService. Si el archivo del almacen
+ * cambia sin pasar por este proceso se recarga el almacen y se vacia la
+ * cache; si aparecen .dat nuevos se migran.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class CacheJugadores {
+
+    public static final int CAPACIDAD_DEFECTO = 10_000;
+    // Entradas que se miran para elegir cual sale
+    private static final int MUESTRA_EXPULSION = 16;
+
+    private final AlmacenJugadores almacen;
+    private final int capacidad;
+    private final Map<String, Entrada> jugadores = new ConcurrentHashMap<>();
+    // Cambia en cada guardado e invalidacion, para no meter en la cache algo leido antes
+    private final AtomicLong cambios = new AtomicLong();
+    // Sigue por donde se quedo la muestra anterior; solo con el cerrojo de expulsar
+    private Iterator<Map.Entry<String, Entrada>> manecilla;
+    private WatchService vigilante;
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder invalidaciones = new LongAdder();
+    private final LongAdder expulsiones = new LongAdder();
+
+    /**
+     * Constructor parametrizado, precarga la cache y empieza a vigilar la carpeta
+     *
+     * @param almacen Almacen de jugadores
+     * @param carpeta Carpeta del almacen, la que se vigila
+     * @param capacidad Jugadores que caben en memoria
+     */
+    public CacheJugadores(AlmacenJugadores almacen, Path carpeta, int capacidad) {
+        if (capacidad <= 0) throw new IllegalArgumentException("Capacidad invalida: " + capacidad);
+        this.almacen = almacen;
+        this.capacidad = capacidad;
+        precargar();
+        vigilar(carpeta);
+    }
+
+    /**
+     * Jugador por nombre, del mapa o si no del almacen
+     *
+     * @param nombre Nombre del jugador
+     * @return Copia del jugador, o null si no existe
+     */
+    public Jugador obtener(String nombre) {
+        Entrada entrada = jugadores.get(nombre);
+        if (entrada != null) {
+            entrada.uso = System.nanoTime();
+            aciertos.increment();
+            return copia(entrada.jugador);
+        }
+        fallos.increment();
+        long vista = cambios.get();
+        Jugador cargado = almacen.cargar(nombre);
+        if (cargado == null) return null;
+        Entrada nueva = new Entrada(cargado, System.nanoTime());
+        if (jugadores.putIfAbsent(nombre, nueva) == null) {
+            // Un guardado o una invalidacion por medio: lo leido puede ser viejo
+            if (cambios.get() != vista) jugadores.remove(nombre, nueva);
+            else expulsarSiSobra();
+        }
+        return copia(cargado);
+    }
+
+    /**
+     * Guarda un jugador en el almacen y actualiza la cache
+     *
+     * @param jugador Jugador a guardar
+     * @return true si se guardo
+     */
+    public boolean guardar(Jugador jugador) {
+        if (!almacen.guardar(jugador)) return false;
+        // Antes de meterlo, para que una busqueda en curso vea el cambio y no lo pise
+        cambios.incrementAndGet();
+        jugadores.put(jugador.getNombre(), new Entrada(copia(jugador), System.nanoTime()));
+        expulsarSiSobra();
+        return true;
+    }
+
+    /**
+     * Vacia la cache
+     */
+    public void invalidar() {
+        cambios.incrementAndGet();
+        jugadores.clear();
+        invalidaciones.increment();
+    }
+
+    /**
+     * Deja de vigilar la carpeta
+     */
+    public void cerrar() {
+        try {if (vigilante != null) vigilante.close();}
+        catch (IOException e) {System.err.println("Error al cerrar el vigilante de jugadores: " + e.getMessage());}
+    }
+
+    /**
+     * Carga jugadores del almacen hasta llenar la cache
+     */
+    private void precargar() {
+        for (String nombre : almacen.nombres()) {
+            if (jugadores.size() >= capacidad) break;
+            Jugador jugador = almacen.cargar(nombre);
+            if (jugador != null) jugadores.put(nombre, new Entrada(jugador, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Saca entradas mientras haya mas que la capacidad; de cada muestra sale
+     * la que lleva mas tiempo sin usarse. Las busquedas no toman este cerrojo.
+     */
+    private synchronized void expulsarSiSobra() {
+        while (jugadores.size() > capacidad) {
+            Map.Entry<String, Entrada> peor = null;
+            for (int i = 0; i < MUESTRA_EXPULSION; i++) {
+                if (manecilla == null || !manecilla.hasNext()) manecilla = jugadores.entrySet().iterator();
+                if (!manecilla.hasNext()) return;
+                Map.Entry<String, Entrada> candidata = manecilla.next();
+                if (peor == null || candidata.getValue().uso < peor.getValue().uso) peor = candidata;
+            }
+            if (jugadores.remove(peor.getKey(), peor.getValue())) expulsiones.increment();
+        }
+    }
+
+    /**
+     * Arranca el hilo que vigila la carpeta
+     *
+     * @param carpeta Carpeta del almacen
+     */
+    private void vigilar(Path carpeta) {
+        try {
+            vigilante = FileSystems.getDefault().newWatchService();
+            carpeta.register(vigilante, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.err.println("No se puede vigilar '" + carpeta + "', los cambios externos no se veran: " + e.getMessage());
+            return;
+        }
+        Thread hilo = new Thread(this::bucleVigilante, "vigilante-jugadores");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Hilo vigilante: atiende los cambios de la carpeta hasta que se cierra
+     */
+    private void bucleVigilante() {
+        try {
+            while (true) {
+                WatchKey clave = vigilante.take();
+                boolean almacenTocado = false, datNuevos = false;
+                for (WatchEvent<?> evento : clave.pollEvents()) {
+                    if (evento.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        almacenTocado = true;
+                        continue;
+                    }
+                    String archivo = evento.context().toString();
+                    if (archivo.equals(AlmacenJugadores.NOMBRE_ARCHIVO)) almacenTocado = true;
+                    else if (archivo.endsWith(".dat")) datNuevos = true;
+                }
+                // Las escrituras propias tambien avisan; solo cuenta si el archivo no es el esperado
+                if (almacenTocado && almacen.cambiadoFuera()) {
+                    System.out.println("El almacen de jugadores cambio fuera del juego, se recarga.");
+                    try {almacen.recargar();}
+                    catch (IOException e) {System.err.println("No se pudo recargar el almacen de jugadores: " + e.getMessage());}
+                    invalidar();
+                }
+                if (datNuevos && almacen.migrarDat() > 0) invalidar();
+                if (!clave.reset()) return;
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Cerrado: termina el hilo
+        }
+    }
+
+    /**
+     * Copia de un jugador
+     *
+     * @param jugador Jugador
+     * @return Jugador nuevo con los mismos datos
+     */
+    private static Jugador copia(Jugador jugador) {
+        return new Jugador(jugador.getNombre(), jugador.getEmail(), jugador.getFilaActual(), jugador.getColumnaActual(), jugador.getPuntos());
+    }
+
+    /**
+     * Getter del tamano
+     * @return Jugadores en memoria
+     */
+    public int getTamano() {return jugadores.size();}
+
+    /**
+     * Getter de aciertos
+     * @return Busquedas servidas desde memoria
+     */
+    public long getAciertos() {return aciertos.sum();}
+
+    /**
+     * Getter de fallos
+     * @return Busquedas que fueron al almacen
+     */
+    public long getFallos() {return fallos.sum();}
+
+    /**
+     * Resumen de los contadores
+     * @return Texto con tamano, aciertos, fallos, expulsiones e invalidaciones
+     */
+    public String resumen() {
+        return "jugadores=" + jugadores.size() + " aciertos=" + aciertos.sum() + " fallos=" + fallos.sum()
+                + " expulsiones=" + expulsiones.sum() + " invalidaciones=" + invalidaciones.sum();
+    }
+
+    /**
+     * Un jugador en la cache y cuando se uso por ultima vez
+     */
+    private static class Entrada {
+        final Jugador jugador;
+        volatile long uso;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param jugador Jugador, no se da a nadie
+         * @param uso System.nanoTime() al usarlo
+         */
+        Entrada(Jugador jugador, long uso) {
+            this.jugador = jugador;
+            this.uso = uso;
+        }
+    }
+}
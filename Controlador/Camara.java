@@ -0,0 +1,99 @@
+package Controlador;
+
+/**
+ * Camara que recorre el mapa en pixeles, centrada en el jugador y sin salirse
+ * de los bordes del escenario.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class Camara {
+
+    private double x;
+    private double y;
+    private double anchoVista;
+    private double altoVista;
+    private double anchoMundo;
+    private double altoMundo;
+
+    /**
+     * Constructor parametrizado
+     *
+     * @param anchoVista Ancho visible en pixeles
+     * @param altoVista Alto visible en pixeles
+     * @param anchoMundo Ancho del mapa completo en pixeles
+     * @param altoMundo Alto del mapa completo en pixeles
+     */
+    public Camara(double anchoVista, double altoVista, double anchoMundo, double altoMundo) {
+        this.anchoVista = anchoVista;
+        this.altoVista = altoVista;
+        this.anchoMundo = anchoMundo;
+        this.altoMundo = altoMundo;
+    }
+
+    /**
+     * Centra la camara en un punto del mundo
+     *
+     * @param centroX Pixel X del mundo
+     * @param centroY Pixel Y del mundo
+     * @return true si la camara se ha movido
+     */
+    public boolean centrarEn(double centroX, double centroY) {
+        double nuevaX = limitar(centroX - anchoVista / 2, anchoMundo - anchoVista);
+        double nuevaY = limitar(centroY - altoVista / 2, altoMundo - altoVista);
+        if (nuevaX == x && nuevaY == y) return false;
+        x = nuevaX;
+        y = nuevaY;
+        return true;
+    }
+
+    /**
+     * Cambia el tamano de la vista (p.ej. si se redimensiona el lienzo)
+     *
+     * @param anchoVista Ancho visible en pixeles
+     * @param altoVista Alto visible en pixeles
+     */
+    public void setVista(double anchoVista, double altoVista) {
+        this.anchoVista = anchoVista;
+        this.altoVista = altoVista;
+        x = limitar(x, anchoMundo - anchoVista);
+        y = limitar(y, altoMundo - altoVista);
+    }
+
+    /**
+     * Getter de X
+     * @return Pixel del mundo en la esquina izquierda de la vista
+     */
+    public double getX() {return x;}
+
+    /**
+     * Getter de Y
+     * @return Pixel del mundo en la esquina superior de la vista
+     */
+    public double getY() {return y;}
+
+    /**
+     * Getter del ancho de vista
+     * @return Ancho visible en pixeles
+     */
+    public double getAnchoVista() {return anchoVista;}
+
+    /**
+     * Getter del alto de vista
+     * @return Alto visible en pixeles
+     */
+    public double getAltoVista() {return altoVista;}
+
+    /**
+     * Deja el valor entre 0 y maximo; si el mapa es mas pequeno que la vista se queda en 0
+     *
+     * @param valor Valor a limitar
+     * @param maximo Maximo permitido
+     * @return El valor limitado
+     */
+    private static double limitar(double valor, double maximo) {
+        if (maximo <= 0) return 0;
+        return Math.max(0, Math.min(valor, maximo));
+    }
+}
@@ -0,0 +1,133 @@
+package Controlador;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+
+/**
+ * Cargas de datos de una pantalla fuera del hilo de JavaFX
+ * Cada carga corre en un hilo virtual y su resultado se publica con
+ * Platform.runLater, asi la escena se muestra enseguida y la E/S (SQLite,
+ * archivos) no congela la ventana. Al salir de la pantalla se cancelan sus
+ * cargas: las que no han empezado ya no se ejecutan y las que estan en
+ * marcha acaban, pero su resultado no llega a la interfaz. No se
+ * interrumpen porque comparten recursos con otras pantallas (la conexion
+ * SQLite, las cargas de RepositorioNiveles) y una interrupcion a medias
+ * cerraria canales que usan los demas.
+ *
+ * Cada pantalla tiene el suyo, creado por App al navegar. Al publicar un
+ * resultado se apunta en TiemposPantalla cuanto tardo desde la navegacion.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class CargadorAsincrono {
+
+    private static final ExecutorService HILOS = Executors.newVirtualThreadPerTaskExecutor();
+    private static final AtomicLong canceladas = new AtomicLong();
+
+    private final String pantalla;
+    private final long inicioNanos = System.nanoTime();
+    private final Set<Future<?>> pendientes = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelado = false;
+
+    /**
+     * Constructor parametrizado, el tiempo de la pantalla empieza a contar aqui
+     *
+     * @param pantalla Nombre de la pantalla, para las metricas
+     */
+    public CargadorAsincrono(String pantalla) {this.pantalla = pantalla;}
+
+    /**
+     * Lanza una carga; si falla solo se informa por consola
+     *
+     * @param <T> Tipo del resultado
+     * @param que Nombre de la carga, para las metricas
+     * @param carga Trabajo a hacer fuera del hilo de JavaFX
+     * @param alCargar Recibe el resultado en el hilo de JavaFX
+     */
+    public <T> void cargar(String que, Callable<T> carga, Consumer<T> alCargar) {
+        cargar(que, carga, alCargar, e -> System.err.println("Error al cargar " + que + " de " + pantalla + ": " + e));
+    }
+
+    /**
+     * Lanza una carga
+     *
+     * @param <T> Tipo del resultado
+     * @param que Nombre de la carga, para las metricas
+     * @param carga Trabajo a hacer fuera del hilo de JavaFX
+     * @param alCargar Recibe el resultado en el hilo de JavaFX
+     * @param alFallar Recibe el error en el hilo de JavaFX
+     */
+    public <T> void cargar(String que, Callable<T> carga, Consumer<T> alCargar, Consumer<Exception> alFallar) {
+        if (cancelado) return;
+        pendientes.removeIf(Future::isDone);
+        pendientes.add(HILOS.submit(() -> {
+            T resultado;
+            try {
+                resultado = carga.call();
+            } catch (Exception e) {
+                publicar(() -> alFallar.accept(e));
+                return;
+            }
+            publicar(() -> {
+                TiemposPantalla.registrar(pantalla, que, System.nanoTime() - inicioNanos);
+                alCargar.accept(resultado);
+            });
+        }));
+    }
+
+    /**
+     * Pasa un resultado al hilo de JavaFX si la pantalla sigue activa
+     *
+     * @param accion Lo que hay que hacer con el resultado
+     */
+    private void publicar(Runnable accion) {
+        if (cancelado) return;
+        Platform.runLater(() -> {
+            if (!cancelado) accion.run();
+        });
+    }
+
+    /**
+     * Cancela las cargas pendientes y descarta las que aun no se publicaron.
+     * Se llama al salir de la pantalla.
+     */
+    public void cancelar() {
+        cancelado = true;
+        for (Future<?> pendiente : pendientes)
+            if (pendiente.cancel(false)) canceladas.incrementAndGet();
+        pendientes.clear();
+    }
+
+    /**
+     * Getter de la pantalla
+     * @return Nombre de la pantalla
+     */
+    public String getPantalla() {return pantalla;}
+
+    /**
+     * Getter del inicio
+     * @return System.nanoTime() al navegar a la pantalla
+     */
+    public long getInicioNanos() {return inicioNanos;}
+
+    /**
+     * Comprueba si ya se salio de la pantalla
+     * @return true si se cancelo
+     */
+    public boolean estaCancelado() {return cancelado;}
+
+    /**
+     * Getter de canceladas
+     * @return Cargas canceladas antes de terminar, en todas las pantallas
+     */
+    public static long getCanceladas() {return canceladas.get();}
+}
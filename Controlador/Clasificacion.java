@@ -0,0 +1,422 @@
+package Controlador;
+
+import Modelo.Puntuacion;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consultas de la clasificacion sobre SQLite
+ * Paginacion por cursor (sin OFFSET), mejor puntuacion de cada jugador,
+ * posicion de un jugador y percentiles.
+ *
+ * La mejor puntuacion de cada jugador esta en MejoresJugador, que mantiene
+ * un trigger al insertar en Puntuaciones. Para no contar millones de filas
+ * al pedir una posicion, otros triggers llevan cuantos jugadores tienen cada
+ * mejor puntuacion (ConteoPuntos) y cada bloque de 1024 puntos
+ * (ConteoBloques). La posicion de una puntuacion es 1 + los jugadores de
+ * los bloques superiores + los de su bloque con mas puntos: como mucho unas
+ * pocas miles de filas, sin importar cuantas puntuaciones haya.
+ *
+ * Todas las consultas usan la conexion y el cerrojo de SQLite.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class Clasificacion {
+
+    private static final int BITS_BLOQUE = 10;
+
+    /** Indices, tablas y triggers; SQLite.inicializarBaseDatos los crea si no existen */
+    static final String[] ESQUEMA = {
+        "CREATE INDEX IF NOT EXISTS idx_puntuaciones_puntuacion ON Puntuaciones(puntuacion DESC)",
+        """
+        CREATE TABLE IF NOT EXISTS MejoresJugador (
+            nombre TEXT PRIMARY KEY,
+            puntuacion INTEGER NOT NULL,
+            id INTEGER NOT NULL
+        ) WITHOUT ROWID""",
+        "CREATE INDEX IF NOT EXISTS idx_mejores_puntuacion ON MejoresJugador(puntuacion DESC, nombre)",
+        "CREATE TABLE IF NOT EXISTS ConteoPuntos (puntuacion INTEGER PRIMARY KEY, jugadores INTEGER NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS ConteoBloques (bloque INTEGER PRIMARY KEY, jugadores INTEGER NOT NULL)",
+        """
+        CREATE TRIGGER IF NOT EXISTS trg_mejor_jugador AFTER INSERT ON Puntuaciones BEGIN
+            INSERT INTO MejoresJugador(nombre, puntuacion, id) VALUES (NEW.nombre, NEW.puntuacion, NEW.id)
+                ON CONFLICT(nombre) DO UPDATE SET puntuacion = excluded.puntuacion, id = excluded.id
+                WHERE excluded.puntuacion > MejoresJugador.puntuacion;
+        END""",
+        """
+        CREATE TRIGGER IF NOT EXISTS trg_conteo_alta AFTER INSERT ON MejoresJugador BEGIN
+            INSERT INTO ConteoPuntos(puntuacion, jugadores) VALUES (NEW.puntuacion, 1)
+                ON CONFLICT(puntuacion) DO UPDATE SET jugadores = jugadores + 1;
+            INSERT INTO ConteoBloques(bloque, jugadores) VALUES (NEW.puntuacion >> 10, 1)
+                ON CONFLICT(bloque) DO UPDATE SET jugadores = jugadores + 1;
+        END""",
+        """
+        CREATE TRIGGER IF NOT EXISTS trg_conteo_cambio AFTER UPDATE OF puntuacion ON MejoresJugador BEGIN
+            UPDATE ConteoPuntos SET jugadores = jugadores - 1 WHERE puntuacion = OLD.puntuacion;
+            UPDATE ConteoBloques SET jugadores = jugadores - 1 WHERE bloque = OLD.puntuacion >> 10;
+            INSERT INTO ConteoPuntos(puntuacion, jugadores) VALUES (NEW.puntuacion, 1)
+                ON CONFLICT(puntuacion) DO UPDATE SET jugadores = jugadores + 1;
+            INSERT INTO ConteoBloques(bloque, jugadores) VALUES (NEW.puntuacion >> 10, 1)
+                ON CONFLICT(bloque) DO UPDATE SET jugadores = jugadores + 1;
+        END"""
+    };
+
+    // Es "puntuacion < ? OR (puntuacion = ? AND id > ?)"; escrito asi SQLite entra al indice por el cursor en vez de recorrerlo desde arriba
+    private static final String SQL_PAGINA = """
+            SELECT nombre, puntuacion, id FROM Puntuaciones
+            WHERE puntuacion <= ? AND (puntuacion < ? OR id > ?) ORDER BY puntuacion DESC, id LIMIT ?""";
+    private static final String SQL_FILA = "SELECT puntuacion, id FROM Puntuaciones ORDER BY puntuacion DESC, id LIMIT 1 OFFSET ?";
+    private static final String SQL_PAGINA_JUGADORES = """
+            SELECT nombre, puntuacion FROM MejoresJugador
+            WHERE puntuacion <= ? AND (puntuacion < ? OR nombre > ?) ORDER BY puntuacion DESC, nombre LIMIT ?""";
+    private static final String SQL_MEJOR = "SELECT puntuacion FROM MejoresJugador WHERE nombre = ?";
+    private static final String SQL_SUPERIORES = """
+            SELECT (SELECT COALESCE(SUM(jugadores), 0) FROM ConteoBloques WHERE bloque > ?)
+                 + (SELECT COALESCE(SUM(jugadores), 0) FROM ConteoPuntos WHERE puntuacion > ? AND puntuacion < ?)""";
+    private static final String SQL_EMPATADOS = "SELECT jugadores FROM ConteoPuntos WHERE puntuacion = ?";
+    private static final String SQL_TOTAL = "SELECT COALESCE(SUM(jugadores), 0) FROM ConteoBloques";
+    private static final String SQL_BLOQUES = "SELECT bloque, jugadores FROM ConteoBloques WHERE jugadores > 0 ORDER BY bloque DESC";
+    private static final String SQL_PUNTOS_BLOQUE = """
+            SELECT puntuacion, jugadores FROM ConteoPuntos
+            WHERE puntuacion >= ? AND puntuacion < ? AND jugadores > 0 ORDER BY puntuacion DESC""";
+
+    /**
+     * Rellena MejoresJugador la primera vez, en bases creadas antes de que existiera
+     *
+     * @param conexion Conexion abierta
+     * @throws SQLException Error de la consulta
+     */
+    static void rellenarSiHaceFalta(Connection conexion) throws SQLException {
+        try (Statement declaracion = conexion.createStatement()) {
+            boolean vacia;
+            try (ResultSet r = declaracion.executeQuery("SELECT NOT EXISTS (SELECT 1 FROM MejoresJugador) AND EXISTS (SELECT 1 FROM Puntuaciones)")) {
+                vacia = r.next() && r.getBoolean(1);
+            }
+            if (!vacia) return;
+            System.out.println("Calculando la mejor puntuacion de cada jugador...");
+            // Con MAX, SQLite toma el id de la fila que tiene el maximo
+            declaracion.execute("INSERT INTO MejoresJugador(nombre, puntuacion, id) SELECT nombre, MAX(puntuacion), id FROM Puntuaciones GROUP BY nombre");
+        }
+    }
+
+    /**
+     * Una pagina de puntuaciones, de mayor a menor
+     *
+     * @param cursor Donde acabo la pagina anterior, o Cursor.INICIO
+     * @param tamano Filas de la pagina
+     * @return La pagina con el cursor de la siguiente, o null si falla la consulta
+     */
+    public static Pagina pagina(Cursor cursor, int tamano) {
+        synchronized (SQLite.class) {
+            try {
+                PreparedStatement consulta = SQLite.getConexion().preparar(SQL_PAGINA);
+                consulta.setLong(1, cursor.puntuacion);
+                consulta.setLong(2, cursor.puntuacion);
+                consulta.setLong(3, cursor.id);
+                consulta.setInt(4, tamano);
+                List<Puntuacion> filas = new ArrayList<>(tamano);
+                long puntuacion = cursor.puntuacion, id = cursor.id;
+                try (ResultSet r = consulta.executeQuery()) {
+                    while (r.next()) {
+                        filas.add(new Puntuacion(r.getString(1), r.getInt(2), r.getLong(3)));
+                        puntuacion = r.getInt(2);
+                        id = r.getLong(3);
+                    }
+                }
+                return new Pagina(filas, new Cursor(puntuacion, id), filas.size() < tamano);
+            } catch (SQLException e) {
+                System.err.println("Error al paginar puntuaciones: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Cursor tras las primeras filas de la clasificacion. Usa OFFSET sobre la
+     * tabla tal como esta ahora, asi que sirve para situarse (p.ej. en las
+     * pruebas de rendimiento), no para seguir una lista leida antes: para eso
+     * el cursor sale de su ultima fila.
+     *
+     * @param filas Filas ya mostradas desde la primera
+     * @return El cursor, o null si falla la consulta
+     */
+    public static Cursor cursorTras(long filas) {
+        if (filas <= 0) return Cursor.INICIO;
+        synchronized (SQLite.class) {
+            try {
+                PreparedStatement consulta = SQLite.getConexion().preparar(SQL_FILA);
+                consulta.setLong(1, filas - 1);
+                try (ResultSet r = consulta.executeQuery()) {
+                    // Si la tabla tiene menos filas ya no queda nada detras
+                    return r.next() ? new Cursor(r.getLong(1), r.getLong(2)) : new Cursor(Long.MIN_VALUE, Long.MAX_VALUE);
+                }
+            } catch (SQLException e) {
+                System.err.println("Error al situar el cursor: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Una pagina de la clasificacion por jugadores (su mejor puntuacion), de mayor a menor
+     *
+     * @param despuesDe Ultima fila de la pagina anterior, o null para la primera
+     * @param tamano Filas de la pagina
+     * @return Las filas, o null si falla la consulta
+     */
+    public static List<Puntuacion> paginaJugadores(Puntuacion despuesDe, int tamano) {
+        synchronized (SQLite.class) {
+            try {
+                PreparedStatement consulta = SQLite.getConexion().preparar(SQL_PAGINA_JUGADORES);
+                long puntos = (despuesDe != null) ? despuesDe.getPuntuacion() : Long.MAX_VALUE;
+                consulta.setLong(1, puntos);
+                consulta.setLong(2, puntos);
+                consulta.setString(3, (despuesDe != null) ? despuesDe.getNombre() : "");
+                consulta.setInt(4, tamano);
+                return leer(consulta);
+            } catch (SQLException e) {
+                System.err.println("Error al paginar jugadores: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Mejor puntuacion de un jugador
+     *
+     * @param nombre Nombre del jugador
+     * @return Su mejor puntuacion, o null si no tiene ninguna
+     */
+    public static Integer mejorDe(String nombre) {
+        synchronized (SQLite.class) {
+            try {
+                PreparedStatement consulta = SQLite.getConexion().preparar(SQL_MEJOR);
+                consulta.setString(1, nombre);
+                try (ResultSet r = consulta.executeQuery()) {return r.next() ? r.getInt(1) : null;}
+            } catch (SQLException e) {
+                System.err.println("Error al consultar la mejor puntuacion de " + nombre + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Posicion de un jugador por su mejor puntuacion. Los empatados
+     * comparten posicion (1, 2, 2, 4...).
+     *
+     * @param nombre Nombre del jugador
+     * @return Posicion desde 1, o -1 si no tiene puntuaciones o falla la consulta
+     */
+    public static long posicion(String nombre) {
+        synchronized (SQLite.class) {
+            Integer mejor = mejorDe(nombre);
+            return (mejor != null) ? posicionDe(mejor) : -1;
+        }
+    }
+
+    /**
+     * Posicion que tendria una puntuacion entre las mejores de cada jugador
+     *
+     * @param puntuacion Puntuacion
+     * @return 1 + jugadores con una mejor puntuacion mayor, o -1 si falla la consulta
+     */
+    public static long posicionDe(int puntuacion) {
+        synchronized (SQLite.class) {
+            try {
+                long bloque = (long) puntuacion >> BITS_BLOQUE;
+                PreparedStatement consulta = SQLite.getConexion().preparar(SQL_SUPERIORES);
+                consulta.setLong(1, bloque);
+                consulta.setLong(2, puntuacion);
+                consulta.setLong(3, (bloque + 1) << BITS_BLOQUE);
+                try (ResultSet r = consulta.executeQuery()) {return r.next() ? r.getLong(1) + 1 : -1;}
+            } catch (SQLException e) {
+                System.err.println("Error al calcular la posicion: " + e.getMessage());
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Percentil de un jugador: porcentaje de jugadores con una mejor puntuacion menor que la suya
+     *
+     * @param nombre Nombre del jugador
+     * @return Valor entre 0 y 100, o -1 si no tiene puntuaciones
+     */
+    public static double percentil(String nombre) {
+        synchronized (SQLite.class) {
+            Integer mejor = mejorDe(nombre);
+            if (mejor == null) return -1;
+            long total = totalJugadores();
+            long superiores = posicionDe(mejor) - 1;
+            long empatados = empatados(mejor);
+            if (total <= 0 || superiores < 0 || empatados < 0) return -1;
+            return 100.0 * (total - superiores - empatados) / total;
+        }
+    }
+
+    /**
+     * Puntuacion en un percentil: la mejor puntuacion que supera a ese
+     * porcentaje de jugadores (p.ej. 90 da la del primer 10%)
+     *
+     * @param percentil Valor entre 0 y 100
+     * @return La puntuacion, o null si no hay jugadores
+     */
+    public static Integer puntuacionEnPercentil(double percentil) {
+        if (percentil < 0 || percentil > 100) throw new IllegalArgumentException("Percentil fuera de [0, 100]: " + percentil);
+        synchronized (SQLite.class) {
+            try {
+                long total = totalJugadores();
+                if (total <= 0) return null;
+                long objetivo = Math.max(1, Math.min(total, (long) Math.ceil((100 - percentil) / 100 * total)));
+
+                long acumulado = 0;
+                Long bloque = null;
+                try (ResultSet r = SQLite.getConexion().preparar(SQL_BLOQUES).executeQuery()) {
+                    while (r.next()) {
+                        long enBloque = r.getLong(2);
+                        if (acumulado + enBloque >= objetivo) {
+                            bloque = r.getLong(1);
+                            break;
+                        }
+                        acumulado += enBloque;
+                    }
+                }
+                if (bloque == null) return null;
+
+                PreparedStatement consulta = SQLite.getConexion().preparar(SQL_PUNTOS_BLOQUE);
+                consulta.setLong(1, bloque << BITS_BLOQUE);
+                consulta.setLong(2, (bloque + 1) << BITS_BLOQUE);
+                try (ResultSet r = consulta.executeQuery()) {
+                    while (r.next()) {
+                        acumulado += r.getLong(2);
+                        if (acumulado >= objetivo) return r.getInt(1);
+                    }
+                }
+                return null;
+            } catch (SQLException e) {
+                System.err.println("Error al calcular el percentil: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Jugadores con al menos una puntuacion
+     *
+     * @return Total, o -1 si falla la consulta
+     */
+    public static long totalJugadores() {
+        synchronized (SQLite.class) {
+            try (ResultSet r = SQLite.getConexion().preparar(SQL_TOTAL).executeQuery()) {
+                return r.next() ? r.getLong(1) : 0;
+            } catch (SQLException e) {
+                System.err.println("Error al contar jugadores: " + e.getMessage());
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Jugadores cuya mejor puntuacion es exactamente esta
+     *
+     * @param puntuacion Puntuacion
+     * @return Cantidad, o -1 si falla la consulta
+     */
+    private static long empatados(int puntuacion) {
+        try {
+            PreparedStatement consulta = SQLite.getConexion().preparar(SQL_EMPATADOS);
+            consulta.setLong(1, puntuacion);
+            try (ResultSet r = consulta.executeQuery()) {return r.next() ? r.getLong(1) : 0;}
+        } catch (SQLException e) {
+            System.err.println("Error al contar empatados: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Lee nombre y puntuacion de una consulta
+     *
+     * @param consulta Consulta preparada con sus parametros
+     * @return Las filas
+     * @throws SQLException Error de la consulta
+     */
+    private static List<Puntuacion> leer(PreparedStatement consulta) throws SQLException {
+        List<Puntuacion> filas = new ArrayList<>();
+        try (ResultSet r = consulta.executeQuery()) {
+            while (r.next()) filas.add(new Puntuacion(r.getString(1), r.getInt(2)));
+        }
+        return filas;
+    }
+
+    /**
+     * Posicion en la lista de puntuaciones: puntuacion e id de la ultima fila
+     * vista. Es la clave del orden (puntuacion DESC, id), la misma que el
+     * indice por puntuacion, asi que la siguiente pagina empieza justo ahi
+     * sin saltar filas, aunque haya muchos empates.
+     */
+    public static class Cursor {
+        public static final Cursor INICIO = new Cursor(Long.MAX_VALUE, Long.MAX_VALUE);
+
+        private final long puntuacion;
+        private final long id;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param puntuacion Ultima puntuacion vista
+         * @param id Id de esa fila en Puntuaciones
+         */
+        public Cursor(long puntuacion, long id) {
+            this.puntuacion = puntuacion;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Resultado de pagina()
+     */
+    public static class Pagina {
+        private final List<Puntuacion> filas;
+        private final Cursor siguiente;
+        private final boolean ultima;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param filas Filas de la pagina
+         * @param siguiente Cursor para pedir la siguiente
+         * @param ultima true si no hay mas filas
+         */
+        Pagina(List<Puntuacion> filas, Cursor siguiente, boolean ultima) {
+            this.filas = Collections.unmodifiableList(filas);
+            this.siguiente = siguiente;
+            this.ultima = ultima;
+        }
+
+        /**
+         * Getter de filas
+         * @return Filas de la pagina
+         */
+        public List<Puntuacion> getFilas() {return filas;}
+
+        /**
+         * Getter del cursor
+         * @return Cursor para la siguiente pagina
+         */
+        public Cursor getSiguiente() {return siguiente;}
+
+        /**
+         * Comprueba si es la ultima
+         * @return true si no hay mas filas
+         */
+        public boolean esUltima() {return ultima;}
+    }
+}
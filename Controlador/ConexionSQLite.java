@@ -0,0 +1,148 @@
+package Controlador;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Conexion SQLite que dura toda la ejecucion
+ * Se abre la primera vez que se usa, con WAL y pragmas ajustados, y guarda
+ * las sentencias preparadas por su SQL para no volver a compilarlas. SQLite
+ * solo admite un escritor a la vez, asi que una conexion basta. Las
+ * sentencias devueltas son compartidas: quien las use tiene que serializar
+ * su uso (SQLite lo hace con sus metodos synchronized).
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class ConexionSQLite {
+
+    // WAL: las escrituras van al log y no bloquean a los lectores.
+    // synchronous=NORMAL: con WAL solo hace fsync en los checkpoints, no en cada commit.
+    private static final String[] PRAGMAS = {
+        "PRAGMA journal_mode=WAL",
+        "PRAGMA synchronous=NORMAL",
+        "PRAGMA cache_size=-8000",
+        "PRAGMA temp_store=MEMORY",
+        "PRAGMA busy_timeout=5000"
+    };
+
+    private final String url;
+    private Connection conexion;
+    private final Map<String, PreparedStatement> sentencias = new HashMap<>();
+
+    private long aperturas = 0;
+    private long preparadas = 0;
+    private long reutilizadas = 0;
+
+    /**
+     * Constructor parametrizado, no abre todavia la conexion
+     *
+     * @param url URL JDBC de la base de datos
+     */
+    public ConexionSQLite(String url) {this.url = url;}
+
+    /**
+     * Conexion abierta, abriendola si hace falta
+     *
+     * @return La conexion
+     * @throws SQLException Error al abrir la base de datos
+     */
+    public synchronized Connection getConexion() throws SQLException {
+        if (conexion == null || conexion.isClosed()) abrir();
+        return conexion;
+    }
+
+    /**
+     * Sentencia preparada para un SQL; la misma cadena devuelve siempre la
+     * misma sentencia mientras la conexion siga abierta
+     *
+     * @param sql Sentencia SQL
+     * @return La sentencia preparada
+     * @throws SQLException Error al preparar
+     */
+    public synchronized PreparedStatement preparar(String sql) throws SQLException {
+        Connection c = getConexion();
+        PreparedStatement sentencia = sentencias.get(sql);
+        if (sentencia != null && !sentencia.isClosed()) {
+            reutilizadas++;
+            return sentencia;
+        }
+        sentencia = c.prepareStatement(sql);
+        sentencias.put(sql, sentencia);
+        preparadas++;
+        return sentencia;
+    }
+
+    /**
+     * Cierra las sentencias y la conexion. Se puede volver a usar despues,
+     * se reabrira al pedir la conexion.
+     */
+    public synchronized void cerrar() {
+        for (PreparedStatement sentencia : sentencias.values()) {
+            try {sentencia.close();}
+            catch (SQLException e) {System.err.println("Error al cerrar sentencia: " + e.getMessage());}
+        }
+        sentencias.clear();
+        if (conexion == null) return;
+        try {
+            // Pasa el WAL a la base antes de cerrar, asi no queda el -wal pendiente
+            try (Statement declaracion = conexion.createStatement()) {declaracion.execute("PRAGMA wal_checkpoint(TRUNCATE)");}
+            conexion.close();
+            System.out.println("Conexion SQLite cerrada.");
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar la conexion SQLite: " + e.getMessage());
+        }
+        conexion = null;
+    }
+
+    /**
+     * Abre la conexion y aplica los pragmas
+     *
+     * @throws SQLException Error al abrir
+     */
+    private void abrir() throws SQLException {
+        sentencias.clear();
+        conexion = DriverManager.getConnection(url);
+        aperturas++;
+        try (Statement declaracion = conexion.createStatement()) {
+            for (String pragma : PRAGMAS) {
+                try {declaracion.execute(pragma);}
+                catch (SQLException e) {System.err.println("No se pudo aplicar " + pragma + ": " + e.getMessage());}
+            }
+            try (ResultSet modo = declaracion.executeQuery("PRAGMA journal_mode")) {
+                if (modo.next()) System.out.println("Conexion SQLite abierta (" + url + ", journal_mode=" + modo.getString(1) + ").");
+            }
+        }
+    }
+
+    /**
+     * Getter de la URL
+     * @return URL JDBC
+     */
+    public String getUrl() {return url;}
+
+    /**
+     * Getter de aperturas
+     * @return Veces que se abrio la conexion
+     */
+    public synchronized long getAperturas() {return aperturas;}
+
+    /**
+     * Getter de sentencias preparadas
+     * @return Sentencias compiladas
+     */
+    public synchronized long getPreparadas() {return preparadas;}
+
+    /**
+     * Getter de sentencias reutilizadas
+     * @return Veces que se devolvio una sentencia ya preparada
+     */
+    public synchronized long getReutilizadas() {return reutilizadas;}
+}
@@ -8,6 +8,9 @@ import java.util.Set;
 
 /**
  * Clase que controla el movimiento del jugador
+ * Lleva las teclas pulsadas de una pantalla y las traduce a la entrada de
+ * Movimiento. Es la unica parte del movimiento que depende de JavaFX; cada
+ * pantalla tiene la suya, sin estado estatico.
  * 
  * @author Santiago
  * @author Juan
@@ -15,7 +18,7 @@ import java.util.Set;
  */
 public class Control {
 
-    private static final Set<KeyCode> teclasPresionadas = new HashSet<>();
+    private final Set<KeyCode> teclasPresionadas = new HashSet<>();
 
     /**
      * Intenta mover al jugador basado en las teclas presionadas y valida colisiones.
@@ -23,36 +26,19 @@ public class Control {
      * @param escenario La instancia del escenario actual.
      * @return true si el jugador se movió, false si no hubo movimiento o hubo colisión.
      */
-    public static boolean mov(Jugador jugador, Escenario escenario) {
-        if (jugador == null || escenario == null) {
-            System.err.println("Error en Control.mov: Jugador o Escenario es null.");
-            return false;
-        }
+    public boolean mov(Jugador jugador, Escenario escenario) {return Movimiento.mover(jugador, escenario, entrada());}
 
-        int cambioFila = 0;
-        int cambioColumna = 0;
-
-        if (teclasPresionadas.contains(KeyCode.W)) cambioFila = -1;
-        if (teclasPresionadas.contains(KeyCode.S)) cambioFila = 1;
-        if (teclasPresionadas.contains(KeyCode.A)) cambioColumna = -1;
-        if (teclasPresionadas.contains(KeyCode.D)) cambioColumna = 1;
-
-        if (cambioFila == 0 && cambioColumna == 0) return false;
-
-        int nuevaFila = jugador.getFilaActual() + cambioFila;
-        int nuevaColumna = jugador.getColumnaActual() + cambioColumna;
-
-        if (nuevaFila < 0 || nuevaFila >= escenario.getFilas() ||
-            nuevaColumna < 0 || nuevaColumna >= escenario.getColumnas()) {
-            return false;
-        }
-
-        char tileDestino = escenario.getTile(nuevaFila, nuevaColumna);
-        if (tileDestino == 'O') return false;
-
-        jugador.setFilaActual(nuevaFila);
-        jugador.setColumnaActual(nuevaColumna);
-        return true;
+    /**
+     * Entrada actual del teclado
+     * @return Combinacion de Movimiento.ARRIBA, ABAJO, IZQUIERDA y DERECHA segun WASD
+     */
+    public int entrada() {
+        int entrada = 0;
+        if (teclasPresionadas.contains(KeyCode.W)) entrada |= Movimiento.ARRIBA;
+        if (teclasPresionadas.contains(KeyCode.S)) entrada |= Movimiento.ABAJO;
+        if (teclasPresionadas.contains(KeyCode.A)) entrada |= Movimiento.IZQUIERDA;
+        if (teclasPresionadas.contains(KeyCode.D)) entrada |= Movimiento.DERECHA;
+        return entrada;
     }
 
     /**
@@ -60,17 +46,17 @@ public class Control {
      * Añade la tecla para moverse
      * @param tecla Lector del teclado
      */
-    public static void agregarTecla(KeyCode tecla) {teclasPresionadas.add(tecla);}
+    public void agregarTecla(KeyCode tecla) {teclasPresionadas.add(tecla);}
 
     /**
-     * Tecla que ha pulsado el jugador.
-     * Añade la tecla para moverse
+     * Tecla que ha soltado el jugador.
+     * Quita la tecla para dejar de moverse
      * @param tecla Lector del teclado
      */
-    public static void eliminarTecla(KeyCode tecla) {teclasPresionadas.remove(tecla);}
+    public void eliminarTecla(KeyCode tecla) {teclasPresionadas.remove(tecla);}
 
     /**
      * Limpia el conjunto de teclas presionadas actualmente.
      */
-    public static void limpiarTeclas() {teclasPresionadas.clear();}
-}
\ No newline at end of file
+    public void limpiarTeclas() {teclasPresionadas.clear();}
+}
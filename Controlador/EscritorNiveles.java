@@ -0,0 +1,149 @@
+package Controlador;
+
+import Modelo.Escenario;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Guarda un Escenario en el formato de texto que lee Sesion.cargarEscenario
+ * Las filas se copian por bloques con copiarFilas, se codifican en RLE en
+ * paralelo y los bloques se escriben en orden por un solo FileChannel. Como mucho hay en vuelo unos
+ * pocos bloques por hilo del pool, asi que la memoria no depende del tamano
+ * del mapa. Se escribe a un temporal que se renombra al acabar: si algo
+ * falla, el archivo anterior sigue intacto.
+ *
+ * El escenario no debe cambiar mientras se guarda; si la partida sigue,
+ * guardar una copia().
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class EscritorNiveles {
+
+    // Tiles por bloque: en el peor caso (una racha por tile) son unos 2 MB de texto
+    private static final int TILES_POR_BLOQUE = 1 << 20;
+
+    /**
+     * Guarda un escenario en texto y lo deja compilado, con el pool comun
+     *
+     * @param escenario Escenario a guardar
+     * @param rutaTexto Archivo .txt de destino
+     * @return true si se guardo
+     */
+    public static boolean guardar(Escenario escenario, Path rutaTexto) {return guardar(escenario, rutaTexto, ForkJoinPool.commonPool(), true);}
+
+    /**
+     * Guarda un escenario en texto
+     *
+     * @param escenario Escenario a guardar; solo puede tener tiles 'E' y 'O'
+     * @param rutaTexto Archivo .txt de destino
+     * @param pool Pool donde se codifican los bloques
+     * @param compilar true para escribir tambien el .nvb de al lado
+     * @return true si se guardo
+     */
+    public static boolean guardar(Escenario escenario, Path rutaTexto, ForkJoinPool pool, boolean compilar) {
+        if (escenario == null) return false;
+        int filas = escenario.getFilas(), columnas = escenario.getColumnas();
+        char[] paleta = escenario.getPaleta();
+        int filasPorBloque = Math.max(1, TILES_POR_BLOQUE / columnas);
+        int bloques = (filas + filasPorBloque - 1) / filasPorBloque;
+        int ventana = Math.max(2, pool.getParallelism() * 2);
+
+        Path temporal = null;
+        ArrayDeque<ForkJoinTask<Bloque>> enVuelo = new ArrayDeque<>(ventana);
+        try {
+            temporal = NivelBinario.crearTemporal(rutaTexto);
+            try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                Bloque cabecera = new Bloque(32);
+                EscritorRLE escritor = new EscritorRLE(cabecera);
+                escritor.escribirCabecera(filas, columnas);
+                escritor.vaciar();
+                escribirCompleto(canal, cabecera.comoBuffer());
+
+                int lanzados = 0;
+                for (int b = 0; b < bloques; b++) {
+                    for (; lanzados < bloques && lanzados < b + ventana; lanzados++) {
+                        int desde = lanzados * filasPorBloque;
+                        enVuelo.add(pool.submit(codificar(escenario, desde, Math.min(filas, desde + filasPorBloque), paleta)));
+                    }
+                    escribirCompleto(canal, enVuelo.poll().join().comoBuffer());
+                }
+            }
+            Files.move(temporal, rutaTexto, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            for (ForkJoinTask<Bloque> tarea : enVuelo) tarea.cancel(false);
+            // Los fallos de una tarea llegan envueltos por el pool
+            Throwable causa = e;
+            while (causa.getCause() != null) causa = causa.getCause();
+            System.err.println("No se pudo guardar el escenario '" + rutaTexto + "': " + causa.getMessage());
+            if (temporal != null) try {Files.deleteIfExists(temporal);} catch (IOException ignorada) {}
+            return false;
+        }
+        return !compilar || NivelBinario.guardar(NivelBinario.rutaCompilada(rutaTexto), escenario, rutaTexto);
+    }
+
+    /**
+     * Copia un bloque de filas y prepara su codificacion. La copia se hace en
+     * el hilo que guarda, porque un escenario (el paginado, por ejemplo) no se
+     * puede leer desde varios hilos; solo la codificacion va al pool.
+     *
+     * @param escenario Escenario
+     * @param desde Primera fila
+     * @param hasta Fila final, excluida
+     * @param paleta Paleta del escenario
+     * @return Tarea que devuelve el texto del bloque
+     */
+    private static Callable<Bloque> codificar(Escenario escenario, int desde, int hasta, char[] paleta) {
+        int columnas = escenario.getColumnas();
+        byte[] filas = new byte[(hasta - desde) * columnas];
+        escenario.copiarFilas(desde, hasta, filas, 0);
+        return () -> {
+            // Un mapa de salas y pasillos sale a menos de un byte por tile
+            Bloque bloque = new Bloque((hasta - desde) * Math.min(columnas, 256));
+            EscritorRLE escritor = new EscritorRLE(bloque);
+            for (int i = 0; i < hasta - desde; i++) escritor.escribirFila(filas, i * columnas, columnas, paleta);
+            escritor.vaciar();
+            return bloque;
+        };
+    }
+
+    /**
+     * Escribe el buffer entero en el canal
+     *
+     * @param canal Canal abierto
+     * @param buffer Datos a escribir
+     * @throws IOException Error de escritura
+     */
+    private static void escribirCompleto(FileChannel canal, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) canal.write(buffer);
+    }
+
+    /**
+     * Texto de un bloque; deja ver su array sin copiarlo
+     */
+    private static class Bloque extends ByteArrayOutputStream {
+
+        /**
+         * Constructor parametrizado
+         * @param capacidad Bytes que se reservan al principio
+         */
+        Bloque(int capacidad) {super(Math.max(32, capacidad));}
+
+        /**
+         * Los bytes escritos, sin copiar
+         * @return Buffer en modo lectura sobre el array interno
+         */
+        ByteBuffer comoBuffer() {return ByteBuffer.wrap(buf, 0, count);}
+    }
+}
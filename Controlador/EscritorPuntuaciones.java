@@ -0,0 +1,374 @@
+package Controlador;
+
+import Modelo.Puntuacion;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Escritura de puntuaciones en segundo plano
+ * Las puntuaciones se encolan sin tocar la base de datos y un hilo las
+ * escribe por lotes, cada lote en una sola transaccion (ver SQLite.guardarLote).
+ * Un lote se cierra al llegar a tamanoLote filas o cuando la primera fila
+ * lleva ventanaMs en la cola, lo que pase antes.
+ *
+ * Si la cola esta llena, encolar espera como mucho esperaMaxMs a que haya
+ * sitio y si no la rechaza (devuelve false), asi un pico de escrituras no
+ * puede llenar la memoria ni congelar la interfaz.
+ *
+ * Al cerrar se escribe todo lo que quede en la cola, aunque llegue despues
+ * de la marca de cierre; lo que se encole con el hilo ya parado se rechaza.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class EscritorPuntuaciones {
+
+    public static final int CAPACIDAD_DEFECTO = 10_000;
+    public static final int LOTE_DEFECTO = 500;
+    public static final long VENTANA_MS_DEFECTO = 50;
+    public static final long ESPERA_MAX_MS_DEFECTO = 100;
+    private static final long ESPERA_CIERRE_MS = 10_000;
+    private static final long ESPERA_SINCRONA_MS = 5_000;
+    // Cada cuantos lotes escritos se compara la clasificacion en memoria con la tabla
+    private static final long LOTES_POR_COMPROBACION = 20;
+
+    /**
+     * Cuanto se garantiza que una puntuacion encolada acabe en disco
+     */
+    public enum Durabilidad {
+        /** Commit por lote con synchronous=NORMAL: un corte de luz puede perder el ultimo lote */
+        NORMAL,
+        /** Commit por lote con synchronous=FULL: cada lote confirmado esta en disco */
+        COMPLETA,
+        /** Como COMPLETA, y ademas encolar espera a que su lote este confirmado */
+        SINCRONA
+    }
+
+    private final BlockingQueue<Pendiente> cola;
+    private final int tamanoLote;
+    private final long ventanaNanos;
+    private final long esperaMaxMs;
+    private final Durabilidad durabilidad;
+    private final Thread hilo;
+    private volatile boolean activo = true;
+    // Lo pone el hilo justo antes de su ultimo vaciado de la cola
+    private volatile boolean terminado = false;
+
+    // Metricas
+    private final AtomicInteger maxProfundidad = new AtomicInteger();
+    private final AtomicLong rechazadas = new AtomicLong();
+    private volatile long lotes = 0;
+    private volatile long filasEscritas = 0;
+    private volatile long filasFallidas = 0;
+    private volatile long nanosEscritura = 0, maxNanosEscritura = 0;
+    private volatile long nanosEspera = 0, maxNanosEspera = 0;
+
+    /**
+     * Constructor por defecto
+     */
+    public EscritorPuntuaciones() {
+        this(CAPACIDAD_DEFECTO, LOTE_DEFECTO, VENTANA_MS_DEFECTO, ESPERA_MAX_MS_DEFECTO, Durabilidad.NORMAL);
+    }
+
+    /**
+     * Constructor parametrizado, arranca el hilo escritor
+     *
+     * @param capacidad Puntuaciones que caben en la cola
+     * @param tamanoLote Filas maximas por transaccion
+     * @param ventanaMs Tiempo maximo que espera la primera fila de un lote
+     * @param esperaMaxMs Tiempo que espera encolar si la cola esta llena (0: rechaza enseguida)
+     * @param durabilidad Modo de durabilidad
+     */
+    public EscritorPuntuaciones(int capacidad, int tamanoLote, long ventanaMs, long esperaMaxMs, Durabilidad durabilidad) {
+        if (capacidad <= 0 || tamanoLote <= 0 || ventanaMs < 0 || esperaMaxMs < 0)
+            throw new IllegalArgumentException("Configuracion del escritor de puntuaciones invalida");
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+        this.tamanoLote = tamanoLote;
+        this.ventanaNanos = TimeUnit.MILLISECONDS.toNanos(ventanaMs);
+        this.esperaMaxMs = esperaMaxMs;
+        this.durabilidad = (durabilidad != null) ? durabilidad : Durabilidad.NORMAL;
+        this.hilo = new Thread(this::bucle, "escritor-puntuaciones");
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Encola una puntuacion. En modo SINCRONA espera ademas a que se escriba.
+     *
+     * @param nombre Nombre del jugador
+     * @param puntuacion Puntuacion obtenida
+     * @return true si se acepto (y en modo SINCRONA, si se escribio), false si se rechazo.
+     * En modo SINCRONA tambien es false si el lote no se confirmo en ESPERA_SINCRONA_MS;
+     * la puntuacion puede acabar escrita despues.
+     */
+    public boolean encolar(String nombre, int puntuacion) {
+        if (!activo || nombre == null) return false;
+        boolean esperar = durabilidad == Durabilidad.SINCRONA;
+        Pendiente pendiente = new Pendiente(new Puntuacion(nombre, puntuacion), esperar ? new CompletableFuture<>() : null);
+        try {
+            if (!cola.offer(pendiente, esperaMaxMs, TimeUnit.MILLISECONDS)) {
+                rechazadas.incrementAndGet();
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rechazadas.incrementAndGet();
+            return false;
+        }
+        if (retirarSiTerminado(pendiente)) {
+            rechazadas.incrementAndGet();
+            return false;
+        }
+        maxProfundidad.accumulateAndGet(cola.size(), Math::max);
+        if (!esperar) return true;
+        try {
+            return pendiente.hecho.get(ESPERA_SINCRONA_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (TimeoutException e) {
+            System.err.println("La puntuacion de " + nombre + " no se confirmo en " + ESPERA_SINCRONA_MS + " ms");
+            return false;
+        } catch (ExecutionException e) {return false;}
+    }
+
+    /**
+     * Fuerza la escritura de todo lo encolado hasta ahora
+     *
+     * @return Se completa con true cuando esas puntuaciones estan escritas, o con
+     * false si fallo algun lote desde el vaciado anterior o el escritor ya estaba parado
+     */
+    public CompletableFuture<Boolean> vaciar() {
+        Pendiente marca = new Pendiente(null, new CompletableFuture<>());
+        try {
+            cola.put(marca);
+            if (retirarSiTerminado(marca)) marca.hecho.complete(false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            marca.hecho.complete(false);
+        }
+        return marca.hecho;
+    }
+
+    /**
+     * Saca de la cola un elemento recien metido si el hilo ya hizo su ultimo
+     * vaciado. Si no esta es que ese vaciado lo cogio y lo atiende.
+     *
+     * @param pendiente Elemento encolado
+     * @return true si se saco y nadie lo va a atender
+     */
+    private boolean retirarSiTerminado(Pendiente pendiente) {
+        return terminado && cola.remove(pendiente);
+    }
+
+    /**
+     * Deja de aceptar puntuaciones, escribe las pendientes y para el hilo
+     */
+    public void cerrar() {
+        if (!activo) return;
+        // La marca va antes que el cambio de estado, para que el hilo no pare sin verla
+        CompletableFuture<Boolean> pendientes = vaciar();
+        activo = false;
+        try {
+            if (!pendientes.get(ESPERA_CIERRE_MS, TimeUnit.MILLISECONDS))
+                System.err.println("Fallo la escritura de algun lote de puntuaciones");
+            hilo.join(ESPERA_CIERRE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("No se pudieron escribir todas las puntuaciones pendientes: " + e);
+        }
+        System.out.println("Escritor de puntuaciones cerrado. " + resumen());
+    }
+
+    /**
+     * Hilo escritor: junta lotes y los escribe. Al parar vacia la cola una
+     * ultima vez, asi no se pierde nada de lo que entro antes de terminado.
+     */
+    private void bucle() {
+        List<Pendiente> lote = new ArrayList<>(tamanoLote);
+        Pendiente marca = null;
+        // Si todos los lotes desde la ultima marca se escribieron
+        boolean correcto = true;
+        while (activo) {
+            try {
+                Pendiente primero = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primero == null) continue;
+                long limite = primero.encolado + ventanaNanos;
+                Pendiente siguiente = primero;
+                while (siguiente != null) {
+                    if (siguiente.puntuacion == null) {
+                        marca = siguiente;
+                        break;
+                    }
+                    lote.add(siguiente);
+                    if (lote.size() >= tamanoLote) break;
+                    long espera = limite - System.nanoTime();
+                    siguiente = (espera > 0) ? cola.poll(espera, TimeUnit.NANOSECONDS) : cola.poll();
+                }
+            } catch (InterruptedException e) {
+                if (!activo) break;
+            }
+            if (!lote.isEmpty()) correcto &= escribir(lote);
+            lote.clear();
+            if (marca != null) {
+                marca.hecho.complete(correcto);
+                marca = null;
+                correcto = true;
+            }
+        }
+        if (!lote.isEmpty()) correcto &= escribir(lote);
+        lote.clear();
+
+        terminado = true;
+        List<Pendiente> restos = new ArrayList<>();
+        cola.drainTo(restos);
+        for (Pendiente resto : restos) {
+            if (resto.puntuacion != null) {
+                lote.add(resto);
+                if (lote.size() < tamanoLote) continue;
+            }
+            if (!lote.isEmpty()) correcto &= escribir(lote);
+            lote.clear();
+            if (resto.puntuacion == null) {
+                resto.hecho.complete(correcto);
+                correcto = true;
+            }
+        }
+        if (!lote.isEmpty()) escribir(lote);
+    }
+
+    /**
+     * Escribe un lote en una transaccion y actualiza las metricas
+     *
+     * @param lote Puntuaciones a escribir
+     * @return true si se confirmo
+     */
+    private boolean escribir(List<Pendiente> lote) {
+        List<Puntuacion> filas = new ArrayList<>(lote.size());
+        for (Pendiente p : lote) filas.add(p.puntuacion);
+
+        long inicio = System.nanoTime();
+        boolean ok = SQLite.guardarLote(filas, durabilidad != Durabilidad.NORMAL);
+        long fin = System.nanoTime();
+
+        long duracion = fin - inicio;
+        nanosEscritura += duracion;
+        if (duracion > maxNanosEscritura) maxNanosEscritura = duracion;
+        long esperaMax = fin - lote.get(0).encolado;
+        nanosEspera += esperaMax;
+        if (esperaMax > maxNanosEspera) maxNanosEspera = esperaMax;
+        lotes++;
+        if (ok) filasEscritas += lote.size();
+        else filasFallidas += lote.size();
+
+        for (Pendiente p : lote) if (p.hecho != null) p.hecho.complete(ok);
+        if (ok && lotes % LOTES_POR_COMPROBACION == 0) SQLite.getClasificacion().comprobar();
+        return ok;
+    }
+
+    /**
+     * Getter de la profundidad
+     * @return Puntuaciones en cola ahora mismo
+     */
+    public int getProfundidad() {return cola.size();}
+
+    /**
+     * Getter de la profundidad maxima
+     * @return Mayor profundidad vista
+     */
+    public int getMaxProfundidad() {return maxProfundidad.get();}
+
+    /**
+     * Getter de rechazadas
+     * @return Puntuaciones rechazadas por cola llena o escritor cerrado
+     */
+    public long getRechazadas() {return rechazadas.get();}
+
+    /**
+     * Getter de lotes
+     * @return Transacciones hechas
+     */
+    public long getLotes() {return lotes;}
+
+    /**
+     * Getter de filas escritas
+     * @return Puntuaciones confirmadas en la base
+     */
+    public long getFilasEscritas() {return filasEscritas;}
+
+    /**
+     * Getter de filas fallidas
+     * @return Puntuaciones cuyo lote fallo
+     */
+    public long getFilasFallidas() {return filasFallidas;}
+
+    /**
+     * Duracion media de la escritura de un lote
+     * @return Milisegundos
+     */
+    public double getMediaMsEscritura() {return (lotes == 0) ? 0 : nanosEscritura / 1e6 / lotes;}
+
+    /**
+     * Duracion de la escritura mas lenta
+     * @return Milisegundos
+     */
+    public double getMaxMsEscritura() {return maxNanosEscritura / 1e6;}
+
+    /**
+     * Tiempo medio desde que se encola la primera fila de un lote hasta que se confirma
+     * @return Milisegundos
+     */
+    public double getMediaMsEspera() {return (lotes == 0) ? 0 : nanosEspera / 1e6 / lotes;}
+
+    /**
+     * Mayor tiempo desde que se encola una fila hasta que se confirma
+     * @return Milisegundos
+     */
+    public double getMaxMsEspera() {return maxNanosEspera / 1e6;}
+
+    /**
+     * Getter de la durabilidad
+     * @return Modo configurado
+     */
+    public Durabilidad getDurabilidad() {return durabilidad;}
+
+    /**
+     * Resumen de las metricas
+     * @return Texto con cola, lotes y latencias
+     */
+    public String resumen() {
+        return String.format("cola=%d (max %d) rechazadas=%d lotes=%d filas=%d fallidas=%d escritura(media=%.2fms max=%.2fms) espera(media=%.2fms max=%.2fms)",
+                getProfundidad(), getMaxProfundidad(), getRechazadas(), lotes, filasEscritas, filasFallidas,
+                getMediaMsEscritura(), getMaxMsEscritura(), getMediaMsEspera(), getMaxMsEspera());
+    }
+
+    /**
+     * Elemento de la cola: una puntuacion, o una marca de vaciado si puntuacion es null
+     */
+    private static class Pendiente {
+        final Puntuacion puntuacion;
+        final CompletableFuture<Boolean> hecho;
+        final long encolado = System.nanoTime();
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param puntuacion Puntuacion a escribir, o null para una marca
+         * @param hecho Se completa al escribirse, o null si nadie espera
+         */
+        Pendiente(Puntuacion puntuacion, CompletableFuture<Boolean> hecho) {
+            this.puntuacion = puntuacion;
+            this.hecho = hecho;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package Controlador;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Codificador en streaming del formato de escenario, el inverso de LectorRLE:
+ * la cabecera "FILASXCOLUMNAS" y una linea RLE por fila, p.ej. "1O8E1O".
+ * Las filas llegan como indices de una paleta y se codifican racha a racha
+ * en un buffer propio, sin Strings intermedios.
+ *
+ * El formato de texto solo conoce 'E' y 'O'; una fila con otro tipo de tile
+ * no se puede escribir.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class EscritorRLE {
+
+    private static final int TAMANO_BUFFER = 1 << 16;
+    // Lo mas largo que ocupa una racha: 10 digitos y el caracter
+    private static final int MAXIMO_RACHA = 11;
+
+    private final OutputStream salida;
+    private final byte[] buffer = new byte[TAMANO_BUFFER];
+    private int posicion = 0;
+    private long bytesEscritos = 0;
+
+    /**
+     * Constructor parametrizado
+     *
+     * @param salida Flujo donde se escribe; no se cierra aqui
+     */
+    public EscritorRLE(OutputStream salida) {this.salida = salida;}
+
+    /**
+     * Escribe la primera linea
+     *
+     * @param filas Filas del mapa
+     * @param columnas Columnas del mapa
+     * @throws IOException Error al escribir
+     */
+    public void escribirCabecera(int filas, int columnas) throws IOException {
+        hacerSitio(2 * MAXIMO_RACHA + 1);
+        escribirNumero(filas);
+        buffer[posicion++] = 'X';
+        escribirNumero(columnas);
+        buffer[posicion++] = '\n';
+    }
+
+    /**
+     * Codifica una fila
+     *
+     * @param indices Indices de paleta
+     * @param desde Posicion de la primera columna
+     * @param columnas Columnas de la fila
+     * @param paleta Caracter de cada indice
+     * @throws IOException Error al escribir, o un tile que no es 'E' ni 'O'
+     */
+    public void escribirFila(byte[] indices, int desde, int columnas, char[] paleta) throws IOException {
+        int hasta = desde + columnas;
+        int i = desde;
+        while (i < hasta) {
+            byte indice = indices[i];
+            int fin = i + 1;
+            while (fin < hasta && indices[fin] == indice) fin++;
+            char tipo = paleta[indice & 0xFF];
+            if (tipo != 'E' && tipo != 'O') throw new IOException("El formato de texto no admite el tile '" + tipo + "'");
+            hacerSitio(MAXIMO_RACHA);
+            escribirNumero(fin - i);
+            buffer[posicion++] = (byte) tipo;
+            i = fin;
+        }
+        hacerSitio(1);
+        buffer[posicion++] = '\n';
+    }
+
+    /**
+     * Pasa el buffer al flujo
+     *
+     * @throws IOException Error al escribir
+     */
+    public void vaciar() throws IOException {
+        salida.write(buffer, 0, posicion);
+        bytesEscritos += posicion;
+        posicion = 0;
+    }
+
+    /**
+     * Getter de los bytes escritos
+     * @return Bytes generados hasta ahora, vaciados o no
+     */
+    public long getBytesEscritos() {return bytesEscritos + posicion;}
+
+    /**
+     * Vacia el buffer si no caben los bytes pedidos
+     *
+     * @param bytes Bytes que se van a escribir
+     * @throws IOException Error al escribir
+     */
+    private void hacerSitio(int bytes) throws IOException {
+        if (posicion + bytes > buffer.length) vaciar();
+    }
+
+    /**
+     * Escribe un entero positivo en decimal
+     *
+     * @param numero Numero a escribir
+     */
+    private void escribirNumero(int numero) {
+        int digitos = 1;
+        for (int resto = numero / 10; resto > 0; resto /= 10) digitos++;
+        for (int i = posicion + digitos - 1; i >= posicion; i--) {
+            buffer[i] = (byte) ('0' + numero % 10);
+            numero /= 10;
+        }
+        posicion += digitos;
+    }
+}
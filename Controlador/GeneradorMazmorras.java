@@ -0,0 +1,388 @@
+package Controlador;
+
+import Modelo.Escenario;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generador de mazmorras procedurales por chunks
+ * El mapa se divide en chunks de TAMANO_CHUNK x TAMANO_CHUNK (el ultimo de
+ * cada fila y columna se queda el sobrante). Cada chunk tiene una sala y se
+ * une a sus vecinos con pasillos que cruzan el borde por una puerta.
+ *
+ * Todo lo de un chunk sale de la semilla y de sus coordenadas: la sala, las
+ * puertas y que bordes estan abiertos. Asi cada chunk se talla sin mirar a
+ * los demas, en paralelo y en cualquier orden, y el mapa es el mismo con
+ * cualquier numero de hilos.
+ *
+ * Conexion garantizada: cada chunk salvo el (0,0) abre el borde con su
+ * vecino del oeste o con el del norte (en la primera fila siempre oeste, en
+ * la primera columna siempre norte). Eso es un arbol que llega a todos los
+ * chunks; encima se abren algunos bordes mas al azar para que haya ciclos.
+ * La sala del chunk (0,0) empieza en (1,1), donde aparece el jugador.
+ *
+ * El mapa se genera por franjas de una fila de chunks: mientras se escribe
+ * una, el pool talla la siguiente. En memoria solo hay dos franjas.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class GeneradorMazmorras {
+
+    public static final int TAMANO_CHUNK = 32;
+    public static final int LADO_MINIMO = 5;
+
+    private static final byte MURO = Escenario.indiceBase('O');
+    private static final byte SUELO = Escenario.indiceBase('E');
+    private static final char[] PALETA = Escenario.paletaBase();
+    private static final int SALA_MINIMA = 4;
+    // Probabilidad de abrir un borde que el arbol deja cerrado, en 1/1024
+    private static final int CICLOS_POR_1024 = 160;
+    // Chunks que talla una tarea sin dividirse
+    private static final int UMBRAL_TAREA = 8;
+
+    // Que se decide con cada numero aleatorio, para que no se repitan entre usos
+    private static final long SALA = 1, PADRE = 2, PUERTA_ESTE = 3, PUERTA_SUR = 4, CICLO_ESTE = 5, CICLO_SUR = 6;
+
+    private final long semilla;
+    private final int filas;
+    private final int columnas;
+    private final int chunksFila;
+    private final int chunksColumna;
+
+    /**
+     * Constructor parametrizado
+     *
+     * @param semilla Semilla; la misma semilla y tamano dan el mismo mapa
+     * @param filas Filas del mapa
+     * @param columnas Columnas del mapa
+     */
+    public GeneradorMazmorras(long semilla, int filas, int columnas) {
+        if (filas < LADO_MINIMO || columnas < LADO_MINIMO)
+            throw new IllegalArgumentException("Mapa demasiado pequeno: " + filas + "X" + columnas + " (minimo " + LADO_MINIMO + ")");
+        this.semilla = semilla;
+        this.filas = filas;
+        this.columnas = columnas;
+        this.chunksColumna = Math.max(1, columnas / TAMANO_CHUNK);
+        this.chunksFila = Math.max(1, filas / TAMANO_CHUNK);
+    }
+
+    /**
+     * Genera el mapa y lo escribe en formato texto y, si se pide, tambien
+     * compilado. Los dos se escriben a temporales y se renombran al acabar.
+     *
+     * @param rutaTexto Archivo .txt de destino
+     * @param binario true para escribir tambien el .nvb de al lado
+     * @param pool Pool donde se tallan los chunks
+     * @return true si se escribio todo
+     */
+    public boolean generar(Path rutaTexto, boolean binario, ForkJoinPool pool) {
+        Path temporal = null;
+        NivelBinario.EscritorFilas escritorBinario = null;
+        try {
+            temporal = NivelBinario.crearTemporal(rutaTexto);
+            if (binario) escritorBinario = new NivelBinario.EscritorFilas(NivelBinario.rutaCompilada(rutaTexto), filas, columnas, PALETA);
+            try (OutputStream salida = new BufferedOutputStream(Files.newOutputStream(temporal), 1 << 16)) {
+                EscritorRLE escritor = new EscritorRLE(salida);
+                escritor.escribirCabecera(filas, columnas);
+
+                // Dos franjas: el pool talla una mientras esta se escribe
+                byte[] actual = new byte[altoMaximoFranja() * columnas];
+                byte[] siguiente = new byte[actual.length];
+                ForkJoinTask<?> tallado = pool.submit(new TallarChunks(0, 0, chunksColumna, actual));
+                for (int franja = 0; franja < chunksFila; franja++) {
+                    tallado.join();
+                    if (franja + 1 < chunksFila) tallado = pool.submit(new TallarChunks(franja + 1, 0, chunksColumna, siguiente));
+
+                    int alto = finFila(franja) - inicioFila(franja);
+                    for (int i = 0; i < alto; i++) {
+                        escritor.escribirFila(actual, i * columnas, columnas, PALETA);
+                        if (escritorBinario != null) escritorBinario.escribirFila(actual, i * columnas);
+                    }
+                    byte[] escrita = actual;
+                    actual = siguiente;
+                    siguiente = escrita;
+                }
+                escritor.vaciar();
+            }
+            Files.move(temporal, rutaTexto, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // El .nvb guarda la fecha y el tamano del .txt, asi que se termina despues
+            if (escritorBinario != null) escritorBinario.terminar(rutaTexto);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("No se pudo generar la mazmorra '" + rutaTexto + "': " + e);
+            return false;
+        } finally {
+            if (escritorBinario != null) escritorBinario.close();
+            if (temporal != null) try {Files.deleteIfExists(temporal);} catch (IOException ignorada) {}
+        }
+    }
+
+    /**
+     * Genera el mapa entero en memoria, para mapas pequenos y comprobaciones
+     *
+     * @param pool Pool donde se tallan los chunks
+     * @return El escenario generado
+     */
+    public Escenario generarEnMemoria(ForkJoinPool pool) {
+        if ((long) filas * columnas > Integer.MAX_VALUE - 8) throw new IllegalStateException("El mapa no cabe en memoria, usa generar()");
+        byte[] tiles = new byte[filas * columnas];
+        byte[] franja = new byte[altoMaximoFranja() * columnas];
+        for (int f = 0; f < chunksFila; f++) {
+            pool.invoke(new TallarChunks(f, 0, chunksColumna, franja));
+            int inicio = inicioFila(f);
+            System.arraycopy(franja, 0, tiles, inicio * columnas, (finFila(f) - inicio) * columnas);
+        }
+        return new Escenario(filas, columnas, tiles, PALETA);
+    }
+
+    /**
+     * Talla un chunk sobre la franja de su fila de chunks
+     *
+     * @param cx Columna del chunk
+     * @param cy Fila del chunk
+     * @param franja Tiles de la franja; la fila 0 es inicioFila(cy)
+     */
+    private void tallarChunk(int cx, int cy, byte[] franja) {
+        int f0 = inicioFila(cy), f1 = finFila(cy);
+        int c0 = inicioColumna(cx), c1 = finColumna(cx);
+        for (int f = f0; f < f1; f++) Arrays.fill(franja, (f - f0) * columnas + c0, (f - f0) * columnas + c1, MURO);
+
+        // Sala dentro del chunk, con un tile de margen para que no se toquen
+        SplittableRandom azar = new SplittableRandom(mezclar(SALA, cx, cy));
+        int altoSala = medidaSala(f1 - f0 - 2, azar);
+        int anchoSala = medidaSala(c1 - c0 - 2, azar);
+        int filaSala = (cx == 0 && cy == 0) ? 1 : f0 + 1 + azar.nextInt(f1 - f0 - 2 - altoSala + 1);
+        int columnaSala = (cx == 0 && cy == 0) ? 1 : c0 + 1 + azar.nextInt(c1 - c0 - 2 - anchoSala + 1);
+        for (int f = filaSala; f < filaSala + altoSala; f++) Arrays.fill(franja, (f - f0) * columnas + columnaSala, (f - f0) * columnas + columnaSala + anchoSala, SUELO);
+
+        // Pasillos del centro de la sala a cada puerta abierta, en L
+        int fc = filaSala + altoSala / 2, cc = columnaSala + anchoSala / 2;
+        if (abiertoEste(cx, cy)) {
+            int puerta = puertaEste(cx, cy);
+            vertical(franja, f0, cc, fc, puerta);
+            horizontal(franja, f0, puerta, cc, c1 - 1);
+        }
+        if (cx > 0 && abiertoEste(cx - 1, cy)) {
+            int puerta = puertaEste(cx - 1, cy);
+            horizontal(franja, f0, puerta, c0, cc);
+            vertical(franja, f0, cc, puerta, fc);
+        }
+        if (abiertoSur(cx, cy)) {
+            int puerta = puertaSur(cx, cy);
+            horizontal(franja, f0, fc, cc, puerta);
+            vertical(franja, f0, puerta, fc, f1 - 1);
+        }
+        if (cy > 0 && abiertoSur(cx, cy - 1)) {
+            int puerta = puertaSur(cx, cy - 1);
+            vertical(franja, f0, puerta, f0, fc);
+            horizontal(franja, f0, fc, puerta, cc);
+        }
+    }
+
+    /**
+     * Lado de una sala
+     *
+     * @param hueco Tiles libres dentro del margen
+     * @param azar Generador del chunk
+     * @return Entre SALA_MINIMA (o el hueco si es menor) y tres cuartos del hueco
+     */
+    private static int medidaSala(int hueco, SplittableRandom azar) {
+        int minimo = Math.min(SALA_MINIMA, hueco);
+        int maximo = Math.max(minimo, hueco * 3 / 4);
+        return minimo + azar.nextInt(maximo - minimo + 1);
+    }
+
+    /**
+     * Comprueba si el borde entre un chunk y su vecino del este esta abierto
+     *
+     * @param cx Columna del chunk
+     * @param cy Fila del chunk
+     * @return true si hay pasillo
+     */
+    private boolean abiertoEste(int cx, int cy) {
+        if (cx + 1 >= chunksColumna) return false;
+        return padreOeste(cx + 1, cy) || probabilidad(CICLO_ESTE, cx, cy) < CICLOS_POR_1024;
+    }
+
+    /**
+     * Comprueba si el borde entre un chunk y su vecino del sur esta abierto
+     *
+     * @param cx Columna del chunk
+     * @param cy Fila del chunk
+     * @return true si hay pasillo
+     */
+    private boolean abiertoSur(int cx, int cy) {
+        if (cy + 1 >= chunksFila) return false;
+        return !padreOeste(cx, cy + 1) || probabilidad(CICLO_SUR, cx, cy) < CICLOS_POR_1024;
+    }
+
+    /**
+     * Hacia donde se une un chunk en el arbol. Solo vale para chunks que no
+     * son el (0,0); en ese caso "no oeste" quiere decir norte.
+     *
+     * @param cx Columna del chunk
+     * @param cy Fila del chunk
+     * @return true si se une al oeste, false si al norte
+     */
+    private boolean padreOeste(int cx, int cy) {
+        if (cy == 0) return true;
+        if (cx == 0) return false;
+        return (mezclar(PADRE, cx, cy) & 1) == 0;
+    }
+
+    /**
+     * Fila por la que el pasillo cruza el borde este de un chunk
+     *
+     * @param cx Columna del chunk
+     * @param cy Fila del chunk
+     * @return Fila absoluta, sin tocar las esquinas del chunk
+     */
+    private int puertaEste(int cx, int cy) {
+        int f0 = inicioFila(cy), alto = finFila(cy) - f0;
+        return f0 + 1 + (int) Long.remainderUnsigned(mezclar(PUERTA_ESTE, cx, cy), alto - 2);
+    }
+
+    /**
+     * Columna por la que el pasillo cruza el borde sur de un chunk
+     *
+     * @param cx Columna del chunk
+     * @param cy Fila del chunk
+     * @return Columna absoluta, sin tocar las esquinas del chunk
+     */
+    private int puertaSur(int cx, int cy) {
+        int c0 = inicioColumna(cx), ancho = finColumna(cx) - c0;
+        return c0 + 1 + (int) Long.remainderUnsigned(mezclar(PUERTA_SUR, cx, cy), ancho - 2);
+    }
+
+    /**
+     * Numero entre 0 y 1023 fijo para un uso y un chunk
+     *
+     * @param uso Que se decide
+     * @param cx Columna del chunk
+     * @param cy Fila del chunk
+     * @return El numero
+     */
+    private int probabilidad(long uso, int cx, int cy) {return (int) (mezclar(uso, cx, cy) >>> 54);}
+
+    /**
+     * Mezcla la semilla con un uso y unas coordenadas (finalizador de SplitMix64)
+     *
+     * @param uso Que se decide
+     * @param cx Columna del chunk
+     * @param cy Fila del chunk
+     * @return 64 bits que dependen de todo
+     */
+    private long mezclar(long uso, int cx, int cy) {
+        long z = semilla + uso * 0x9E3779B97F4A7C15L + (((long) cy << 32) | (cx & 0xFFFFFFFFL)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Tramo horizontal de suelo
+     *
+     * @param franja Tiles de la franja
+     * @param f0 Primera fila de la franja
+     * @param fila Fila absoluta
+     * @param desde Una punta
+     * @param hasta La otra, incluida
+     */
+    private void horizontal(byte[] franja, int f0, int fila, int desde, int hasta) {
+        int base = (fila - f0) * columnas;
+        Arrays.fill(franja, base + Math.min(desde, hasta), base + Math.max(desde, hasta) + 1, SUELO);
+    }
+
+    /**
+     * Tramo vertical de suelo
+     *
+     * @param franja Tiles de la franja
+     * @param f0 Primera fila de la franja
+     * @param columna Columna absoluta
+     * @param desde Una punta
+     * @param hasta La otra, incluida
+     */
+    private void vertical(byte[] franja, int f0, int columna, int desde, int hasta) {
+        for (int f = Math.min(desde, hasta); f <= Math.max(desde, hasta); f++) franja[(f - f0) * columnas + columna] = SUELO;
+    }
+
+    /**
+     * Filas de la franja mas alta, la ultima que se queda el sobrante
+     * @return Filas
+     */
+    private int altoMaximoFranja() {return finFila(chunksFila - 1) - inicioFila(chunksFila - 1);}
+
+    /**
+     * Primera fila de una fila de chunks
+     * @param cy Fila del chunk
+     * @return Fila absoluta
+     */
+    private int inicioFila(int cy) {return cy * TAMANO_CHUNK;}
+
+    /**
+     * Fin de una fila de chunks; la ultima llega hasta el borde del mapa
+     * @param cy Fila del chunk
+     * @return Fila absoluta, excluida
+     */
+    private int finFila(int cy) {return (cy == chunksFila - 1) ? filas : (cy + 1) * TAMANO_CHUNK;}
+
+    /**
+     * Primera columna de una columna de chunks
+     * @param cx Columna del chunk
+     * @return Columna absoluta
+     */
+    private int inicioColumna(int cx) {return cx * TAMANO_CHUNK;}
+
+    /**
+     * Fin de una columna de chunks; la ultima llega hasta el borde del mapa
+     * @param cx Columna del chunk
+     * @return Columna absoluta, excluida
+     */
+    private int finColumna(int cx) {return (cx == chunksColumna - 1) ? columnas : (cx + 1) * TAMANO_CHUNK;}
+
+    /**
+     * Talla un tramo de chunks de una franja, dividiendose mientras sea grande
+     */
+    private class TallarChunks extends RecursiveAction {
+        private final int cy;
+        private final int desde;
+        private final int hasta;
+        private final byte[] franja;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param cy Fila de chunks
+         * @param desde Primer chunk
+         * @param hasta Chunk final, excluido
+         * @param franja Tiles de la franja
+         */
+        TallarChunks(int cy, int desde, int hasta, byte[] franja) {
+            this.cy = cy;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.franja = franja;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde <= UMBRAL_TAREA) {
+                for (int cx = desde; cx < hasta; cx++) tallarChunk(cx, cy, franja);
+                return;
+            }
+            int medio = (desde + hasta) >>> 1;
+            invokeAll(new TallarChunks(cy, desde, medio, franja), new TallarChunks(cy, medio, hasta, franja));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package Controlador;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Gestor de escenas reutilizables
+ * Cada FXML se analiza una sola vez, en segundo plano al arrancar, y se
+ * guarda su raiz, su controlador y su Scene. Volver a una pantalla es poner
+ * otra vez su Scene en el Stage: el controlador no se vuelve a crear, asi que
+ * lo que antes hacia initialize() en cada visita pasa a alMostrar(), y lo que
+ * hay que parar al salir, a alOcultar().
+ *
+ * Cada cambio se apunta en TiemposPantalla: "transicion" si la escena ya
+ * estaba analizada y "transicion en frio" si hubo que analizarla al momento.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class GestorEscenas {
+
+    public static final String TRANSICION = "transicion";
+    public static final String TRANSICION_EN_FRIO = "transicion en frio";
+
+    // Un solo hilo: las escenas se analizan de una en una sin quitar nucleos al resto del arranque
+    private static final ExecutorService analizador = Executors.newSingleThreadExecutor(tarea -> {
+        Thread hilo = new Thread(tarea, "analizador-fxml");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
+    private final Map<String, CompletableFuture<Entrada>> escenas = new HashMap<>();
+    private final Map<String, URL> rutas = new HashMap<>();
+    private Entrada actual;
+
+    /**
+     * Metodos que el gestor llama en los controladores al cambiar de pantalla
+     */
+    public interface CicloPantalla {
+
+        /**
+         * La pantalla se acaba de poner en el Stage; aqui se cargan sus datos
+         *
+         * @param escena Escena de la pantalla, ya en la ventana
+         */
+        default void alMostrar(Scene escena) {}
+
+        /**
+         * La pantalla se va a quitar; aqui se para lo que tenga en marcha
+         */
+        default void alOcultar() {}
+    }
+
+    /**
+     * Empieza a analizar un FXML en segundo plano
+     *
+     * @param nombre Nombre de la pantalla
+     * @param fxml Ubicacion del FXML
+     * @return Se completa cuando el FXML esta analizado
+     */
+    public synchronized CompletableFuture<?> precargar(String nombre, URL fxml) {
+        rutas.put(nombre, fxml);
+        return escenas.computeIfAbsent(nombre, n -> CompletableFuture.supplyAsync(() -> analizar(fxml), analizador));
+    }
+
+    /**
+     * Pone una pantalla en el Stage, reutilizandola si ya estaba analizada.
+     * Solo desde el hilo de JavaFX.
+     *
+     * @param <T> Tipo del controlador
+     * @param escenario Stage de la aplicacion
+     * @param nombre Nombre de la pantalla
+     * @param fxml Ubicacion del FXML, por si no se precargo
+     * @return El controlador de la pantalla
+     * @throws IOException Si no se pudo analizar el FXML
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T mostrar(Stage escenario, String nombre, URL fxml) throws IOException {
+        long inicio = System.nanoTime();
+        CompletableFuture<Entrada> futura;
+        synchronized (this) {
+            rutas.putIfAbsent(nombre, fxml);
+            futura = escenas.get(nombre);
+        }
+        boolean enFrio = (futura == null || !futura.isDone());
+
+        Entrada entrada = null;
+        if (futura != null) {
+            try {entrada = futura.join();}
+            catch (CompletionException e) {System.err.println("Fallo la precarga de " + nombre + ", se vuelve a intentar: " + e.getCause());}
+        }
+        if (entrada == null) {
+            try {entrada = analizar(rutas.get(nombre));}
+            catch (CompletionException e) {throw (e.getCause() instanceof IOException io) ? io : new IOException(e.getCause());}
+            synchronized (this) {escenas.put(nombre, CompletableFuture.completedFuture(entrada));}
+        }
+
+        if (entrada.escena == null) entrada.escena = new Scene(entrada.raiz);
+        if (actual != null && actual != entrada) ocultar(actual);
+        actual = entrada;
+        escenario.setScene(entrada.escena);
+        if (entrada.controlador instanceof CicloPantalla ciclo) ciclo.alMostrar(entrada.escena);
+
+        TiemposPantalla.registrar(nombre, enFrio ? TRANSICION_EN_FRIO : TRANSICION, System.nanoTime() - inicio);
+        return (T) entrada.controlador;
+    }
+
+    /**
+     * Avisa a la pantalla actual de que se quita, por ejemplo al cerrar la ventana
+     */
+    public void ocultarActual() {
+        if (actual != null) ocultar(actual);
+        actual = null;
+    }
+
+    /**
+     * Llama a alOcultar de una pantalla
+     *
+     * @param entrada Pantalla que se quita
+     */
+    private static void ocultar(Entrada entrada) {
+        if (!(entrada.controlador instanceof CicloPantalla ciclo)) return;
+        try {ciclo.alOcultar();}
+        catch (RuntimeException e) {System.err.println("Error al ocultar la pantalla: " + e);}
+    }
+
+    /**
+     * Analiza un FXML
+     *
+     * @param fxml Ubicacion del FXML
+     * @return Raiz y controlador
+     */
+    private static Entrada analizar(URL fxml) {
+        if (fxml == null) throw new CompletionException(new IOException("FXML no encontrado"));
+        try {
+            System.out.println("Analizando " + fxml + "...");
+            FXMLLoader cargador = new FXMLLoader(fxml);
+            Parent raiz = cargador.load();
+            return new Entrada(raiz, cargador.getController());
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Una pantalla analizada
+     */
+    private static class Entrada {
+        final Parent raiz;
+        final Object controlador;
+        // Se crea al mostrarse la primera vez, en el hilo de JavaFX
+        Scene escena;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param raiz Raiz del FXML
+         * @param controlador Controlador del FXML
+         */
+        Entrada(Parent raiz, Object controlador) {
+            this.raiz = raiz;
+            this.controlador = controlador;
+        }
+    }
+}
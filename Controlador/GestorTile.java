@@ -1,14 +1,11 @@
 package Controlador;
 
-import javafx.geometry.Rectangle2D;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.WritableImage;
 import javafx.scene.layout.GridPane;
 import Modelo.Escenario;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 /**
  * Gestiona la creacion y carga de Tiles
@@ -19,22 +16,35 @@ import java.util.Map;
  */
 public class GestorTile {
     private static final String RUTA_TILE = "file:./dungeon_tiles.png";
+    private static final String RUTA_ATLAS = "tiles.atlas";
     private static final int TAMANO = 32;
 
-    private static Image tile;
-    private static Map<Character, Image> tileTemp = new HashMap<>();
+    // Coordenadas por defecto si no existe tiles.atlas
+    private static final char[] CODIGOS_DEFECTO = {'E', 'O', 'P'};
+    private static final int[] COLUMNAS_DEFECTO = {8, 2, 5};
+    private static final int[] FILAS_DEFECTO = {1, 1, 5};
 
-    private static Map<Character, Point> coordenadas = new HashMap<>();
+    private static AtlasTiles atlas;
 
-    // Conjunto estatico, sirve para agrupar
+    // Sirve para una ejecucion de clase, destinado para depuracion
     static {
-        coordenadas.put('E', new Point(8, 1));
-        coordenadas.put('O', new Point(2, 1));
-        coordenadas.put('P', new Point(5, 5));
+        Path descriptor = Path.of(RUTA_ATLAS);
+        try {
+            if (Files.isRegularFile(descriptor)) atlas = AtlasTiles.cargar(descriptor, TAMANO);
+        } catch (Exception e) {
+            System.err.println("Error al leer " + RUTA_ATLAS + ": " + e.getMessage() + ". Se usan los tiles por defecto.");
+        }
+        if (atlas == null) atlas = atlasPorDefecto();
+        System.out.println("Atlas de tiles listo: " + atlas.getTilesCargados() + " tiles.");
     }
 
-    // Sirve para una ejecucion de clase, destinado para depuracion
-    static {
+    /**
+     * Carga el tileset clasico con las coordenadas fijas de siempre
+     *
+     * @return El atlas, vacio si no se pudo cargar la imagen
+     */
+    private static AtlasTiles atlasPorDefecto() {
+        Image tile;
         try {
             System.out.println("Intentando cargar tileset desde: " + RUTA_TILE);
             tile = new Image(RUTA_TILE);
@@ -44,68 +54,57 @@ public class GestorTile {
                 System.err.println("Verifica que el archivo dungeon_tiles.png esté en la raíz del proyecto.");
                 System.err.println("Excepción: " + tile.getException());
                 System.err.println("**********************************************************");
-                tile = null;
+                return new AtlasTiles(TAMANO);
             } else if (tile.getWidth() < TAMANO || tile.getHeight() < TAMANO) {
                 System.err.println("**********************************************************");
                 System.err.println("ERROR GRAVE: El tileset cargado es más pequeño (" + tile.getWidth() + "x" + tile.getHeight()
                         + ") que el TILE_SIZE definido (" + TAMANO + ").");
                 System.err.println("Asegúrate de que TILE_SIZE sea correcto.");
                 System.err.println("**********************************************************");
-                tile = null;
-            } else {
-                System.out.println("Tileset cargado correctamente. Dimensiones: " + tile.getWidth() + "x" + tile.getHeight());
+                return new AtlasTiles(TAMANO);
             }
+            System.out.println("Tileset cargado correctamente. Dimensiones: " + tile.getWidth() + "x" + tile.getHeight());
         } catch (Exception e) {
             System.err.println("**********************************************************");
             System.err.println("Excepción inesperada al cargar el tileset: " + e.getMessage());
             e.printStackTrace();
             System.err.println("**********************************************************");
-            tile = null;
+            return new AtlasTiles(TAMANO);
         }
+        return AtlasTiles.desdeCoordenadas(tile, TAMANO, CODIGOS_DEFECTO, COLUMNAS_DEFECTO, FILAS_DEFECTO);
     }
 
+    /**
+     * Getter del atlas
+     * @return El atlas de tiles cargado al inicio
+     */
+    public static AtlasTiles getAtlas() {return atlas;}
+
     /**
      * Getter de Tile 
      * 
      * @param tipoTile Es el tipo del Tile que va a cargar, Personaje (P)
-     * @return Devuelve la imagen según su tipo
+     * @return Devuelve la imagen según su tipo, la del fallback si no esta en el atlas
      */
-    public static Image getTileImage(char tipoTile) {
-        if (tile == null) return null;
-
-        if (tileTemp.containsKey(tipoTile)) return tileTemp.get(tipoTile);
-
-        Point coords = coordenadas.get(tipoTile);
-        boolean isFallback = false;
-        if (coords == null) {
-            System.err.println("Advertencia: Coordenadas no definidas para tile '" + tipoTile + "'. Usando fallback 'E'.");
-            coords = coordenadas.get('E');
-            isFallback = true;
-            if (coords == null) {
-                System.err.println("Error crítico: Coordenadas para tile por defecto 'E' no definidas.");
-                return null;
-            }
-        }
-
-        int x = coords.col * TAMANO;
-        int y = coords.lin * TAMANO;
+    public static Image getTileImage(char tipoTile) {return atlas.getImagen(tipoTile);}
 
-        if (x < 0 || y < 0 || x + TAMANO > tile.getWidth() || y + TAMANO > tile.getHeight()) {
-            System.err.println("Error: Coordenadas (" + x + "," + y + ") para tile '" + tipoTile + "' están fuera de los límites del tileset. Usando fallback 'E'.");
-            return getTileImage('E');
-        }
+    /**
+     * Getter de Tile animado
+     *
+     * @param tipoTile Tipo del Tile
+     * @param ahoraNanos Tiempo actual en nanosegundos
+     * @return El frame que toca en ese instante
+     */
+    public static Image getTileImage(char tipoTile, long ahoraNanos) {return atlas.getImagen(tipoTile, ahoraNanos);}
 
-        try {
-            PixelReader reader = tile.getPixelReader();
-            WritableImage tileImage = new WritableImage(reader, x, y, TAMANO, TAMANO);
-            if (!isFallback || tipoTile == 'E') tileTemp.put(tipoTile, tileImage);
-            
-            return tileImage;
-        } catch (Exception e) {
-            System.err.println("Error al recortar el tile '" + tipoTile + "' en (" + x + "," + y + "): " + e.getMessage());
-            return getTileImage('E');
-        }
-    }
+    /**
+     * Pixeles ARGB de un tile, para pintarlo directamente en otra imagen
+     * (ver CacheCapasChunk). Se leen al cargar el atlas.
+     *
+     * @param tipoTile Tipo del Tile
+     * @return TAMANO x TAMANO pixeles fila a fila, o null si no hay imagen
+     */
+    public static int[] getPixelesTile(char tipoTile) {return atlas.getPixeles(tipoTile);}
 
     /**
      * Creacion del Tile
@@ -145,22 +144,4 @@ public class GestorTile {
         }
         System.out.println("Tiles agregados al GridPane. Total hijos: " + gridPane.getChildren().size());
     }
-
-    /**
-     * Punto en el que se encuentra las cosas
-     */
-    private static class Point {
-        int col, lin;
-
-        /**
-         * Constructor parametrizado
-         * 
-         * @param col la columna
-         * @param lin la linea
-         */
-        Point(int col, int lin) {
-            this.col = col;
-            this.lin = lin;
-        }
-    }
 }
@@ -0,0 +1,527 @@
+package Controlador;
+
+import Modelo.Escenario;
+import Modelo.Jugador;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32C;
+
+/**
+ * Guardado de partida por puntos de control en partidas/
+ *
+ * El archivo es un log de solo anadir. Cabecera (big-endian): magia "PART" y
+ * version. Despues van registros: longitud, tipo, datos y CRC32C de tipo y
+ * datos. El primero es siempre una INSTANTANEA (nivel, jugador y escenario entero);
+ * los siguientes son DELTAS con el estado del jugador y solo los tiles que
+ * cambiaron desde el punto de control anterior, asi que un autoguardado cada
+ * pocos segundos escribe unos bytes aunque el mapa sea enorme.
+ *
+ * Los tiles cambiados se apuntan como oyente del escenario. El punto de
+ * control se toma en el hilo del juego (copiar los cambios es barato) y se
+ * codifica y escribe en un hilo aparte. Cuando se acumulan muchos deltas el
+ * siguiente punto de control compacta: escribe una instantanea nueva en un
+ * temporal y lo renombra encima del log.
+ *
+ * Si una instantanea no se puede escribir, el log anterior se deja como
+ * estaba y los deltas se descartan hasta que otra instantanea llegue a
+ * disco: un delta sobre el log viejo perderia los tiles que cambiaron
+ * antes de la instantanea fallida. El siguiente punto de control la reintenta.
+ *
+ * La instantanea apunta de que nivel salio la partida: su ruta y la fecha y
+ * tamano del .txt. Una partida de un nivel que ya cambio (regenerado, o de
+ * otra version) no vale para el de ahora; ver Partida.esDe.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class GuardadoPartida implements Escenario.OyenteTiles {
+
+    /** "PART" en ASCII. */
+    public static final int MAGIA = 0x50415254;
+    public static final short VERSION = 2;
+    public static final String EXTENSION = ".sav";
+    public static final int MAX_DELTAS_DEFECTO = 200;
+
+    private static final byte INSTANTANEA = 1;
+    private static final byte DELTA = 2;
+    private static final int TAMANO_CABECERA = 4 + 2;
+
+    private final Path ruta;
+    private final Path nivel;
+    private final long[] versionNivel;
+    private final Jugador jugador;
+    private final Escenario escenario;
+    private final int maxDeltas;
+    private final ExecutorService escritor;
+
+    // Solo en el hilo del juego
+    private final Set<Long> tilesCambiados = new LinkedHashSet<>();
+    private int filaGuardada = Integer.MIN_VALUE, columnaGuardada, puntosGuardados;
+    private int deltasDesdeInstantanea = 0;
+    private boolean hayInstantanea = false;
+
+    // Solo en el hilo escritor; null si no hay un log al que anadir deltas
+    private FileChannel canal;
+    private long fin;
+    // El escritor avisa al hilo del juego de que hace falta otra instantanea
+    private volatile boolean instantaneaFallida = false;
+
+    private volatile long instantaneas = 0;
+    private volatile long deltas = 0;
+    private volatile long bytesEscritos = 0;
+
+    /**
+     * Constructor parametrizado. Se registra como oyente del escenario; el
+     * primer punto de control sera una instantanea.
+     *
+     * @param ruta Archivo de la partida
+     * @param nivel Archivo .txt del nivel que se juega
+     * @param jugador Jugador de la partida
+     * @param escenario Escenario de la partida
+     * @param maxDeltas Deltas tras los que se compacta
+     */
+    public GuardadoPartida(Path ruta, Path nivel, Jugador jugador, Escenario escenario, int maxDeltas) {
+        this.ruta = ruta;
+        this.nivel = nivel.toAbsolutePath().normalize();
+        this.versionNivel = versionNivel(this.nivel);
+        this.jugador = jugador;
+        this.escenario = escenario;
+        this.maxDeltas = Math.max(1, maxDeltas);
+        this.escritor = Executors.newSingleThreadExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "guardado-partida");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        escenario.agregarOyente(this);
+    }
+
+    /**
+     * Un tile ha cambiado: entra en el siguiente delta
+     *
+     * @param fila Fila del tile
+     * @param columna Columna del tile
+     */
+    @Override
+    public void tileCambiado(int fila, int columna) {tilesCambiados.add((long) fila * escenario.getColumnas() + columna);}
+
+    /**
+     * Toma un punto de control y lo escribe en segundo plano. Llamar desde el
+     * hilo del juego; si no cambio nada desde el anterior no se escribe nada.
+     *
+     * @return Se completa con true cuando esta en disco
+     */
+    public CompletableFuture<Boolean> puntoDeControl() {
+        if (!hayInstantanea || instantaneaFallida || deltasDesdeInstantanea >= maxDeltas) {
+            instantaneaFallida = false;
+            // La copia se hace aqui para que sea coherente; codificarla ya en el escritor
+            Escenario copia = escenario.copia();
+            Jugador estado = new Jugador(jugador.getNombre(), jugador.getEmail(), jugador.getFilaActual(), jugador.getColumnaActual(), jugador.getPuntos());
+            tilesCambiados.clear();
+            hayInstantanea = true;
+            deltasDesdeInstantanea = 0;
+            recordarJugador();
+            return CompletableFuture.supplyAsync(() -> escribirInstantanea(codificarInstantanea(nivel, versionNivel, estado, copia)), escritor);
+        }
+
+        boolean jugadorIgual = jugador.getFilaActual() == filaGuardada && jugador.getColumnaActual() == columnaGuardada
+                && jugador.getPuntos() == puntosGuardados;
+        if (jugadorIgual && tilesCambiados.isEmpty()) return CompletableFuture.completedFuture(true);
+
+        long[] posiciones = new long[tilesCambiados.size()];
+        char[] tipos = new char[posiciones.length];
+        int i = 0;
+        for (long posicion : tilesCambiados) {
+            posiciones[i] = posicion;
+            tipos[i++] = escenario.getTile((int) (posicion / escenario.getColumnas()), (int) (posicion % escenario.getColumnas()));
+        }
+        tilesCambiados.clear();
+        deltasDesdeInstantanea++;
+        recordarJugador();
+        int fila = filaGuardada, columna = columnaGuardada, puntos = puntosGuardados;
+        return CompletableFuture.supplyAsync(() -> escribirDelta(codificarDelta(fila, columna, puntos, posiciones, tipos)), escritor);
+    }
+
+    /**
+     * Toma un ultimo punto de control y deja de escuchar el escenario. No
+     * espera: escribirlo, cerrar el archivo y parar el hilo escritor se hacen
+     * en ese hilo. Llamar desde el hilo del juego.
+     *
+     * @return Se completa con true cuando el ultimo punto de control esta en disco y el archivo cerrado
+     */
+    public CompletableFuture<Boolean> cerrar() {
+        escenario.quitarOyente(this);
+        return puntoDeControl().handleAsync((escrito, error) -> {
+            if (error != null) System.err.println("No se pudo escribir el ultimo punto de control: " + error);
+            try {
+                if (canal != null) canal.close();
+                canal = null;
+            } catch (IOException e) {
+                System.err.println("Error al cerrar la partida: " + e.getMessage());
+            }
+            // Es la ultima tarea: el hilo escritor acaba al salir de ella
+            escritor.shutdown();
+            System.out.println("Partida guardada en " + ruta + ". " + resumen());
+            return error == null && escrito;
+        }, escritor);
+    }
+
+    /**
+     * Carga una partida: la ultima instantanea con sus deltas aplicados.
+     * Si el final del log esta a medias (corte durante una escritura) se
+     * ignora lo que no pasa el CRC.
+     *
+     * @param ruta Archivo de la partida
+     * @return La partida, o null si no existe o no tiene instantanea valida
+     */
+    public static Partida cargar(Path ruta) {
+        if (!Files.exists(ruta)) return null;
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA);
+            if (!leerCompleto(canal, cabecera, 0) || cabecera.getInt(0) != MAGIA || cabecera.getShort(4) != VERSION) {
+                System.err.println("'" + ruta + "' no es una partida valida.");
+                return null;
+            }
+
+            Partida partida = null;
+            long posicion = TAMANO_CABECERA;
+            ByteBuffer longitud = ByteBuffer.allocate(4);
+            while (true) {
+                longitud.clear();
+                if (!leerCompleto(canal, longitud, posicion)) break;
+                int tamano = longitud.getInt(0);
+                if (tamano < 1 || posicion + 8 + tamano > canal.size()) break;
+                ByteBuffer registro = ByteBuffer.allocate(tamano + 4);
+                if (!leerCompleto(canal, registro, posicion + 4)) break;
+                byte[] datos = registro.array();
+                CRC32C crc = new CRC32C();
+                crc.update(datos, 0, tamano);
+                if ((int) crc.getValue() != registro.getInt(tamano)) break;
+
+                DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(datos, 1, tamano - 1));
+                if (datos[0] == INSTANTANEA) partida = leerInstantanea(entrada);
+                else if (datos[0] == DELTA && partida != null) aplicarDelta(partida, entrada);
+                posicion += 8 + tamano;
+            }
+            if (posicion < canal.size()) System.err.println("Advertencia: final incompleto en " + ruta + ", se ignora desde el byte " + posicion + ".");
+            return partida;
+        } catch (IOException e) {
+            System.err.println("No se pudo cargar la partida '" + ruta + "': " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Empieza un log nuevo con una instantanea; se escribe en un temporal
+     * que se renombra, asi nunca queda un archivo sin instantanea
+     *
+     * @param datos Registro codificado
+     * @return true si se escribio
+     */
+    private boolean escribirInstantanea(byte[] datos) {
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+        try {
+            if (canal != null) {
+                canal.close();
+                canal = null;
+            }
+            Files.createDirectories(ruta.toAbsolutePath().getParent());
+            try (FileChannel salida = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                escribirCompleto(salida, ByteBuffer.allocate(TAMANO_CABECERA).putInt(MAGIA).putShort(VERSION).flip(), 0);
+                escribirCompleto(salida, enmarcar(INSTANTANEA, datos), TAMANO_CABECERA);
+                salida.force(true);
+            }
+            Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            canal = FileChannel.open(ruta, StandardOpenOption.WRITE);
+            fin = canal.size();
+            instantaneas++;
+            bytesEscritos += fin;
+            return true;
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar la instantanea de la partida: " + e.getMessage());
+            try {Files.deleteIfExists(temporal);} catch (IOException ignorada) {}
+            // Sin canal los deltas no tocan el log anterior hasta que una instantanea salga bien
+            if (canal != null) {
+                try {canal.close();} catch (IOException ignorada) {}
+                canal = null;
+            }
+            instantaneaFallida = true;
+            return false;
+        }
+    }
+
+    /**
+     * Anade un delta al log
+     *
+     * @param datos Registro codificado
+     * @return true si se escribio; false tambien si se descarta por falta de instantanea
+     */
+    private boolean escribirDelta(byte[] datos) {
+        if (canal == null || instantaneaFallida) return false;
+        try {
+            ByteBuffer registro = enmarcar(DELTA, datos);
+            int tamano = registro.remaining();
+            escribirCompleto(canal, registro, fin);
+            canal.force(false);
+            fin += tamano;
+            deltas++;
+            bytesEscritos += tamano;
+            return true;
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar el punto de control: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Apunta el estado del jugador del ultimo punto de control
+     */
+    private void recordarJugador() {
+        filaGuardada = jugador.getFilaActual();
+        columnaGuardada = jugador.getColumnaActual();
+        puntosGuardados = jugador.getPuntos();
+    }
+
+    /**
+     * Nivel, jugador y escenario enteros
+     *
+     * @param nivel Ruta normalizada del .txt del nivel
+     * @param versionNivel {milisegundos, bytes} del .txt
+     * @param jugador Jugador
+     * @param escenario Copia del escenario
+     * @return Datos del registro
+     */
+    private static byte[] codificarInstantanea(Path nivel, long[] versionNivel, Jugador jugador, Escenario escenario) {
+        char[] paleta = escenario.getPaleta();
+        byte[] fila = new byte[escenario.getColumnas()];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + paleta.length * 2 + escenario.getFilas() * fila.length);
+        try (DataOutputStream salida = new DataOutputStream(bytes)) {
+            salida.writeUTF(nivel.toString());
+            salida.writeLong(versionNivel[0]);
+            salida.writeLong(versionNivel[1]);
+            salida.writeUTF(jugador.getNombre());
+            salida.writeUTF((jugador.getEmail() != null) ? jugador.getEmail() : "");
+            salida.writeInt(jugador.getFilaActual());
+            salida.writeInt(jugador.getColumnaActual());
+            salida.writeInt(jugador.getPuntos());
+            salida.writeInt(escenario.getFilas());
+            salida.writeInt(escenario.getColumnas());
+            salida.writeShort(paleta.length);
+            for (char c : paleta) salida.writeChar(c);
+            for (int f = 0; f < escenario.getFilas(); f++) {
+                escenario.copiarFila(f, fila, 0);
+                salida.write(fila);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Estado del jugador y tiles cambiados
+     *
+     * @param fila Fila del jugador
+     * @param columna Columna del jugador
+     * @param puntos Puntos del jugador
+     * @param posiciones Posicion de cada tile cambiado (fila * columnas + columna)
+     * @param tipos Caracter actual de cada tile cambiado
+     * @return Datos del registro
+     */
+    private static byte[] codificarDelta(int fila, int columna, int puntos, long[] posiciones, char[] tipos) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + posiciones.length * 10);
+        try (DataOutputStream salida = new DataOutputStream(bytes)) {
+            salida.writeInt(fila);
+            salida.writeInt(columna);
+            salida.writeInt(puntos);
+            salida.writeInt(posiciones.length);
+            for (int i = 0; i < posiciones.length; i++) {
+                salida.writeLong(posiciones[i]);
+                salida.writeChar(tipos[i]);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Lee una instantanea
+     *
+     * @param entrada Datos del registro
+     * @return La partida
+     * @throws IOException Datos cortos
+     */
+    private static Partida leerInstantanea(DataInputStream entrada) throws IOException {
+        String nivel = entrada.readUTF();
+        long[] versionNivel = {entrada.readLong(), entrada.readLong()};
+        String nombre = entrada.readUTF();
+        String email = entrada.readUTF();
+        Jugador jugador = new Jugador(nombre, email, entrada.readInt(), entrada.readInt(), entrada.readInt());
+        int filas = entrada.readInt();
+        int columnas = entrada.readInt();
+        char[] paleta = new char[entrada.readShort()];
+        for (int i = 0; i < paleta.length; i++) paleta[i] = entrada.readChar();
+        byte[] tiles = new byte[filas * columnas];
+        entrada.readFully(tiles);
+        return new Partida(Path.of(nivel), versionNivel, jugador, new Escenario(filas, columnas, tiles, paleta));
+    }
+
+    /**
+     * Aplica un delta a la partida cargada
+     *
+     * @param partida Partida
+     * @param entrada Datos del registro
+     * @throws IOException Datos cortos
+     */
+    private static void aplicarDelta(Partida partida, DataInputStream entrada) throws IOException {
+        Jugador jugador = partida.getJugador();
+        Escenario escenario = partida.getEscenario();
+        jugador.setFilaActual(entrada.readInt());
+        jugador.setColumnaActual(entrada.readInt());
+        jugador.setPuntos(entrada.readInt());
+        int cambios = entrada.readInt();
+        for (int i = 0; i < cambios; i++) {
+            long posicion = entrada.readLong();
+            char tipo = entrada.readChar();
+            escenario.setTile((int) (posicion / escenario.getColumnas()), (int) (posicion % escenario.getColumnas()), tipo);
+        }
+    }
+
+    /**
+     * Version de un nivel: fecha de modificacion y tamano del .txt
+     *
+     * @param nivel Ruta del nivel
+     * @return {milisegundos, bytes}, o {-1, -1} si no se puede leer
+     */
+    private static long[] versionNivel(Path nivel) {
+        try {
+            BasicFileAttributes atributos = Files.readAttributes(nivel, BasicFileAttributes.class);
+            return new long[] {atributos.lastModifiedTime().toMillis(), atributos.size()};
+        } catch (IOException e) {
+            return new long[] {-1, -1};
+        }
+    }
+
+    /**
+     * Longitud + tipo + datos + CRC32C
+     *
+     * @param tipo INSTANTANEA o DELTA
+     * @param datos Datos del registro
+     * @return Buffer listo para escribir
+     */
+    private static ByteBuffer enmarcar(byte tipo, byte[] datos) {
+        CRC32C crc = new CRC32C();
+        crc.update(tipo);
+        crc.update(datos, 0, datos.length);
+        ByteBuffer registro = ByteBuffer.allocate(4 + 1 + datos.length + 4);
+        registro.putInt(1 + datos.length).put(tipo).put(datos).putInt((int) crc.getValue());
+        return registro.flip();
+    }
+
+    /**
+     * Escribe un buffer entero en una posicion
+     *
+     * @param canal Canal de destino
+     * @param buffer Datos
+     * @param posicion Posicion en el archivo
+     * @throws IOException Error de escritura
+     */
+    private static void escribirCompleto(FileChannel canal, ByteBuffer buffer, long posicion) throws IOException {
+        while (buffer.hasRemaining()) posicion += canal.write(buffer, posicion);
+    }
+
+    /**
+     * Llena un buffer leyendo desde una posicion
+     *
+     * @param canal Canal de origen
+     * @param buffer Buffer a llenar
+     * @param posicion Posicion en el archivo
+     * @return false si el archivo se acaba antes
+     * @throws IOException Error de lectura
+     */
+    private static boolean leerCompleto(FileChannel canal, ByteBuffer buffer, long posicion) throws IOException {
+        while (buffer.hasRemaining()) {
+            int leidos = canal.read(buffer, posicion);
+            if (leidos < 0) return false;
+            posicion += leidos;
+        }
+        return true;
+    }
+
+    /**
+     * Getter de la ruta
+     * @return Archivo de la partida
+     */
+    public Path getRuta() {return ruta;}
+
+    /**
+     * Resumen de los contadores
+     * @return Texto con instantaneas, deltas y bytes escritos
+     */
+    public String resumen() {return "instantaneas=" + instantaneas + " deltas=" + deltas + " bytes=" + bytesEscritos;}
+
+    /**
+     * Partida cargada: nivel de origen, jugador y escenario
+     */
+    public static class Partida {
+        private final Path nivel;
+        private final long[] versionNivel;
+        private final Jugador jugador;
+        private final Escenario escenario;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param nivel Ruta del nivel del que salio
+         * @param versionNivel {milisegundos, bytes} de ese nivel al guardar
+         * @param jugador Jugador
+         * @param escenario Escenario
+         */
+        Partida(Path nivel, long[] versionNivel, Jugador jugador, Escenario escenario) {
+            this.nivel = nivel;
+            this.versionNivel = versionNivel;
+            this.jugador = jugador;
+            this.escenario = escenario;
+        }
+
+        /**
+         * Comprueba si la partida es de un nivel tal y como esta ahora en disco
+         *
+         * @param nivel Ruta del .txt del nivel
+         * @return true si es la misma ruta y el archivo no cambio desde que se guardo
+         */
+        public boolean esDe(Path nivel) {
+            long[] actual = versionNivel(nivel.toAbsolutePath().normalize());
+            return this.nivel.equals(nivel.toAbsolutePath().normalize()) && actual[0] != -1
+                    && actual[0] == versionNivel[0] && actual[1] == versionNivel[1];
+        }
+
+        /**
+         * Getter del jugador
+         * @return Jugador guardado
+         */
+        public Jugador getJugador() {return jugador;}
+
+        /**
+         * Getter del escenario
+         * @return Escenario guardado
+         */
+        public Escenario getEscenario() {return escenario;}
+    }
+}
@@ -0,0 +1,125 @@
+package Controlador;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Indice de nombres de jugador para autocompletar
+ * Los nombres estan en un array ordenado por su version en minusculas; los
+ * que empiezan por un prefijo forman un tramo contiguo que se encuentra con
+ * una busqueda binaria, asi cada pulsacion cuesta O(log n + resultados).
+ * Anadir un nombre lo inserta en su sitio desplazando el resto: es O(n),
+ * pero solo pasa al registrar un jugador.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class IndiceNombres {
+
+    private String[] claves;
+    private String[] nombres;
+    private int tamano;
+
+    /**
+     * Constructor parametrizado, ordena los nombres una vez
+     *
+     * @param iniciales Nombres de partida, sin repetidos
+     */
+    public IndiceNombres(Collection<String> iniciales) {
+        // {clave, nombre}, para pasar a minusculas una vez por nombre y no en cada comparacion
+        String[][] pares = new String[iniciales.size()][];
+        int n = 0;
+        for (String nombre : iniciales) pares[n++] = new String[] {clave(nombre), nombre};
+        Arrays.sort(pares, (a, b) -> a[0].compareTo(b[0]));
+        claves = new String[Math.max(16, n)];
+        nombres = new String[claves.length];
+        for (String[] par : pares) {
+            claves[tamano] = par[0];
+            nombres[tamano++] = par[1];
+        }
+    }
+
+    /**
+     * Anade un nombre si no estaba
+     *
+     * @param nombre Nombre del jugador
+     */
+    public synchronized void anadir(String nombre) {
+        if (nombre == null || nombre.isEmpty()) return;
+        String clave = clave(nombre);
+        int i = primeroNoMenor(clave);
+        for (int j = i; j < tamano && claves[j].equals(clave); j++)
+            if (nombres[j].equals(nombre)) return;
+        if (tamano == claves.length) {
+            claves = Arrays.copyOf(claves, tamano * 2);
+            nombres = Arrays.copyOf(nombres, tamano * 2);
+        }
+        System.arraycopy(claves, i, claves, i + 1, tamano - i);
+        System.arraycopy(nombres, i, nombres, i + 1, tamano - i);
+        claves[i] = clave;
+        nombres[i] = nombre;
+        tamano++;
+    }
+
+    /**
+     * Nombres que empiezan por un prefijo, sin distinguir mayusculas, en orden alfabetico
+     *
+     * @param prefijo Lo escrito hasta ahora
+     * @param maximo Resultados como mucho
+     * @return Los primeros nombres que coinciden
+     */
+    public synchronized List<String> buscar(String prefijo, int maximo) {
+        List<String> resultado = new ArrayList<>(Math.min(maximo, 16));
+        if (prefijo == null) return resultado;
+        String clave = clave(prefijo);
+        for (int i = primeroNoMenor(clave); i < tamano && resultado.size() < maximo && claves[i].startsWith(clave); i++)
+            resultado.add(nombres[i]);
+        return resultado;
+    }
+
+    /**
+     * Cuantos nombres empiezan por un prefijo
+     *
+     * @param prefijo Prefijo
+     * @return Tamano del tramo, con dos busquedas binarias
+     */
+    public synchronized int contar(String prefijo) {
+        String clave = clave(prefijo);
+        // Nada que empiece por la clave es mayor que clave + el ultimo caracter posible
+        return primeroNoMenor(clave + Character.MAX_VALUE) - primeroNoMenor(clave);
+    }
+
+    /**
+     * Getter del tamano
+     * @return Nombres en el indice
+     */
+    public synchronized int getTamano() {return tamano;}
+
+    /**
+     * Primera posicion cuya clave no es menor que la dada
+     *
+     * @param clave Clave buscada
+     * @return Posicion entre 0 y tamano
+     */
+    private int primeroNoMenor(String clave) {
+        int bajo = 0, alto = tamano;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (claves[medio].compareTo(clave) < 0) bajo = medio + 1;
+            else alto = medio;
+        }
+        return bajo;
+    }
+
+    /**
+     * Clave de orden de un nombre
+     *
+     * @param nombre Nombre
+     * @return El nombre en minusculas
+     */
+    private static String clave(String nombre) {return nombre.toLowerCase(Locale.ROOT);}
+}
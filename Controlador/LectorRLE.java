@@ -0,0 +1,159 @@
+package Controlador;
+
+import Modelo.Escenario;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Decodificador en streaming del formato de escenario (cabecera "FILASXCOLUMNAS"
+ * y una linea RLE por fila, p.ej. "1O8E1O").
+ * Recorre cada byte del archivo una sola vez y escribe las rachas directamente
+ * sobre el almacenamiento de tiles, sin Strings ni listas intermedias.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class LectorRLE {
+
+    private static final int TAMANO_BUFFER = 1 << 16;
+    private static final byte INDICE_E = Escenario.indiceBase('E');
+    private static final byte INDICE_O = Escenario.indiceBase('O');
+    private static final byte TILE_RELLENO = INDICE_E;
+
+    private final InputStream entrada;
+    private final byte[] buffer = new byte[TAMANO_BUFFER];
+    private int posicion = 0;
+    private int limite = 0;
+    private boolean saltarSaltoLinea = false;
+
+    private int filas;
+    private int columnas;
+
+    /**
+     * Constructor parametrizado
+     *
+     * @param entrada Flujo del archivo de escenario (se espera ASCII)
+     */
+    public LectorRLE(InputStream entrada) {this.entrada = entrada;}
+
+    /**
+     * Getter de filas
+     * @return Filas leidas en la cabecera
+     */
+    public int getFilas() {return filas;}
+
+    /**
+     * Getter de columnas
+     * @return Columnas leidas en la cabecera
+     */
+    public int getColumnas() {return columnas;}
+
+    /**
+     * Lee la primera linea, que debe ser exactamente "\d+X\d+".
+     *
+     * @return true si la cabecera es valida y las dimensiones son positivas
+     * @throws IOException Error al leer el archivo
+     */
+    public boolean leerCabecera() throws IOException {
+        long[] dims = new long[2];
+        int parte = 0;
+        boolean hayDigitos = false;
+        boolean valida = true;
+        int b = siguiente();
+        if (b < 0) return false;
+
+        while (b >= 0 && !finDeLinea(b)) {
+            if (b >= '0' && b <= '9') {
+                dims[parte] = Math.min(dims[parte] * 10 + (b - '0'), Integer.MAX_VALUE + 1L);
+                hayDigitos = true;
+            } else if (b == 'X' && parte == 0 && hayDigitos) {
+                parte = 1;
+                hayDigitos = false;
+            } else valida = false;
+            b = siguiente();
+        }
+        if (!valida || parte != 1 || !hayDigitos) return false;
+        if (dims[0] > Integer.MAX_VALUE || dims[1] > Integer.MAX_VALUE) return false;
+
+        filas = (int) dims[0];
+        columnas = (int) dims[1];
+        return filas > 0 && columnas > 0;
+    }
+
+    /**
+     * Decodifica la siguiente linea RLE sobre destino[desde, desde + columnas),
+     * escribiendo los indices de Escenario.paletaBase().
+     * Solo se reconocen rachas "numero + E|O"; el resto de caracteres se ignora.
+     * Las filas cortas se rellenan con 'E' y las que sobran se recortan.
+     *
+     * @param destino Almacen de tiles donde se escribe la fila
+     * @param desde Posicion de la primera columna dentro de destino
+     * @return false si el archivo se acabo antes de esta fila
+     * @throws IOException Error al leer el archivo
+     */
+    public boolean leerFila(byte[] destino, int desde) throws IOException {
+        int b = siguiente();
+        if (b < 0) return false;
+
+        int hasta = desde + columnas;
+        int col = desde;
+        int cantidad = -1;
+        while (b >= 0 && !finDeLinea(b)) {
+            if (b >= '0' && b <= '9') {
+                cantidad = (cantidad < 0) ? (b - '0') : (int) Math.min(cantidad * 10L + (b - '0'), columnas);
+            } else if ((b == 'E' || b == 'O') && cantidad >= 0) {
+                if (col < hasta) {
+                    int fin = (int) Math.min((long) col + cantidad, hasta);
+                    Arrays.fill(destino, col, fin, (b == 'E') ? INDICE_E : INDICE_O);
+                    col = fin;
+                }
+                cantidad = -1;
+            } else cantidad = -1;
+            b = siguiente();
+        }
+        if (col < hasta) Arrays.fill(destino, col, hasta, TILE_RELLENO);
+        return true;
+    }
+
+    /**
+     * Comprueba si el byte termina la linea. Un '\r' seguido de '\n' cuenta como uno.
+     *
+     * @param b Byte leido
+     * @return true si es un salto de linea
+     */
+    private boolean finDeLinea(int b) {
+        if (b == '\n') return true;
+        if (b == '\r') {
+            saltarSaltoLinea = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Siguiente byte del buffer, rellenandolo cuando se agota
+     *
+     * @return El byte sin signo o -1 al final del archivo
+     * @throws IOException Error al leer el archivo
+     */
+    private int siguiente() throws IOException {
+        while (true) {
+            if (posicion >= limite) {
+                limite = entrada.read(buffer, 0, buffer.length);
+                posicion = 0;
+                if (limite <= 0) {
+                    limite = 0;
+                    return -1;
+                }
+            }
+            int b = buffer[posicion++] & 0xFF;
+            if (saltarSaltoLinea) {
+                saltarSaltoLinea = false;
+                if (b == '\n') continue;
+            }
+            return b;
+        }
+    }
+}
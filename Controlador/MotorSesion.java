@@ -0,0 +1,115 @@
+package Controlador;
+
+import Modelo.Escenario;
+import Modelo.Jugador;
+
+/**
+ * Sesion de juego sin interfaz
+ * Tiene su propio jugador, su escenario y su entrada, sin campos estaticos
+ * ni JavaFX, asi que se pueden simular muchas a la vez (ver MotorSimulacion).
+ * PantallaDeJuego usa una con la entrada del teclado.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class MotorSesion {
+
+    private final Jugador jugador;
+    private final Escenario escenario;
+    private final Piloto piloto;
+
+    private int entrada = 0;
+    private long ticks = 0;
+    private long movimientos = 0;
+
+    /**
+     * Constructor parametrizado, para una sesion manejada desde fuera con setEntrada
+     *
+     * @param jugador Jugador de la sesion
+     * @param escenario Escenario de la sesion, no se copia
+     */
+    public MotorSesion(Jugador jugador, Escenario escenario) {this(jugador, escenario, null);}
+
+    /**
+     * Constructor parametrizado
+     *
+     * @param jugador Jugador de la sesion
+     * @param escenario Escenario de la sesion, no se copia
+     * @param piloto Decide la entrada de cada tick, o null para usar setEntrada
+     */
+    public MotorSesion(Jugador jugador, Escenario escenario, Piloto piloto) {
+        if (jugador == null || escenario == null) throw new IllegalArgumentException("Jugador o Escenario es null");
+        this.jugador = jugador;
+        this.escenario = escenario;
+        this.piloto = piloto;
+    }
+
+    /**
+     * Avanza un tick de simulacion
+     *
+     * @return true si el jugador se movio
+     */
+    public boolean tick() {
+        if (piloto != null) entrada = piloto.decidir(this, ticks);
+        ticks++;
+        boolean seMovio = Movimiento.mover(jugador, escenario, entrada);
+        if (seMovio) movimientos++;
+        return seMovio;
+    }
+
+    /**
+     * Avanza varios ticks seguidos
+     *
+     * @param cantidad Ticks a simular
+     */
+    public void avanzar(int cantidad) {for (int i = 0; i < cantidad; i++) tick();}
+
+    /**
+     * Setter de la entrada
+     * @param entrada Combinacion de Movimiento.ARRIBA, ABAJO, IZQUIERDA y DERECHA
+     */
+    public void setEntrada(int entrada) {this.entrada = entrada;}
+
+    /**
+     * Getter de la entrada
+     * @return La entrada del ultimo tick
+     */
+    public int getEntrada() {return entrada;}
+
+    /**
+     * Getter del jugador
+     * @return El jugador de la sesion
+     */
+    public Jugador getJugador() {return jugador;}
+
+    /**
+     * Getter del escenario
+     * @return El escenario de la sesion
+     */
+    public Escenario getEscenario() {return escenario;}
+
+    /**
+     * Getter de ticks
+     * @return Ticks simulados
+     */
+    public long getTicks() {return ticks;}
+
+    /**
+     * Getter de movimientos
+     * @return Ticks en los que el jugador se movio
+     */
+    public long getMovimientos() {return movimientos;}
+
+    /**
+     * Decide la entrada de una sesion sin teclado (bots, repeticiones...)
+     */
+    public interface Piloto {
+        /**
+         * @param sesion Sesion que va a avanzar
+         * @param tick Numero del tick que se va a simular
+         * @return Combinacion de Movimiento.ARRIBA, ABAJO, IZQUIERDA y DERECHA
+         */
+        int decidir(MotorSesion sesion, long tick);
+    }
+}
@@ -0,0 +1,181 @@
+package Controlador;
+
+import Modelo.Escenario;
+import Modelo.Jugador;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ejecuta muchas sesiones independientes en paralelo
+ * Reparte las sesiones en un ForkJoinPool (robo de trabajo) partiendo la
+ * lista por la mitad hasta tener bloques pequenos; cada bloque avanza sus
+ * sesiones todos los ticks seguidos, sin sincronizarse con las demas.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class MotorSimulacion {
+
+    private static final int SESIONES_POR_TAREA = 16;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor por defecto, usa todos los nucleos
+     */
+    public MotorSimulacion() {this(Runtime.getRuntime().availableProcessors());}
+
+    /**
+     * Constructor parametrizado
+     *
+     * @param hilos Paralelismo del pool
+     */
+    public MotorSimulacion(int hilos) {this.pool = new ForkJoinPool(hilos);}
+
+    /**
+     * Crea sesiones con bots que caminan al azar, cada una con su copia del escenario
+     *
+     * @param base Escenario de partida, se copia para cada sesion
+     * @param cantidad Sesiones a crear
+     * @param semilla Semilla, con la misma semilla se repiten las mismas partidas
+     * @return Las sesiones
+     */
+    public static List<MotorSesion> crearSesionesBot(Escenario base, int cantidad, long semilla) {
+        List<MotorSesion> sesiones = new ArrayList<>(cantidad);
+        SplittableRandom raiz = new SplittableRandom(semilla);
+        for (int i = 0; i < cantidad; i++) {
+            Jugador bot = new Jugador("bot" + i, "", 1, 1, 0);
+            sesiones.add(new MotorSesion(bot, base.copia(), pilotoAleatorio(raiz.split())));
+        }
+        return sesiones;
+    }
+
+    /**
+     * Piloto que cambia de direccion cada pocos ticks
+     *
+     * @param azar Generador propio de la sesion
+     * @return El piloto
+     */
+    public static MotorSesion.Piloto pilotoAleatorio(SplittableRandom azar) {
+        return (sesion, tick) -> (tick % 8 == 0) ? (1 << azar.nextInt(4)) : sesion.getEntrada();
+    }
+
+    /**
+     * Avanza todas las sesiones el numero de ticks indicado
+     *
+     * @param sesiones Sesiones a simular
+     * @param ticks Ticks por sesion
+     * @return Tiempos y rendimiento de la ejecucion
+     */
+    public Resultado ejecutar(List<MotorSesion> sesiones, int ticks) {
+        long inicio = System.nanoTime();
+        pool.invoke(new Tarea(sesiones, 0, sesiones.size(), ticks));
+        return new Resultado(sesiones.size(), (long) sesiones.size() * ticks, System.nanoTime() - inicio);
+    }
+
+    /**
+     * Apaga el pool
+     */
+    public void cerrar() {pool.shutdown();}
+
+    /**
+     * Getter del paralelismo
+     * @return Hilos del pool
+     */
+    public int getHilos() {return pool.getParallelism();}
+
+    /**
+     * Bloque de sesiones; se parte en dos mientras sea grande
+     */
+    private static class Tarea extends RecursiveAction {
+        private final List<MotorSesion> sesiones;
+        private final int desde, hasta, ticks;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param sesiones Todas las sesiones
+         * @param desde Primera sesion del bloque
+         * @param hasta Fin del bloque (exclusivo)
+         * @param ticks Ticks por sesion
+         */
+        Tarea(List<MotorSesion> sesiones, int desde, int hasta, int ticks) {
+            this.sesiones = sesiones;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.ticks = ticks;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde <= SESIONES_POR_TAREA) {
+                for (int i = desde; i < hasta; i++) sesiones.get(i).avanzar(ticks);
+                return;
+            }
+            int medio = (desde + hasta) >>> 1;
+            invokeAll(new Tarea(sesiones, desde, medio, ticks), new Tarea(sesiones, medio, hasta, ticks));
+        }
+    }
+
+    /**
+     * Resultado de una ejecucion
+     */
+    public static class Resultado {
+        private final int sesiones;
+        private final long ticksTotales;
+        private final long nanos;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param sesiones Sesiones simuladas
+         * @param ticksTotales Suma de ticks de todas las sesiones
+         * @param nanos Duracion de la ejecucion
+         */
+        Resultado(int sesiones, long ticksTotales, long nanos) {
+            this.sesiones = sesiones;
+            this.ticksTotales = ticksTotales;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Getter de sesiones
+         * @return Sesiones simuladas
+         */
+        public int getSesiones() {return sesiones;}
+
+        /**
+         * Getter de ticks
+         * @return Suma de ticks de todas las sesiones
+         */
+        public long getTicksTotales() {return ticksTotales;}
+
+        /**
+         * Getter de la duracion
+         * @return Nanosegundos de la ejecucion
+         */
+        public long getNanos() {return nanos;}
+
+        /**
+         * Sesiones completadas por segundo
+         * @return Sesiones/s
+         */
+        public double getSesionesPorSegundo() {return sesiones / (nanos / 1e9);}
+
+        /**
+         * Ticks simulados por segundo, sumando todas las sesiones
+         * @return Ticks/s
+         */
+        public double getTicksPorSegundo() {return ticksTotales / (nanos / 1e9);}
+
+        @Override
+        public String toString() {
+            return String.format("%d sesiones, %d ticks en %.1f ms -> %.0f sesiones/s, %.0f ticks/s",
+                    sesiones, ticksTotales, nanos / 1e6, getSesionesPorSegundo(), getTicksPorSegundo());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package Controlador;
+
+import Modelo.Escenario;
+import Modelo.Jugador;
+
+/**
+ * Movimiento del jugador a partir de una entrada ya leida, sin JavaFX
+ * La entrada es una combinacion de bits; quien la lee del teclado es Control.
+ * No tiene estado, asi que MotorSesion lo puede usar desde varios hilos con
+ * sesiones distintas.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class Movimiento {
+
+    // Bits de la entrada
+    public static final int ARRIBA = 1;
+    public static final int ABAJO = 2;
+    public static final int IZQUIERDA = 4;
+    public static final int DERECHA = 8;
+
+    /**
+     * Intenta mover al jugador segun la entrada y valida colisiones.
+     * @param jugador La instancia del jugador a mover.
+     * @param escenario La instancia del escenario actual.
+     * @param entrada Combinacion de ARRIBA, ABAJO, IZQUIERDA y DERECHA.
+     * @return true si el jugador se movió, false si no hubo movimiento o hubo colisión.
+     */
+    public static boolean mover(Jugador jugador, Escenario escenario, int entrada) {
+        if (jugador == null || escenario == null) {
+            System.err.println("Error en Movimiento.mover: Jugador o Escenario es null.");
+            return false;
+        }
+
+        int cambioFila = 0;
+        int cambioColumna = 0;
+
+        if ((entrada & ARRIBA) != 0) cambioFila = -1;
+        if ((entrada & ABAJO) != 0) cambioFila = 1;
+        if ((entrada & IZQUIERDA) != 0) cambioColumna = -1;
+        if ((entrada & DERECHA) != 0) cambioColumna = 1;
+
+        if (cambioFila == 0 && cambioColumna == 0) return false;
+
+        int nuevaFila = jugador.getFilaActual() + cambioFila;
+        int nuevaColumna = jugador.getColumnaActual() + cambioColumna;
+
+        if (nuevaFila < 0 || nuevaFila >= escenario.getFilas() ||
+            nuevaColumna < 0 || nuevaColumna >= escenario.getColumnas()) {
+            return false;
+        }
+
+        if (!escenario.esTransitable(nuevaFila, nuevaColumna)) return false;
+
+        jugador.setFilaActual(nuevaFila);
+        jugador.setColumnaActual(nuevaColumna);
+        return true;
+    }
+}
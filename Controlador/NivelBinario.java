@@ -0,0 +1,467 @@
+package Controlador;
+
+import Modelo.Escenario;
+import Modelo.EscenarioPaginado;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Formato binario compilado de los escenarios (.nvb), que se guarda al lado del .txt.
+ *
+ * Cabecera (big-endian): magia "NIVL", version, filas, columnas, fecha de
+ * modificacion y tamano del .txt de origen, tamano de paleta, caracteres de la
+ * paleta y CRC32C de los tiles. Despues van los tiles, un byte por tile fila a fila.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class NivelBinario {
+
+    /** "NIVL" en ASCII. */
+    public static final int MAGIA = 0x4E49564C;
+    public static final short VERSION = 1;
+    public static final String EXTENSION = ".nvb";
+
+    /** A partir de este tamano los tiles se leen mapeando el archivo en memoria. */
+    private static final long UMBRAL_MAPEO = 16L * 1024 * 1024;
+    private static final int TAMANO_CABECERA_FIJA = 4 + 2 + 4 + 4 + 8 + 8 + 2;
+    private static final int POSICION_ORIGEN = 4 + 2 + 4 + 4;
+    private static final int TAMANO_BUFFER_ESCRITURA = 1 << 20;
+    // Un temporal mas viejo que esto no es de ninguna compilacion en curso
+    private static final long ANTIGUEDAD_TEMPORAL_MS = 10 * 60 * 1000;
+
+    /**
+     * Ruta del binario compilado que corresponde a un .txt
+     *
+     * @param rutaTexto Ruta del escenario en texto
+     * @return Misma ruta con la extension .nvb
+     */
+    public static Path rutaCompilada(Path rutaTexto) {
+        String nombre = rutaTexto.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        String base = (punto > 0) ? nombre.substring(0, punto) : nombre;
+        return rutaTexto.resolveSibling(base + EXTENSION);
+    }
+
+    /**
+     * Carga el binario si sigue correspondiendo al .txt de origen.
+     *
+     * @param rutaBinaria Archivo .nvb
+     * @param rutaTexto Archivo .txt del que salio, o null para no comprobarlo
+     * @return El escenario, o null si no existe, esta desfasado o corrupto
+     */
+    public static Escenario cargar(Path rutaBinaria, Path rutaTexto) {
+        if (!Files.exists(rutaBinaria)) return null;
+
+        try (FileChannel canal = FileChannel.open(rutaBinaria, StandardOpenOption.READ)) {
+            Cabecera cabecera = leerCabecera(canal);
+            if (cabecera == null || !cabecera.correspondeA(rutaTexto)) return null;
+            if (cabecera.totalTiles() > Integer.MAX_VALUE - 8) return null;
+
+            int total = (int) cabecera.totalTiles();
+            byte[] tiles = new byte[total];
+            if (total >= UMBRAL_MAPEO) {
+                MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_ONLY, cabecera.inicioTiles, total);
+                mapa.get(tiles);
+            } else leerCompleto(canal, ByteBuffer.wrap(tiles), cabecera.inicioTiles);
+
+            CRC32C crc = new CRC32C();
+            crc.update(tiles, 0, total);
+            if ((int) crc.getValue() != cabecera.crcTiles) {
+                System.err.println("Advertencia: Checksum incorrecto en " + rutaBinaria + ", se ignora.");
+                return null;
+            }
+            return new Escenario(cabecera.filas, cabecera.columnas, tiles, cabecera.paleta);
+        } catch (IOException e) {
+            System.err.println("No se pudo leer el escenario compilado '" + rutaBinaria + "': " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Comprueba, leyendo solo la cabecera, si el binario sigue al dia con su .txt
+     *
+     * @param rutaBinaria Archivo .nvb
+     * @param rutaTexto Archivo .txt de origen
+     * @return true si existe, es valido y corresponde al .txt actual
+     */
+    public static boolean estaAlDia(Path rutaBinaria, Path rutaTexto) {
+        if (!Files.exists(rutaBinaria)) return false;
+        try (FileChannel canal = FileChannel.open(rutaBinaria, StandardOpenOption.READ)) {
+            Cabecera cabecera = leerCabecera(canal);
+            return cabecera != null && cabecera.correspondeA(rutaTexto);
+        } catch (IOException e) {return false;}
+    }
+
+    /**
+     * Abre el binario como escenario paginado: los tiles se quedan en el archivo
+     * mapeado y solo se cargan en memoria los chunks que se van usando.
+     * No se comprueba el CRC, porque eso obligaria a leer el mapa entero.
+     *
+     * @param rutaBinaria Archivo .nvb
+     * @param maxChunksResidentes Presupuesto de chunks en memoria
+     * @param modo PRIVATE (o READ_ONLY) para que los cambios no lleguen al archivo, READ_WRITE para persistirlos
+     * @return El escenario paginado, o null si el archivo no es valido
+     */
+    public static EscenarioPaginado abrirPaginado(Path rutaBinaria, int maxChunksResidentes, FileChannel.MapMode modo) {
+        FileChannel canal = null;
+        try {
+            // Solo READ_WRITE escribe en el mapeo; los cambios en PRIVATE van a un archivo aparte
+            canal = (modo == FileChannel.MapMode.READ_WRITE)
+                    ? FileChannel.open(rutaBinaria, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(rutaBinaria, StandardOpenOption.READ);
+            Cabecera cabecera = leerCabecera(canal);
+            if (cabecera == null) {
+                canal.close();
+                return null;
+            }
+            return new EscenarioPaginado(cabecera.filas, cabecera.columnas, cabecera.paleta, canal, cabecera.inicioTiles, modo, maxChunksResidentes);
+        } catch (IOException e) {
+            System.err.println("No se pudo abrir el escenario paginado '" + rutaBinaria + "': " + e.getMessage());
+            if (canal != null) try {canal.close();} catch (IOException ignorada) {}
+            return null;
+        }
+    }
+
+    /**
+     * Escribe el escenario compilado. Primero a un temporal y luego se renombra,
+     * para no dejar nunca un binario a medias.
+     *
+     * @param rutaBinaria Archivo .nvb de destino
+     * @param escenario Escenario a guardar
+     * @param rutaTexto Archivo .txt de origen, o null si no tiene
+     * @return true si se guardo
+     */
+    public static boolean guardar(Path rutaBinaria, Escenario escenario, Path rutaTexto) {
+        if (escenario == null) return false;
+        int filas = escenario.getFilas(), columnas = escenario.getColumnas();
+        // Por bloques de filas, que el escenario puede ser paginado y no tener el mapa en un array
+        int filasPorBloque = Math.max(1, Math.min(filas, TAMANO_BUFFER_ESCRITURA / columnas));
+        byte[] bloque = new byte[filasPorBloque * columnas];
+
+        try (EscritorFilas escritor = new EscritorFilas(rutaBinaria, filas, columnas, escenario.getPaleta())) {
+            for (int desde = 0; desde < filas; desde += filasPorBloque) {
+                int hasta = Math.min(filas, desde + filasPorBloque);
+                escenario.copiarFilas(desde, hasta, bloque, 0);
+                escritor.escribirFilas(bloque, hasta - desde);
+            }
+            escritor.terminar(rutaTexto);
+            return true;
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar el escenario compilado '" + rutaBinaria + "': " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Compila un .txt a .nvb fila a fila, sin tener nunca el mapa entero en
+     * memoria. Es el camino para los mapas que no caben en el heap.
+     *
+     * @param rutaTexto Archivo .txt de origen
+     * @param rutaBinaria Archivo .nvb de destino
+     * @return true si se compilo
+     */
+    public static boolean compilarDesdeTexto(Path rutaTexto, Path rutaBinaria) {
+        try (InputStream entrada = Files.newInputStream(rutaTexto)) {
+            LectorRLE lector = new LectorRLE(entrada);
+            if (!lector.leerCabecera()) return false;
+            int columnas = lector.getColumnas();
+
+            try (EscritorFilas escritor = new EscritorFilas(rutaBinaria, lector.getFilas(), columnas, Escenario.paletaBase())) {
+                byte[] fila = new byte[columnas];
+                for (int i = 0; i < lector.getFilas(); i++) {
+                    if (!lector.leerFila(fila, 0)) return false;
+                    escritor.escribirFila(fila, 0);
+                }
+                escritor.terminar(rutaTexto);
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("No se pudo compilar el escenario '" + rutaTexto + "': " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Construye la cabecera, lista para escribir. El origen y el CRC van a
+     * cero; EscritorFilas.terminar los completa.
+     *
+     * @param filas Filas del mapa
+     * @param columnas Columnas del mapa
+     * @param paleta Paleta del escenario
+     * @return Buffer con la cabecera en modo lectura
+     */
+    private static ByteBuffer crearCabecera(int filas, int columnas, char[] paleta) {
+        ByteBuffer cabecera = ByteBuffer.allocate(TAMANO_CABECERA_FIJA + paleta.length * 2 + 4);
+        cabecera.putInt(MAGIA).putShort(VERSION);
+        cabecera.putInt(filas).putInt(columnas);
+        cabecera.putLong(0L).putLong(0L);
+        cabecera.putShort((short) paleta.length);
+        for (char c : paleta) cabecera.putChar(c);
+        cabecera.putInt(0);
+        cabecera.flip();
+        return cabecera;
+    }
+
+    /**
+     * Lee y valida la cabecera del binario
+     *
+     * @param canal Canal abierto del .nvb
+     * @return La cabecera o null si no es un .nvb valido de esta version
+     * @throws IOException Error de lectura
+     */
+    private static Cabecera leerCabecera(FileChannel canal) throws IOException {
+        if (canal.size() < TAMANO_CABECERA_FIJA) return null;
+        ByteBuffer fija = ByteBuffer.allocate(TAMANO_CABECERA_FIJA);
+        leerCompleto(canal, fija, 0);
+        fija.flip();
+
+        if (fija.getInt() != MAGIA || fija.getShort() != VERSION) return null;
+        Cabecera cabecera = new Cabecera();
+        cabecera.filas = fija.getInt();
+        cabecera.columnas = fija.getInt();
+        cabecera.fechaOrigen = fija.getLong();
+        cabecera.tamanoOrigen = fija.getLong();
+        int tamPaleta = fija.getShort();
+        if (cabecera.filas <= 0 || cabecera.columnas <= 0) return null;
+        if (tamPaleta <= 0 || tamPaleta > Escenario.MAX_PALETA) return null;
+
+        ByteBuffer resto = ByteBuffer.allocate(tamPaleta * 2 + 4);
+        leerCompleto(canal, resto, TAMANO_CABECERA_FIJA);
+        resto.flip();
+        cabecera.paleta = new char[tamPaleta];
+        for (int i = 0; i < tamPaleta; i++) cabecera.paleta[i] = resto.getChar();
+        cabecera.crcTiles = resto.getInt();
+        cabecera.inicioTiles = TAMANO_CABECERA_FIJA + resto.capacity();
+
+        if (canal.size() != cabecera.inicioTiles + cabecera.totalTiles()) return null;
+        return cabecera;
+    }
+
+    /**
+     * Crea el temporal donde se escribe antes del renombrado atomico. Cada
+     * escritor tiene el suyo: si dos compilan el mismo archivo a la vez, no
+     * se truncan ni se renombran el temporal el uno al otro.
+     *
+     * @param destino Destino final
+     * @return Ruta del temporal, ya creado vacio en el mismo directorio
+     * @throws IOException Error al crearlo
+     */
+    static Path crearTemporal(Path destino) throws IOException {
+        Path absoluto = destino.toAbsolutePath();
+        return Files.createTempFile(absoluto.getParent(), absoluto.getFileName().toString(), ".tmp");
+    }
+
+    /**
+     * Borra los temporales que dejo una compilacion interrumpida (p.ej. si
+     * se cerro el juego a medias). Los recientes se dejan, pueden ser de otra
+     * instancia que esta compilando.
+     *
+     * @param directorio Directorio de los escenarios
+     * @return Temporales borrados
+     */
+    public static int borrarTemporales(Path directorio) {
+        int borrados = 0;
+        long limite = System.currentTimeMillis() - ANTIGUEDAD_TEMPORAL_MS;
+        try (DirectoryStream<Path> temporales = Files.newDirectoryStream(directorio, "*" + EXTENSION + "*.tmp")) {
+            for (Path temporal : temporales) {
+                try {
+                    if (Files.getLastModifiedTime(temporal).toMillis() < limite && Files.deleteIfExists(temporal)) borrados++;
+                } catch (IOException e) {System.err.println("No se pudo borrar el temporal '" + temporal + "': " + e.getMessage());}
+            }
+        } catch (IOException e) {
+            System.err.println("Error al buscar temporales en '" + directorio + "': " + e.getMessage());
+        }
+        return borrados;
+    }
+
+    /**
+     * Lee del canal hasta llenar el buffer
+     *
+     * @param canal Canal abierto
+     * @param buffer Buffer a llenar
+     * @param posicion Posicion del archivo donde empezar
+     * @throws IOException Si el archivo se acaba antes
+     */
+    private static void leerCompleto(FileChannel canal, ByteBuffer buffer, long posicion) throws IOException {
+        while (buffer.hasRemaining()) {
+            int leidos = canal.read(buffer, posicion);
+            if (leidos < 0) throw new IOException("Archivo truncado");
+            posicion += leidos;
+        }
+    }
+
+    /**
+     * Escribe el buffer entero en el canal
+     *
+     * @param canal Canal abierto
+     * @param buffer Datos a escribir
+     * @throws IOException Error de escritura
+     */
+    private static void escribirCompleto(FileChannel canal, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) canal.write(buffer);
+    }
+
+    /**
+     * Escritor de un .nvb fila a fila, para mapas que no caben en memoria.
+     * Escribe a un temporal; terminar() completa en la cabecera el CRC y los
+     * datos del .txt de origen y lo renombra. Si se cierra sin terminar, el
+     * temporal se borra y el destino no se toca.
+     */
+    public static class EscritorFilas implements Closeable {
+        private final Path rutaBinaria;
+        private final Path temporal;
+        private final int filas;
+        private final int columnas;
+        private final FileChannel canal;
+        private final ByteBuffer salida;
+        private final CRC32C crc = new CRC32C();
+        private final int posicionCrc;
+        private int filasEscritas = 0;
+        private boolean terminado = false;
+
+        /**
+         * Constructor parametrizado, crea el temporal y escribe la cabecera
+         *
+         * @param rutaBinaria Archivo .nvb de destino
+         * @param filas Filas del mapa
+         * @param columnas Columnas del mapa
+         * @param paleta Paleta de los indices que se van a escribir
+         * @throws IOException Error al crear el temporal; si ya se creo, se borra
+         */
+        public EscritorFilas(Path rutaBinaria, int filas, int columnas, char[] paleta) throws IOException {
+            this.rutaBinaria = rutaBinaria;
+            this.filas = filas;
+            this.columnas = columnas;
+            this.temporal = crearTemporal(rutaBinaria);
+            FileChannel abierto = null;
+            boolean listo = false;
+            try {
+                ByteBuffer cabecera = crearCabecera(filas, columnas, paleta);
+                this.posicionCrc = cabecera.limit() - 4;
+                this.salida = ByteBuffer.allocate(Math.max(TAMANO_BUFFER_ESCRITURA, columnas));
+                abierto = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                escribirCompleto(abierto, cabecera);
+                listo = true;
+            } finally {
+                // Cualquier fallo (tambien una paleta invalida o falta de memoria) no deja el temporal
+                if (!listo) {
+                    if (abierto != null) try {abierto.close();} catch (IOException ignorada) {}
+                    try {Files.deleteIfExists(temporal);}
+                    catch (IOException e) {System.err.println("No se pudo borrar el temporal '" + temporal + "': " + e.getMessage());}
+                }
+            }
+            this.canal = abierto;
+        }
+
+        /**
+         * Anade la siguiente fila
+         *
+         * @param fila Indices de paleta
+         * @param desde Posicion de la primera columna
+         * @throws IOException Error al escribir, o mas filas de las declaradas
+         */
+        public void escribirFila(byte[] fila, int desde) throws IOException {
+            if (filasEscritas == filas) throw new IOException("Sobran filas: el mapa tiene " + filas);
+            crc.update(fila, desde, columnas);
+            if (salida.remaining() < columnas) {
+                salida.flip();
+                escribirCompleto(canal, salida);
+                salida.clear();
+            }
+            salida.put(fila, desde, columnas);
+            filasEscritas++;
+        }
+
+        /**
+         * Anade varias filas seguidas; se escriben sin pasar por el buffer
+         *
+         * @param bloque Indices de paleta, fila a fila desde la posicion 0
+         * @param numFilas Filas del bloque
+         * @throws IOException Error al escribir, o mas filas de las declaradas
+         */
+        public void escribirFilas(byte[] bloque, int numFilas) throws IOException {
+            if (filasEscritas + numFilas > filas) throw new IOException("Sobran filas: el mapa tiene " + filas);
+            int bytes = numFilas * columnas;
+            crc.update(bloque, 0, bytes);
+            salida.flip();
+            escribirCompleto(canal, salida);
+            salida.clear();
+            escribirCompleto(canal, ByteBuffer.wrap(bloque, 0, bytes));
+            filasEscritas += numFilas;
+        }
+
+        /**
+         * Completa la cabecera, cierra y renombra al destino
+         *
+         * @param rutaTexto Archivo .txt de origen, ya escrito entero, o null si no tiene
+         * @throws IOException Error al escribir, o faltan filas
+         */
+        public void terminar(Path rutaTexto) throws IOException {
+            if (filasEscritas != filas) throw new IOException("Faltan filas: " + filasEscritas + " de " + filas);
+            salida.flip();
+            escribirCompleto(canal, salida);
+
+            ByteBuffer origen = ByteBuffer.allocate(16);
+            origen.putLong((rutaTexto != null) ? Files.getLastModifiedTime(rutaTexto).toMillis() : 0L);
+            origen.putLong((rutaTexto != null) ? Files.size(rutaTexto) : 0L);
+            origen.flip();
+            while (origen.hasRemaining()) canal.write(origen, POSICION_ORIGEN + origen.position());
+            ByteBuffer valorCrc = ByteBuffer.allocate(4).putInt(0, (int) crc.getValue());
+            while (valorCrc.hasRemaining()) canal.write(valorCrc, posicionCrc + valorCrc.position());
+
+            canal.close();
+            Files.move(temporal, rutaBinaria, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            terminado = true;
+        }
+
+        /**
+         * Cierra el canal; si no se termino, borra el temporal
+         */
+        @Override
+        public void close() {
+            try {canal.close();} catch (IOException ignorada) {}
+            if (!terminado) try {Files.deleteIfExists(temporal);} catch (IOException ignorada) {}
+        }
+    }
+
+    /**
+     * Datos de la cabecera de un .nvb
+     */
+    private static class Cabecera {
+        int filas, columnas;
+        long fechaOrigen, tamanoOrigen;
+        char[] paleta;
+        int crcTiles;
+        long inicioTiles;
+
+        /**
+         * Total de tiles del mapa
+         * @return filas * columnas
+         */
+        long totalTiles() {return (long) filas * columnas;}
+
+        /**
+         * Comprueba que el .txt no ha cambiado desde que se compilo
+         *
+         * @param rutaTexto Archivo .txt de origen, o null para no comprobarlo
+         * @return true si la fecha y el tamano coinciden
+         * @throws IOException Error al consultar el .txt
+         */
+        boolean correspondeA(Path rutaTexto) throws IOException {
+            if (rutaTexto == null) return true;
+            return Files.getLastModifiedTime(rutaTexto).toMillis() == fechaOrigen && Files.size(rutaTexto) == tamanoOrigen;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package Controlador;
+
+import Modelo.Escenario;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * Renderizado por capas: la capa estatica del mapa se pinta con las imagenes
+ * de chunk ya horneadas de CacheCapasChunk (unos pocos drawImage en vez de uno
+ * por tile) y los sprites dinamicos, ahora mismo el ImageView del jugador, van
+ * encima como nodos propios.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class RenderizadorCapas extends RenderizadorMapa {
+
+    /** Memoria por defecto para las imagenes de chunk (64 MB). */
+    public static final long PRESUPUESTO_DEFECTO = 64L * 1024 * 1024;
+
+    private final CacheCapasChunk cache;
+
+    /**
+     * Constructor parametrizado
+     *
+     * @param lienzo Canvas donde se dibuja
+     * @param escenario Escenario a dibujar
+     * @param tamanoTile Lado del tile en pixeles
+     * @param presupuestoBytes Memoria maxima de la cache de chunks
+     */
+    public RenderizadorCapas(Canvas lienzo, Escenario escenario, int tamanoTile, long presupuestoBytes) {
+        super(lienzo, escenario, tamanoTile);
+        this.cache = new CacheCapasChunk(escenario, tamanoTile, presupuestoBytes);
+    }
+
+    /**
+     * Getter de la cache
+     * @return La cache de chunks, para consultar sus estadisticas
+     */
+    public CacheCapasChunk getCache() {return cache;}
+
+    /**
+     * Deja de escuchar los cambios del escenario y libera las imagenes
+     */
+    @Override
+    public void desconectar() {
+        super.desconectar();
+        cache.desconectar();
+    }
+
+    /**
+     * Dibuja los chunks que tocan la vista
+     */
+    @Override
+    protected void dibujar() {
+        GraphicsContext gc = lienzo.getGraphicsContext2D();
+        gc.setFill(Color.BLACK);
+        gc.fillRect(0, 0, lienzo.getWidth(), lienzo.getHeight());
+
+        Camara camara = getCamara();
+        double ladoPx = (double) CacheCapasChunk.LADO_CHUNK * tamanoTile;
+        int chunksFilas = (escenario.getFilas() + CacheCapasChunk.LADO_CHUNK - 1) / CacheCapasChunk.LADO_CHUNK;
+        int chunksColumnas = (escenario.getColumnas() + CacheCapasChunk.LADO_CHUNK - 1) / CacheCapasChunk.LADO_CHUNK;
+        int primeraFila = Math.max(0, (int) Math.floor(camara.getY() / ladoPx));
+        int primeraColumna = Math.max(0, (int) Math.floor(camara.getX() / ladoPx));
+        int ultimaFila = Math.min(chunksFilas - 1, (int) Math.floor((camara.getY() + camara.getAltoVista()) / ladoPx));
+        int ultimaColumna = Math.min(chunksColumnas - 1, (int) Math.floor((camara.getX() + camara.getAnchoVista()) / ladoPx));
+
+        for (int cf = primeraFila; cf <= ultimaFila; cf++)
+            for (int cc = primeraColumna; cc <= ultimaColumna; cc++)
+                gc.drawImage(cache.obtener(cf, cc), cc * ladoPx - camara.getX(), cf * ladoPx - camara.getY());
+        contarRedibujado();
+    }
+}
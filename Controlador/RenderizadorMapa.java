@@ -0,0 +1,163 @@
+package Controlador;
+
+import Modelo.Escenario;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+/**
+ * Dibuja el escenario sobre un Canvas, solo los tiles que caen dentro de la
+ * vista de la camara. Sustituye a un ImageView por tile en el GridPane, asi el
+ * numero de nodos no depende del tamano del mapa.
+ * Solo se redibuja cuando la camara se mueve o cambia un tile visible.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class RenderizadorMapa implements Escenario.OyenteTiles {
+
+    protected final Canvas lienzo;
+    protected final Escenario escenario;
+    private final Camara camara;
+    protected final int tamanoTile;
+    private final Image[] imagenesPorIndice = new Image[Escenario.MAX_PALETA];
+    private boolean sucio = true;
+    private long redibujados = 0;
+
+    /**
+     * Constructor parametrizado. Se registra como oyente del escenario.
+     *
+     * @param lienzo Canvas donde se dibuja
+     * @param escenario Escenario a dibujar
+     * @param tamanoTile Lado del tile en pixeles
+     */
+    public RenderizadorMapa(Canvas lienzo, Escenario escenario, int tamanoTile) {
+        this.lienzo = lienzo;
+        this.escenario = escenario;
+        this.tamanoTile = tamanoTile;
+        this.camara = new Camara(lienzo.getWidth(), lienzo.getHeight(), (double) escenario.getColumnas() * tamanoTile, (double) escenario.getFilas() * tamanoTile);
+        lienzo.getGraphicsContext2D().setImageSmoothing(false);
+        escenario.agregarOyente(this);
+    }
+
+    /**
+     * Mueve la camara para centrar una posicion en tiles (admite fracciones)
+     *
+     * @param fila Fila a centrar
+     * @param columna Columna a centrar
+     */
+    public void seguir(double fila, double columna) {
+        if (camara.centrarEn((columna + 0.5) * tamanoTile, (fila + 0.5) * tamanoTile)) sucio = true;
+    }
+
+    /**
+     * Redibuja la vista si la camara se movio o cambio algun tile visible
+     *
+     * @return true si se ha redibujado
+     */
+    public boolean dibujarSiHaceFalta() {
+        if (!sucio) return false;
+        dibujar();
+        sucio = false;
+        return true;
+    }
+
+    /**
+     * Fuerza un redibujado completo en el siguiente dibujarSiHaceFalta
+     */
+    public void invalidar() {sucio = true;}
+
+    /**
+     * Posicion X en el lienzo de una columna del mapa
+     *
+     * @param columna Columna (admite fracciones)
+     * @return Pixel X relativo al lienzo
+     */
+    public double pantallaX(double columna) {return columna * tamanoTile - camara.getX();}
+
+    /**
+     * Posicion Y en el lienzo de una fila del mapa
+     *
+     * @param fila Fila (admite fracciones)
+     * @return Pixel Y relativo al lienzo
+     */
+    public double pantallaY(double fila) {return fila * tamanoTile - camara.getY();}
+
+    /**
+     * Getter de la camara
+     * @return La camara del renderizador
+     */
+    public Camara getCamara() {return camara;}
+
+    /**
+     * Getter de redibujados
+     * @return Veces que se ha dibujado la vista completa
+     */
+    public long getRedibujados() {return redibujados;}
+
+    /**
+     * Deja de escuchar los cambios del escenario
+     */
+    public void desconectar() {escenario.quitarOyente(this);}
+
+    /**
+     * Un tile ha cambiado: solo hace falta redibujar si esta en la vista
+     *
+     * @param fila Fila del tile
+     * @param columna Columna del tile
+     */
+    @Override
+    public void tileCambiado(int fila, int columna) {
+        if (sucio) return;
+        double px = (double) columna * tamanoTile - camara.getX();
+        double py = (double) fila * tamanoTile - camara.getY();
+        if (px + tamanoTile > 0 && py + tamanoTile > 0 && px < camara.getAnchoVista() && py < camara.getAltoVista()) sucio = true;
+    }
+
+    /**
+     * Dibuja los tiles visibles
+     */
+    protected void dibujar() {
+        GraphicsContext gc = lienzo.getGraphicsContext2D();
+        gc.setFill(Color.BLACK);
+        gc.fillRect(0, 0, lienzo.getWidth(), lienzo.getHeight());
+
+        int primeraFila = Math.max(0, (int) Math.floor(camara.getY() / tamanoTile));
+        int primeraColumna = Math.max(0, (int) Math.floor(camara.getX() / tamanoTile));
+        int ultimaFila = Math.min(escenario.getFilas() - 1, (int) Math.floor((camara.getY() + camara.getAltoVista()) / tamanoTile));
+        int ultimaColumna = Math.min(escenario.getColumnas() - 1, (int) Math.floor((camara.getX() + camara.getAnchoVista()) / tamanoTile));
+
+        for (int fila = primeraFila; fila <= ultimaFila; fila++) {
+            double y = (double) fila * tamanoTile - camara.getY();
+            for (int columna = primeraColumna; columna <= ultimaColumna; columna++) {
+                Image img = imagenIndice(escenario.getIndice(fila, columna));
+                if (img != null) gc.drawImage(img, (double) columna * tamanoTile - camara.getX(), y, tamanoTile, tamanoTile);
+            }
+        }
+        contarRedibujado();
+    }
+
+    /**
+     * Suma un redibujado a las estadisticas; lo usan tambien las subclases
+     */
+    protected void contarRedibujado() {redibujados++;}
+
+    /**
+     * Imagen de un indice de paleta, pidiendola a GestorTile solo la primera vez
+     *
+     * @param indice Indice de paleta
+     * @return La imagen del tile, o null si no hay
+     */
+    private Image imagenIndice(int indice) {
+        Image img = imagenesPorIndice[indice];
+        if (img == null) {
+            char[] paleta = escenario.getPaleta();
+            if (indice >= paleta.length || paleta[indice] == '\0') return null;
+            img = GestorTile.getTileImage(paleta[indice]);
+            imagenesPorIndice[indice] = img;
+        }
+        return img;
+    }
+}
@@ -0,0 +1,291 @@
+package Controlador;
+
+import Modelo.Escenario;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Repositorio de niveles ya decodificados
+ * Guarda en memoria los Escenario cargados, con la ruta como clave y la
+ * fecha y tamano del archivo como version: si el .txt cambia, la entrada ya
+ * no vale y se vuelve a cargar. El limite es de tiles, no de niveles, porque
+ * un mapa de 2000x2000 pesa lo que 50000 de 8x10; al pasarse sale el menos
+ * usado.
+ *
+ * Los escenarios guardados no se dan nunca: cada obtener() devuelve una
+ * copia, porque la partida cambia tiles. precargar() decodifica en un hilo
+ * de fondo los niveles que probablemente vengan despues, y si se piden
+ * mientras se precargan se espera a esa carga en vez de repetirla.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class RepositorioNiveles {
+
+    // 64 millones de tiles: 64 MB de tiles mas 8 MB de colision
+    public static final long PESO_MAXIMO_DEFECTO = 64L * 1024 * 1024;
+
+    // nivel_default2.txt -> "nivel_default", 2, ".txt"
+    private static final Pattern NUMERADO = Pattern.compile("(.*?)(\\d+)(\\.[^.]+)");
+
+    private static final ExecutorService precargador = Executors.newSingleThreadExecutor(tarea -> {
+        Thread hilo = new Thread(tarea, "precarga-niveles");
+        hilo.setDaemon(true);
+        hilo.setPriority(Thread.MIN_PRIORITY);
+        return hilo;
+    });
+
+    private final Function<Path, Escenario> cargador;
+    private final long pesoMaximo;
+    private final Map<Path, Entrada> niveles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Path, CompletableFuture<Escenario>> enCurso = new HashMap<>();
+    private long peso = 0;
+
+    private long aciertos = 0;
+    private long fallos = 0;
+    private long esperas = 0;
+    private long precargas = 0;
+    private long expulsiones = 0;
+
+    /**
+     * Constructor parametrizado
+     *
+     * @param cargador Carga un escenario desde disco, o devuelve null
+     * @param pesoMaximo Tiles que caben en memoria entre todos los niveles
+     */
+    public RepositorioNiveles(Function<Path, Escenario> cargador, long pesoMaximo) {
+        if (pesoMaximo <= 0) throw new IllegalArgumentException("Peso maximo invalido: " + pesoMaximo);
+        this.cargador = cargador;
+        this.pesoMaximo = pesoMaximo;
+    }
+
+    /**
+     * Escenario de un archivo: de memoria si sigue al dia, si no de disco
+     *
+     * @param ruta Ruta del .txt del escenario
+     * @return Copia del escenario, o null si no se pudo cargar
+     */
+    public Escenario obtener(Path ruta) {
+        Path clave = ruta.toAbsolutePath().normalize();
+        long[] version = version(clave);
+        CompletableFuture<Escenario> futura;
+        boolean propia = false;
+        synchronized (this) {
+            Entrada entrada = niveles.get(clave);
+            if (entrada != null && entrada.esVersion(version)) {
+                aciertos++;
+                // Fuera de la cache nadie tiene este escenario, asi que se puede copiar sin el cerrojo
+                futura = CompletableFuture.completedFuture(entrada.escenario);
+            } else {
+                futura = enCurso.get(clave);
+                if (futura != null) esperas++;
+                else {
+                    fallos++;
+                    futura = new CompletableFuture<>();
+                    enCurso.put(clave, futura);
+                    propia = true;
+                }
+            }
+        }
+        if (propia) cargar(clave, version, futura);
+        Escenario base = futura.join();
+        return (base != null) ? base.copia() : null;
+    }
+
+    /**
+     * Decodifica en segundo plano los niveles que no esten ya en memoria
+     *
+     * @param rutas Rutas de los .txt
+     * @return Se completa cuando acaban todas las precargas lanzadas
+     */
+    public CompletableFuture<Void> precargar(List<Path> rutas) {
+        List<CompletableFuture<Escenario>> lanzadas = new ArrayList<>();
+        for (Path ruta : rutas) {
+            Path clave = ruta.toAbsolutePath().normalize();
+            CompletableFuture<Escenario> futura;
+            synchronized (this) {
+                if (niveles.containsKey(clave) || enCurso.containsKey(clave)) continue;
+                futura = new CompletableFuture<>();
+                enCurso.put(clave, futura);
+                precargas++;
+            }
+            // La version se mira en el hilo de fondo, antes de leer el archivo
+            precargador.execute(() -> cargar(clave, version(clave), futura));
+            lanzadas.add(futura);
+        }
+        return CompletableFuture.allOf(lanzadas.toArray(CompletableFuture<?>[]::new));
+    }
+
+    /**
+     * Rutas de los niveles que siguen a uno numerado y existen:
+     * despues de nivel_default1.txt vienen nivel_default2.txt, nivel_default3.txt...
+     *
+     * @param ruta Nivel actual
+     * @param cuantos Niveles siguientes a buscar
+     * @return Las rutas que existen, en orden
+     */
+    public static List<Path> siguientes(Path ruta, int cuantos) {
+        List<Path> resultado = new ArrayList<>(cuantos);
+        Path nombre = ruta.getFileName();
+        if (nombre == null) return resultado;
+        Matcher partes = NUMERADO.matcher(nombre.toString());
+        if (!partes.matches()) return resultado;
+        long numero;
+        try {numero = Long.parseLong(partes.group(2));}
+        catch (NumberFormatException e) {return resultado;}
+        for (int i = 1; i <= cuantos; i++) {
+            Path siguiente = ruta.resolveSibling(partes.group(1) + (numero + i) + partes.group(3));
+            if (Files.isRegularFile(siguiente)) resultado.add(siguiente);
+        }
+        return resultado;
+    }
+
+    /**
+     * Vacia el repositorio; las precargas en curso acaban pero ya no se guardan
+     */
+    public synchronized void invalidar() {
+        niveles.clear();
+        enCurso.clear();
+        peso = 0;
+    }
+
+    /**
+     * Carga un nivel, lo guarda si cabe y despierta a quien lo espere
+     *
+     * @param clave Ruta normalizada
+     * @param version Version del archivo antes de leerlo
+     * @param futura Futura de esta carga
+     */
+    private void cargar(Path clave, long[] version, CompletableFuture<Escenario> futura) {
+        Escenario escenario = null;
+        try {
+            escenario = cargador.apply(clave);
+        } catch (RuntimeException e) {
+            System.err.println("Error al cargar el nivel " + clave + ": " + e);
+        } finally {
+            synchronized (this) {
+                // Si se invalido mientras tanto, esta carga ya no es la vigente
+                if (enCurso.get(clave) == futura) {
+                    enCurso.remove(clave);
+                    if (escenario != null) guardar(clave, version, escenario);
+                }
+            }
+            futura.complete(escenario);
+        }
+    }
+
+    /**
+     * Mete un nivel y saca los menos usados hasta volver al limite.
+     * Llamar con el cerrojo.
+     *
+     * @param clave Ruta normalizada
+     * @param version Version del archivo
+     * @param escenario Escenario recien cargado
+     */
+    private void guardar(Path clave, long[] version, Escenario escenario) {
+        long pesoNuevo = (long) escenario.getFilas() * escenario.getColumnas();
+        Entrada anterior = niveles.remove(clave);
+        if (anterior != null) peso -= anterior.peso;
+        // Uno que no cabe solo se sirve a quien lo pidio
+        if (pesoNuevo > pesoMaximo) return;
+        niveles.put(clave, new Entrada(escenario, version, pesoNuevo));
+        peso += pesoNuevo;
+        Iterator<Entrada> menosUsados = niveles.values().iterator();
+        while (peso > pesoMaximo && menosUsados.hasNext()) {
+            Entrada entrada = menosUsados.next();
+            if (entrada.escenario == escenario) continue;
+            menosUsados.remove();
+            peso -= entrada.peso;
+            expulsiones++;
+        }
+    }
+
+    /**
+     * Version de un archivo: fecha de modificacion y tamano
+     *
+     * @param ruta Ruta del archivo
+     * @return {milisegundos, bytes}, o {-1, -1} si no se puede leer
+     */
+    private static long[] version(Path ruta) {
+        try {
+            BasicFileAttributes atributos = Files.readAttributes(ruta, BasicFileAttributes.class);
+            return new long[] {atributos.lastModifiedTime().toMillis(), atributos.size()};
+        } catch (IOException e) {
+            return new long[] {-1, -1};
+        }
+    }
+
+    /**
+     * Getter del peso
+     * @return Tiles en memoria
+     */
+    public synchronized long getPeso() {return peso;}
+
+    /**
+     * Getter de aciertos
+     * @return Niveles servidos desde memoria
+     */
+    public synchronized long getAciertos() {return aciertos;}
+
+    /**
+     * Getter de fallos
+     * @return Niveles que hubo que leer de disco al pedirlos
+     */
+    public synchronized long getFallos() {return fallos;}
+
+    /**
+     * Resumen de los contadores
+     * @return Texto con niveles, peso y contadores
+     */
+    public synchronized String resumen() {
+        return "niveles=" + niveles.size() + " tiles=" + peso + "/" + pesoMaximo + " aciertos=" + aciertos + " fallos=" + fallos
+                + " esperas=" + esperas + " precargas=" + precargas + " expulsiones=" + expulsiones;
+    }
+
+    /**
+     * Un nivel en memoria
+     */
+    private static class Entrada {
+        final Escenario escenario;
+        final long modificado;
+        final long tamano;
+        final long peso;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param escenario Escenario decodificado, no se da a nadie
+         * @param version {milisegundos, bytes} del archivo
+         * @param peso Tiles del escenario
+         */
+        Entrada(Escenario escenario, long[] version, long peso) {
+            this.escenario = escenario;
+            this.modificado = version[0];
+            this.tamano = version[1];
+            this.peso = peso;
+        }
+
+        /**
+         * Comprueba si el archivo sigue igual que cuando se cargo
+         *
+         * @param version {milisegundos, bytes} actuales
+         * @return true si coinciden
+         */
+        boolean esVersion(long[] version) {return version[0] == modificado && version[1] == tamano && modificado != -1;}
+    }
+}
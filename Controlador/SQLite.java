@@ -15,12 +15,82 @@ import java.util.List;
  */
 public class SQLite {
     private static final String URL_DB = "jdbc:sqlite:PuntuacionesJuego.db";
+    private static final String SQL_INSERTAR = "INSERT INTO Puntuaciones(nombre, puntuacion) VALUES(?, ?)";
+    private static ConexionSQLite conexion = new ConexionSQLite(URL_DB);
+    private static EscritorPuntuaciones escritor;
+    private static final CacheClasificacion clasificacion = new CacheClasificacion(CacheClasificacion.K_DEFECTO);
+
+    /**
+     * Cambia la base de datos usada, para pruebas y benchmarks con una base temporal.
+     * Escribe lo que quede en cola y cierra la conexion anterior.
+     * @param url URL JDBC, o null para volver a PuntuacionesJuego.db
+     */
+    public static void setUrlBaseDatos(String url) {
+        cerrarEscritor();
+        synchronized (SQLite.class) {
+            conexion.cerrar();
+            conexion = new ConexionSQLite((url != null) ? url : URL_DB);
+            clasificacion.invalidar();
+        }
+    }
+
+    /**
+     * Cambia el escritor en segundo plano (capacidad, lotes, durabilidad...).
+     * El anterior se vacia y se cierra.
+     * @param nuevo Escritor a usar, o null para volver al de por defecto
+     */
+    public static void setEscritor(EscritorPuntuaciones nuevo) {
+        cerrarEscritor();
+        synchronized (SQLite.class) {escritor = nuevo;}
+    }
+
+    /**
+     * Getter de la clasificacion en memoria
+     * @return La cache de las mejores puntuaciones
+     */
+    public static CacheClasificacion getClasificacion() {return clasificacion;}
+
+    /**
+     * Getter del escritor en segundo plano, creandolo si hace falta
+     * @return El escritor que usa guardarPuntuacionAsincrona
+     */
+    public static synchronized EscritorPuntuaciones getEscritor() {
+        if (escritor == null) escritor = new EscritorPuntuaciones();
+        return escritor;
+    }
+
+    /**
+     * Getter de la conexion compartida
+     * @return La conexion que usan todos los metodos de esta clase
+     */
+    public static synchronized ConexionSQLite getConexion() {return conexion;}
+
+    /**
+     * Cierra la conexion compartida. Llamar al salir de la aplicacion.
+     */
+    public static void cerrar() {
+        cerrarEscritor();
+        synchronized (SQLite.class) {conexion.cerrar();}
+    }
+
+    /**
+     * Vacia y cierra el escritor en segundo plano. No puede tener el cerrojo
+     * de la clase mientras espera, porque el hilo escritor lo necesita.
+     */
+    private static void cerrarEscritor() {
+        EscritorPuntuaciones anterior;
+        synchronized (SQLite.class) {
+            anterior = escritor;
+            escritor = null;
+        }
+        if (anterior != null) anterior.cerrar();
+    }
 
     /**
      * Inicializa la base de datos y crea la tabla Puntuaciones si no existe. Se
      * recomienda llamar a este método una vez al inicio de la aplicación.
      */
-    public static void inicializarBaseDatos() {
+    public static synchronized void inicializarBaseDatos() {
         String sqlCreateTable = """
                                 CREATE TABLE IF NOT EXISTS Puntuaciones (
                                     id INTEGER PRIMARY KEY AUTOINCREMENT,
@@ -28,10 +98,12 @@ public class SQLite {
                                     puntuacion INTEGER NOT NULL
                                 );""";
 
-        try (Connection conexion = DriverManager.getConnection(URL_DB); Statement declaracion = conexion.createStatement()) {
+        try (Statement declaracion = conexion.getConexion().createStatement()) {
 
             System.out.println("Conectado a SQLite. Verificando/Creando tabla Puntuaciones...");
             declaracion.execute(sqlCreateTable);
+            for (String sql : Clasificacion.ESQUEMA) declaracion.execute(sql);
+            Clasificacion.rellenarSiHaceFalta(conexion.getConexion());
             System.out.println("Tabla Puntuaciones lista.");
 
         } catch (SQLException e) {
@@ -46,23 +118,38 @@ public class SQLite {
      * @return Una lista de objetos Puntuacion, ordenada de mayor a menor.
      */
     public static List<Puntuacion> obtenerMejoresPuntuaciones() {
-        for (int i = 0; i < 20; i++) guardarPuntuacion("Defectos", i); // Esto son falsos positivos, para mostrar el rendimiento de la funcion
+        for (int i = 0; i < 20; i++) guardarPuntuacionAsincrona("Defectos", i); // Esto son falsos positivos, para mostrar el rendimiento de la funcion
+        List<Puntuacion> mejores = consultarMejoresPuntuaciones(10);
+        return (mejores != null) ? mejores : new ArrayList<>();
+    }
 
+    /**
+     * Consulta las mejores puntuaciones directamente en la tabla, sin encolar nada.
+     *
+     * @param limite Cuantas devolver.
+     * @return Una lista de objetos Puntuacion, ordenada de mayor a menor, o null si falla la consulta.
+     */
+    static synchronized List<Puntuacion> consultarMejoresPuntuaciones(int limite) {
         List<Puntuacion> listaPuntuaciones = new ArrayList<>();
-        String sql = "SELECT nombre, puntuacion FROM Puntuaciones ORDER BY puntuacion DESC LIMIT 10";
-
-        try (Connection conexion = DriverManager.getConnection(URL_DB); Statement declaracion = conexion.createStatement(); ResultSet resultado = declaracion.executeQuery(sql)) {
-            System.out.println("Obteniendo mejores puntuaciones...");
-            while (resultado.next()) {
-                String nombre = resultado.getString("nombre");
-                int puntuacionVal = resultado.getInt("puntuacion");
-                listaPuntuaciones.add(new Puntuacion(nombre, puntuacionVal));
+        String sql = "SELECT nombre, puntuacion, id FROM Puntuaciones ORDER BY puntuacion DESC, id LIMIT ?";
+
+        try {
+            PreparedStatement consulta = conexion.preparar(sql);
+            consulta.setInt(1, limite);
+            try (ResultSet resultado = consulta.executeQuery()) {
+                System.out.println("Obteniendo mejores puntuaciones...");
+                while (resultado.next()) {
+                    String nombre = resultado.getString("nombre");
+                    int puntuacionVal = resultado.getInt("puntuacion");
+                    listaPuntuaciones.add(new Puntuacion(nombre, puntuacionVal, resultado.getLong("id")));
+                }
             }
             System.out.println("Se encontraron " + listaPuntuaciones.size() + " puntuaciones.");
 
         } catch (SQLException e) {
             System.err.println("Error al obtener puntuaciones de SQLite: " + e.getMessage());
             e.printStackTrace();
+            return null;
         }
         return listaPuntuaciones;
     }
@@ -74,13 +161,13 @@ public class SQLite {
      * @param puntuacion Puntuación obtenida.
      * @return true si se guardó correctamente, false en caso contrario.
      */
-    public static boolean guardarPuntuacion(String nombre, int puntuacion) {
-        String sql = "INSERT INTO Puntuaciones(nombre, puntuacion) VALUES(?, ?)";
-
-        try (Connection conexion = DriverManager.getConnection(URL_DB); PreparedStatement decPre = conexion.prepareStatement(sql)) {
+    public static synchronized boolean guardarPuntuacion(String nombre, int puntuacion) {
+        try {
+            PreparedStatement decPre = conexion.preparar(SQL_INSERTAR);
             decPre.setString(1, nombre);
             decPre.setInt(2, puntuacion);
             decPre.executeUpdate();
+            clasificacion.registrar(nombre, puntuacion, ultimoId(conexion.getConexion()));
             System.out.println("Puntuación guardada para " + nombre + ": " + puntuacion);
             return true;
 
@@ -90,4 +177,70 @@ public class SQLite {
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Encola una puntuación para guardarla en segundo plano, sin esperar al disco.
+     *
+     * @param nombre Nombre del jugador.
+     * @param puntuacion Puntuación obtenida.
+     * @return true si se encoló, false si la cola estaba llena (ver EscritorPuntuaciones).
+     */
+    public static boolean guardarPuntuacionAsincrona(String nombre, int puntuacion) {return getEscritor().encolar(nombre, puntuacion);}
+
+    /**
+     * Guarda varias puntuaciones en una sola transacción.
+     *
+     * @param lote Puntuaciones a guardar.
+     * @param sincronoCompleto true para hacer el commit con synchronous=FULL.
+     * @return true si se guardó el lote entero, false si se deshizo.
+     */
+    static synchronized boolean guardarLote(List<Puntuacion> lote, boolean sincronoCompleto) {
+        Connection c = null;
+        try {
+            c = conexion.getConexion();
+            // synchronous no se puede cambiar dentro de una transaccion
+            if (sincronoCompleto) try (Statement declaracion = c.createStatement()) {declaracion.execute("PRAGMA synchronous=FULL");}
+            PreparedStatement decPre = conexion.preparar(SQL_INSERTAR);
+            decPre.clearBatch();
+            c.setAutoCommit(false);
+            for (Puntuacion p : lote) {
+                decPre.setString(1, p.getNombre());
+                decPre.setInt(2, p.getPuntuacion());
+                decPre.addBatch();
+            }
+            decPre.executeBatch();
+            // Dentro de la transaccion nadie mas inserta, asi que los ids del lote son seguidos
+            long primerId = ultimoId(c) - lote.size() + 1;
+            c.commit();
+            for (int i = 0; i < lote.size(); i++) clasificacion.registrar(lote.get(i).getNombre(), lote.get(i).getPuntuacion(), primerId + i);
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error al guardar lote de " + lote.size() + " puntuaciones: " + e.getMessage());
+            if (c != null) {
+                try {c.rollback();}
+                catch (SQLException ignorada) {}
+            }
+            return false;
+        } finally {
+            if (c != null) {
+                try {
+                    c.setAutoCommit(true);
+                    if (sincronoCompleto) try (Statement declaracion = c.createStatement()) {declaracion.execute("PRAGMA synchronous=NORMAL");}
+                } catch (SQLException e) {System.err.println("Error al restaurar la conexion: " + e.getMessage());}
+            }
+        }
+    }
+
+    /**
+     * Id de la ultima fila insertada por esta conexion
+     *
+     * @param c Conexion
+     * @return El id
+     * @throws SQLException Error de la consulta
+     */
+    private static long ultimoId(Connection c) throws SQLException {
+        try (Statement declaracion = c.createStatement(); ResultSet r = declaracion.executeQuery("SELECT last_insert_rowid()")) {
+            return r.next() ? r.getLong(1) : 0;
+        }
+    }
+}
@@ -2,15 +2,23 @@ package Controlador;
 
 
 import Modelo.Escenario;
+import Modelo.EscenarioPaginado;
 import Modelo.Jugador;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Clase sesion
@@ -26,56 +34,103 @@ public class Sesion {
     private static final String DIRECTORIO_JUGADORES = "jugadores";
     private static final String DIRECTORIO_PARTIDAS = "partidas";
     private static final String NOMBRE_ESCENARIO_DEFAULT = "nivel_default0.txt";
+    private static final long MAX_TILES_EN_MEMORIA = Integer.MAX_VALUE - 8;
+    // Niveles siguientes que se precargan al cargar uno numerado
+    private static final int PRECARGA_SIGUIENTES = 2;
+    private static final long ESPERA_PENDIENTES_S = 20;
 
+    // Carpeta donde estan escenarios/ y jugadores/; por defecto el directorio de trabajo
+    private static Path directorioBase = Paths.get("");
+    private static AlmacenJugadores almacenJugadores;
+    private static CacheJugadores cacheJugadores;
+    private static IndiceNombres indiceNombres;
+    private static long cambiosIndexados = -1;
+    private static RepositorioNiveles niveles;
+    // Guardados que acaban en segundo plano; cerrar() los espera antes de cerrar el almacen
+    private static final Set<CompletableFuture<?>> pendientes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Cambia la carpeta de datos, para pruebas y benchmarks con archivos temporales
+     * @param directorio Carpeta que contendra escenarios/ y jugadores/
+     */
+    public static void setDirectorioBase(Path directorio) {
+        esperarPendientes();
+        synchronized (Sesion.class) {
+            cerrarAlmacen();
+            niveles = null;
+            directorioBase = (directorio != null) ? directorio : Paths.get("");
+        }
+    }
+
+    /**
+     * Ruta de una subcarpeta de datos
+     * @param nombre Nombre de la subcarpeta
+     * @return La ruta dentro del directorio base
+     */
+    private static Path directorio(String nombre) {return directorioBase.resolve(nombre);}
 
     /**
      * Creo otros Escenarios extra
      * @param veces las veces que se repite el bucle
      */
     public static void crearEscenarios(int veces) {
-        Path rutaEscenarioDefault = Paths.get(DIRECTORIO_ESCENARIOS, "nivel_default" +veces+ ".txt");
+        Path rutaEscenarioDefault = directorio(DIRECTORIO_ESCENARIOS).resolve("nivel_default" +veces+ ".txt");
 
         if (Files.exists(rutaEscenarioDefault)) return;
 
         System.out.println("Creando archivo de escenario por defecto en: " + rutaEscenarioDefault);
         int filas = 8;
         int columnas = 10;
-        List<String> contenidoMapa = new ArrayList<>();
-        contenidoMapa.add(filas + "X" + columnas);
-        contenidoMapa.add(columnas + "O");
-        String filaIntermedia = "1O" + (columnas - 2) + "E" + "1O";
-        for (int i = 1; i < filas - 1; i++)
-            contenidoMapa.add(filaIntermedia);
-        contenidoMapa.add(columnas + "O");
-
-        try (BufferedWriter escritor = Files.newBufferedWriter(rutaEscenarioDefault)) {
-            for (String linea : contenidoMapa) {
-                escritor.write(linea);
-                escritor.newLine();
-            }
+        char[][] mapa = new char[filas][columnas];
+        for (int i = 0; i < filas; i++)
+            for (int j = 0; j < columnas; j++)
+                mapa[i][j] = (i == 0 || i == filas - 1 || j == 0 || j == columnas - 1) ? 'O' : 'E';
+
+        if (EscritorNiveles.guardar(new Escenario(filas, columnas, mapa), rutaEscenarioDefault, ForkJoinPool.commonPool(), false))
             System.out.println("Archivo de escenario por defecto creado.");
-        } catch (IOException e) {
-            System.err.println("Error al escribir el archivo de escenario por defecto: " + e.getMessage());
-            e.printStackTrace();
-        }
+    }
+
+    /**
+     * Guarda un escenario en escenarios/, en texto y compilado, por ejemplo
+     * despues de cambiarle tiles con setTile
+     *
+     * @param escenario Escenario a guardar; si se esta jugando, mejor una copia()
+     * @param nombreArchivo Nombre del .txt
+     * @return true si se guardo
+     */
+    public static boolean guardarEscenario(Escenario escenario, String nombreArchivo) {
+        return EscritorNiveles.guardar(escenario, directorio(DIRECTORIO_ESCENARIOS).resolve(nombreArchivo));
+    }
+
+    /**
+     * Genera una mazmorra procedural en escenarios/, en texto y compilada
+     *
+     * @param nombreArchivo Nombre del .txt a crear
+     * @param semilla Semilla del generador
+     * @param filas Filas del mapa
+     * @param columnas Columnas del mapa
+     * @return true si se genero
+     */
+    public static boolean generarMazmorra(String nombreArchivo, long semilla, int filas, int columnas) {
+        Path rutaArchivo = directorio(DIRECTORIO_ESCENARIOS).resolve(nombreArchivo);
+        System.out.println("Generando mazmorra " + filas + "X" + columnas + " (semilla " + semilla + ") en: " + rutaArchivo);
+        return new GeneradorMazmorras(semilla, filas, columnas).generar(rutaArchivo, true, ForkJoinPool.commonPool());
     }
 
     /**
      * Carga el escenario dependiedo del nombre del archivo que desee carga.
-     * Se ejecuta un maldito interprete de escenario propio.
+     * Pasa por el repositorio de niveles, asi que si ya se cargo o precargo
+     * es una copia en memoria; despues se precargan los niveles siguientes.
      * 
      * @param nombreArchivo Nombre del Archivo que se va a guardar
      * @return Un escenario que se mostrara por pantalla
      */
     public static Escenario cargarEscenario(String nombreArchivo) {
-        Path rutaArchivo = Paths.get(DIRECTORIO_ESCENARIOS, nombreArchivo);
-        List<String> lineasMapa = new ArrayList<>();
-        int filas = 0;
-        int columnas = 0;
+        Path rutaArchivo = directorio(DIRECTORIO_ESCENARIOS).resolve(nombreArchivo);
 
         if (!Files.exists(rutaArchivo)) {
             System.err.println("Archivo de escenario no encontrado: " + rutaArchivo);
-            Path rutaDefault = Paths.get(DIRECTORIO_ESCENARIOS, NOMBRE_ESCENARIO_DEFAULT);
+            Path rutaDefault = directorio(DIRECTORIO_ESCENARIOS).resolve(NOMBRE_ESCENARIO_DEFAULT);
             if (Files.exists(rutaDefault)) {
                 System.out.println("Cargando escenario por defecto: " + rutaDefault);
                 rutaArchivo = rutaDefault;
@@ -84,41 +139,127 @@ public class Sesion {
                 return null;
             }
         }
+        RepositorioNiveles repositorio = getNiveles();
+        Escenario escenario = repositorio.obtener(rutaArchivo);
+        repositorio.precargar(RepositorioNiveles.siguientes(rutaArchivo, PRECARGA_SIGUIENTES));
+        return escenario;
+    }
+
+    /**
+     * Precarga en segundo plano escenarios que se van a pedir pronto
+     *
+     * @param nombresArchivo Nombres de los .txt dentro de escenarios
+     * @return Se completa cuando estan todos en memoria
+     */
+    public static CompletableFuture<Void> precargarEscenarios(String... nombresArchivo) {
+        List<Path> rutas = new ArrayList<>(nombresArchivo.length);
+        for (String nombre : nombresArchivo) rutas.add(directorio(DIRECTORIO_ESCENARIOS).resolve(nombre));
+        return getNiveles().precargar(rutas);
+    }
 
-        try (BufferedReader lector = Files.newBufferedReader(rutaArchivo)) {
-            String primeraLinea = lector.readLine();
-            if (primeraLinea == null || !primeraLinea.matches("\\d+X\\d+")) return null;
-
-            String[] dims = primeraLinea.split("X");
-            filas = Integer.parseInt(dims[0]);
-            columnas = Integer.parseInt(dims[1]);
-            if (filas <= 0 || columnas <= 0) return null;
-
-            String lineaRLE;
-            Pattern pattern = Pattern.compile("(\\d+)([EO])");
-            for (int i = 0; i < filas; i++) {
-                lineaRLE = lector.readLine();
-                if (lineaRLE == null) return null;
-
-                String filaDecodificada = "";
-                Matcher matcher = pattern.matcher(lineaRLE.trim());
-                int colActual = 0;
-                while (matcher.find() && colActual < columnas) {
-                    int cantidad = Integer.parseInt(matcher.group(1));
-                    char tipo = matcher.group(2).charAt(0);
-                    for (int k = 0; k < cantidad && colActual < columnas; k++) {
-                        filaDecodificada += tipo;
-                        colActual++;
-                    }
-                }
-                while (filaDecodificada.length() < columnas) filaDecodificada += "E";
-
-                if (filaDecodificada.length() > columnas) filaDecodificada = filaDecodificada.substring(0, columnas);
-
-                lineasMapa.add(filaDecodificada.toString());
+    /**
+     * Repositorio de niveles decodificados, se crea al pedirlo
+     *
+     * @return El repositorio
+     */
+    public static synchronized RepositorioNiveles getNiveles() {
+        if (niveles == null) niveles = new RepositorioNiveles(Sesion::cargarEscenario, RepositorioNiveles.PESO_MAXIMO_DEFECTO);
+        return niveles;
+    }
+
+    /**
+     * Carga un escenario desde una ruta concreta, siempre de disco. Si al lado
+     * del .txt hay un .nvb compilado que sigue al dia se copia tal cual; si no,
+     * se decodifica el texto y se deja compilado para la proxima vez.
+     * 
+     * @param rutaArchivo Ruta del archivo .txt del escenario
+     * @return El escenario, o null si el archivo no es valido
+     */
+    public static Escenario cargarEscenario(Path rutaArchivo) {
+        Path rutaBinaria = NivelBinario.rutaCompilada(rutaArchivo);
+        Escenario escenario = NivelBinario.cargar(rutaBinaria, rutaArchivo);
+        if (escenario != null) {
+            System.out.println("Escenario cargado desde: " + rutaBinaria);
+            return escenario;
+        }
+
+        escenario = leerEscenarioTexto(rutaArchivo);
+        if (escenario != null && NivelBinario.guardar(rutaBinaria, escenario, rutaArchivo))
+            System.out.println("Escenario compilado en: " + rutaBinaria);
+        return escenario;
+    }
+
+    /**
+     * Carga un escenario en modo paginado, para mapas que no caben en memoria.
+     * Compila el .txt a .nvb fila a fila si hace falta y luego lo mapea; los
+     * cambios hechos con setTile se quedan en memoria o en un archivo temporal
+     * de cambios y no tocan el .nvb.
+     * 
+     * @param nombreArchivo Nombre del archivo .txt dentro de escenarios
+     * @param maxChunksResidentes Chunks de 64x64 que se permiten en memoria
+     * @return El escenario paginado (hay que cerrarlo), o null si no se pudo abrir
+     */
+    public static EscenarioPaginado cargarEscenarioPaginado(String nombreArchivo, int maxChunksResidentes) {
+        Path rutaArchivo = directorio(DIRECTORIO_ESCENARIOS).resolve(nombreArchivo);
+        if (!Files.exists(rutaArchivo)) {
+            System.err.println("Archivo de escenario no encontrado: " + rutaArchivo);
+            return null;
+        }
+
+        Path rutaBinaria = NivelBinario.rutaCompilada(rutaArchivo);
+        if (!NivelBinario.estaAlDia(rutaBinaria, rutaArchivo) && !NivelBinario.compilarDesdeTexto(rutaArchivo, rutaBinaria)) return null;
+
+        EscenarioPaginado escenario = NivelBinario.abrirPaginado(rutaBinaria, maxChunksResidentes, FileChannel.MapMode.PRIVATE);
+        if (escenario != null) System.out.println("Escenario paginado abierto desde: " + rutaBinaria);
+        return escenario;
+    }
+
+    /**
+     * Compila a .nvb los escenarios .txt cuyo binario falta o esta viejo, para
+     * que la primera carga de cada nivel no tenga que decodificar el texto.
+     *
+     * @return Escenarios compilados
+     */
+    public static int compilarEscenarios() {
+        int compilados = 0;
+        int borrados = NivelBinario.borrarTemporales(directorio(DIRECTORIO_ESCENARIOS));
+        if (borrados > 0) System.out.println("Borrados " + borrados + " temporales de compilaciones interrumpidas.");
+        try (DirectoryStream<Path> textos = Files.newDirectoryStream(directorio(DIRECTORIO_ESCENARIOS), "*.txt")) {
+            for (Path rutaArchivo : textos) {
+                Path rutaBinaria = NivelBinario.rutaCompilada(rutaArchivo);
+                if (!NivelBinario.estaAlDia(rutaBinaria, rutaArchivo) && NivelBinario.compilarDesdeTexto(rutaArchivo, rutaBinaria))
+                    compilados++;
             }
+        } catch (IOException e) {
+            System.err.println("Error al recorrer los escenarios: " + e.getMessage());
+        }
+        return compilados;
+    }
+
+    /**
+     * Decodifica el .txt de un escenario, cada fila RLE en una sola pasada
+     * directamente sobre el array de tiles del escenario.
+     * 
+     * @param rutaArchivo Ruta del archivo .txt del escenario
+     * @return El escenario, o null si el archivo no es valido
+     */
+    public static Escenario leerEscenarioTexto(Path rutaArchivo) {
+        try (InputStream entrada = Files.newInputStream(rutaArchivo)) {
+            LectorRLE lector = new LectorRLE(entrada);
+            if (!lector.leerCabecera()) return null;
+
+            int filas = lector.getFilas();
+            int columnas = lector.getColumnas();
+            if ((long) filas * columnas > MAX_TILES_EN_MEMORIA) {
+                System.err.println("Escenario demasiado grande para cargarlo en memoria: " + filas + "X" + columnas);
+                return null;
+            }
+            byte[] tiles = new byte[filas * columnas];
+            for (int i = 0; i < filas; i++)
+                if (!lector.leerFila(tiles, i * columnas)) return null;
+
             System.out.println("Escenario cargado desde: " + rutaArchivo);
-            return new Escenario(filas, columnas, lineasMapa);
+            return new Escenario(filas, columnas, tiles, Escenario.paletaBase());
         } catch (Exception e) {
             System.err.println("Error al cargar escenario '" + rutaArchivo + "': " + e.getMessage());
             return null;
@@ -128,21 +269,16 @@ public class Sesion {
     /**
      * El guardado del jugador recien registrado.
      * 
-     * @param jugador El guardado como binario
+     * @param jugador El guardado en el almacen de jugadores
      * @return Comprobar si ha sido posible
      */
     public static boolean guardarJugador(Jugador jugador) {
         if (jugador == null || jugador.getNombre() == null || jugador.getNombre().trim().isEmpty()) return false;
 
-        try {Files.createDirectories(Paths.get(DIRECTORIO_JUGADORES));} 
-        catch (IOException e) {return false;}
-
-        String nombreArchivo = Paths.get(DIRECTORIO_JUGADORES, jugador.getNombre() + ".dat").toString();
-
-        try (ObjectOutputStream salida = new ObjectOutputStream(new FileOutputStream(nombreArchivo))) {
-            salida.writeObject(jugador);
-            return true;
-        } catch (IOException e) {return false;}
+        CacheJugadores cache = getCacheJugadores();
+        if (cache == null || !cache.guardar(jugador)) return false;
+        synchronized (Sesion.class) {if (indiceNombres != null) indiceNombres.anadir(jugador.getNombre());}
+        return true;
     }
 
     /**
@@ -154,11 +290,105 @@ public class Sesion {
     public static Jugador cargarJugadorPorNombre(String nombre) {
         if (nombre == null || nombre.trim().isEmpty()) return null;
 
-        String nombreArchivo = Paths.get(DIRECTORIO_JUGADORES, nombre + ".dat").toString();
-        File archivo = new File(nombreArchivo);
-        if (!archivo.exists()) return null;
+        CacheJugadores cache = getCacheJugadores();
+        return (cache != null) ? cache.obtener(nombre) : null;
+    }
+
+    /**
+     * Archivo de la partida guardada de un jugador
+     *
+     * @param nombre Nombre del jugador
+     * @return Ruta en partidas/
+     */
+    public static Path rutaPartida(String nombre) {return directorio(DIRECTORIO_PARTIDAS).resolve(nombre + GuardadoPartida.EXTENSION);}
+
+    /**
+     * Almacen de jugadores de la carpeta actual; se abre (y migra los .dat) la primera vez
+     *
+     * @return El almacen, o null si no se pudo abrir
+     */
+    public static synchronized AlmacenJugadores getAlmacenJugadores() {
+        if (almacenJugadores == null) {
+            try {almacenJugadores = new AlmacenJugadores(directorio(DIRECTORIO_JUGADORES));}
+            catch (IOException e) {System.err.println("No se pudo abrir el almacen de jugadores: " + e.getMessage());}
+        }
+        return almacenJugadores;
+    }
+
+    /**
+     * Cache de jugadores de la carpeta actual; se crea y precarga la primera vez
+     *
+     * @return La cache, o null si no se pudo abrir el almacen
+     */
+    public static synchronized CacheJugadores getCacheJugadores() {
+        if (cacheJugadores == null) {
+            AlmacenJugadores almacen = getAlmacenJugadores();
+            if (almacen != null) cacheJugadores = new CacheJugadores(almacen, directorio(DIRECTORIO_JUGADORES), CacheJugadores.CAPACIDAD_DEFECTO);
+        }
+        return cacheJugadores;
+    }
+
+    /**
+     * Indice de nombres para autocompletar; se rehace si el almacen cambio por fuera
+     *
+     * @return El indice, o null si no se pudo abrir el almacen
+     */
+    public static synchronized IndiceNombres getIndiceNombres() {
+        AlmacenJugadores almacen = getAlmacenJugadores();
+        if (almacen == null) return null;
+        long cambios = almacen.getCambiosExternos();
+        if (indiceNombres == null || cambios != cambiosIndexados) {
+            indiceNombres = new IndiceNombres(almacen.nombres());
+            cambiosIndexados = cambios;
+        }
+        return indiceNombres;
+    }
+
+    /**
+     * Apunta un guardado que termina en segundo plano (p.ej. el cierre de una
+     * partida y el guardado del jugador), para que cerrar() no cierre el
+     * almacen antes de que acabe
+     *
+     * @param tarea Se completa al acabar el guardado
+     */
+    public static void esperarAlCerrar(CompletableFuture<?> tarea) {
+        pendientes.add(tarea);
+        tarea.whenComplete((resultado, error) -> pendientes.remove(tarea));
+    }
+
+    /**
+     * Cierra el almacen de jugadores y su cache, despues de esperar a los
+     * guardados pendientes. Llamar al salir de la aplicacion.
+     */
+    public static void cerrar() {
+        esperarPendientes();
+        cerrarAlmacen();
+    }
+
+    /**
+     * Espera a los guardados apuntados con esperarAlCerrar. Sin el cerrojo:
+     * esos guardados usan la cache de jugadores.
+     */
+    private static void esperarPendientes() {
+        if (pendientes.isEmpty()) return;
+        try {
+            CompletableFuture.allOf(pendientes.toArray(CompletableFuture<?>[]::new)).get(ESPERA_PENDIENTES_S, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("No acabaron todos los guardados pendientes: " + e);
+        }
+    }
 
-        try (ObjectInputStream entrada = new ObjectInputStream(new FileInputStream(archivo))) {return (Jugador) entrada.readObject();}
-        catch (Exception e) {return null;}
+    /**
+     * Cierra el almacen de jugadores y su cache
+     */
+    private static synchronized void cerrarAlmacen() {
+        if (cacheJugadores != null) cacheJugadores.cerrar();
+        cacheJugadores = null;
+        indiceNombres = null;
+        if (almacenJugadores == null) return;
+        almacenJugadores.cerrar();
+        almacenJugadores = null;
     }
 }
\ No newline at end of file
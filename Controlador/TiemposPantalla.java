@@ -0,0 +1,65 @@
+package Controlador;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tiempos de cada pantalla desde que se navega a ella
+ * Guarda por pantalla y fase ("primer pintado", el nombre de una carga de
+ * CargadorAsincrono, o "primera pantalla interactiva", contada desde App.init)
+ * cuantas veces se midio, la ultima, la media y la maxima.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class TiemposPantalla {
+
+    public static final String PRIMER_PINTADO = "primer pintado";
+    public static final String PRIMERA_INTERACTIVA = "primera pantalla interactiva";
+
+    private static final Map<String, long[]> tiempos = new TreeMap<>();
+
+    /**
+     * Apunta una medida
+     *
+     * @param pantalla Nombre de la pantalla
+     * @param fase Que se midio
+     * @param nanos Tiempo desde la navegacion
+     */
+    public static synchronized void registrar(String pantalla, String fase, long nanos) {
+        // {veces, ultimo, suma, maximo}
+        long[] t = tiempos.computeIfAbsent(pantalla + " / " + fase, k -> new long[4]);
+        t[0]++;
+        t[1] = nanos;
+        t[2] += nanos;
+        t[3] = Math.max(t[3], nanos);
+        if (fase.equals(PRIMER_PINTADO) || fase.equals(PRIMERA_INTERACTIVA)) System.out.printf("%s: %s en %.1f ms%n", pantalla, fase, nanos / 1e6);
+    }
+
+    /**
+     * Ultima medida
+     *
+     * @param pantalla Nombre de la pantalla
+     * @param fase Que se midio
+     * @return Milisegundos, o -1 si no se ha medido
+     */
+    public static synchronized double getUltimoMs(String pantalla, String fase) {
+        long[] t = tiempos.get(pantalla + " / " + fase);
+        return (t == null) ? -1 : t[1] / 1e6;
+    }
+
+    /**
+     * Resumen de todas las medidas
+     * @return Una linea por pantalla y fase
+     */
+    public static synchronized String resumen() {
+        StringBuilder texto = new StringBuilder();
+        for (Map.Entry<String, long[]> e : tiempos.entrySet()) {
+            long[] t = e.getValue();
+            texto.append(String.format("%s: veces=%d ultimo=%.1fms media=%.1fms max=%.1fms%n",
+                    e.getKey(), t[0], t[1] / 1e6, t[2] / 1e6 / t[0], t[3] / 1e6));
+        }
+        return texto.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package Modelo;
+
+/**
+ * Capa de colisiones del escenario: un bit por tile (1 = bloquea), empaquetado
+ * en palabras long fila a fila. Las consultas de rectangulo comparan palabras
+ * enteras, sin crear objetos.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class CapaColision {
+
+    private final int filas;
+    private final int columnas;
+    private final long[] palabras;
+
+    /**
+     * Constructor parametrizado, con todo libre
+     *
+     * @param filas Filas del escenario
+     * @param columnas Columnas del escenario
+     */
+    public CapaColision(int filas, int columnas) {
+        long bits = (long) filas * columnas;
+        if (((bits + 63) >>> 6) > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Escenario demasiado grande para la capa de colision: " + filas + "x" + columnas);
+        this.filas = filas;
+        this.columnas = columnas;
+        this.palabras = new long[(int) ((bits + 63) >>> 6)];
+    }
+
+    /**
+     * Comprueba si un tile bloquea. Fuera del mapa todo bloquea.
+     *
+     * @param fila Fila del tile
+     * @param columna Columna del tile
+     * @return true si no se puede pasar
+     */
+    public boolean bloqueado(int fila, int columna) {
+        if (fila < 0 || fila >= filas || columna < 0 || columna >= columnas) return true;
+        long bit = (long) fila * columnas + columna;
+        return (palabras[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Marca o desmarca un tile como bloqueante
+     *
+     * @param fila Fila del tile
+     * @param columna Columna del tile
+     * @param bloquea true si debe bloquear
+     */
+    public void poner(int fila, int columna, boolean bloquea) {
+        if (fila < 0 || fila >= filas || columna < 0 || columna >= columnas) return;
+        long bit = (long) fila * columnas + columna;
+        int palabra = (int) (bit >>> 6);
+        if (bloquea) palabras[palabra] |= 1L << bit;
+        else palabras[palabra] &= ~(1L << bit);
+    }
+
+    /**
+     * Comprueba que no hay ningun tile bloqueante en el rectangulo (incluidos
+     * los bordes). Si se sale del mapa se considera ocupado.
+     *
+     * @param fila0 Primera fila
+     * @param columna0 Primera columna
+     * @param fila1 Ultima fila
+     * @param columna1 Ultima columna
+     * @return true si todo el rectangulo es transitable
+     */
+    public boolean rectanguloLibre(int fila0, int columna0, int fila1, int columna1) {
+        if (fila0 > fila1 || columna0 > columna1) return true;
+        if (fila0 < 0 || columna0 < 0 || fila1 >= filas || columna1 >= columnas) return false;
+        for (int f = fila0; f <= fila1; f++)
+            if (!tramoLibre((long) f * columnas + columna0, (long) f * columnas + columna1)) return false;
+        return true;
+    }
+
+    /**
+     * Comprueba una fila completa
+     *
+     * @param fila Fila a comprobar
+     * @return true si ningun tile de la fila bloquea
+     */
+    public boolean filaLibre(int fila) {return rectanguloLibre(fila, 0, fila, columnas - 1);}
+
+    /**
+     * Cuenta los tiles bloqueantes de todo el mapa
+     *
+     * @return Numero de bits a 1
+     */
+    public long contarBloqueados() {
+        long total = 0;
+        for (long p : palabras) total += Long.bitCount(p);
+        return total;
+    }
+
+    /**
+     * Comprueba que los bits [desde, hasta] estan a 0, palabra a palabra
+     *
+     * @param desde Primer bit
+     * @param hasta Ultimo bit (incluido)
+     * @return true si todos son 0
+     */
+    private boolean tramoLibre(long desde, long hasta) {
+        int p0 = (int) (desde >>> 6);
+        int p1 = (int) (hasta >>> 6);
+        long mascaraInicio = -1L << desde;
+        long mascaraFin = -1L >>> (63 - (hasta & 63));
+        if (p0 == p1) return (palabras[p0] & mascaraInicio & mascaraFin) == 0;
+
+        if ((palabras[p0] & mascaraInicio) != 0) return false;
+        for (int p = p0 + 1; p < p1; p++) if (palabras[p] != 0) return false;
+        return (palabras[p1] & mascaraFin) == 0;
+    }
+}
@@ -1,19 +1,68 @@
 package Modelo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Representa el mapa del juego, cargado desde un archivo.
- * 
+ * Los tiles se guardan en un unico array fila a fila (row-major), con un byte
+ * por tile que es el indice del caracter dentro de la paleta del escenario.
+ *
  * @author Santiago
  * @author Juan
  * @version 0.3.3
  */
 public class Escenario {
 
+    /** Paleta con la que empiezan todos los escenarios; el indice 0 es el tile vacio. */
+    private static final char[] PALETA_BASE = {'\0', 'E', 'O', 'P'};
+    /** Maximo de tipos de tile distintos que caben en un byte. */
+    public static final int MAX_PALETA = 256;
+    private static final int FILAS_POR_BLOQUE = 64;
+
     private int filas;
     private int columnas;
-    private char[][] mapaTiles;
+    private byte[] tiles;
+    private char[] paleta = new char[MAX_PALETA];
+    private int tamPaleta;
+    private final boolean[] bloqueaIndice = new boolean[MAX_PALETA];
+    private CapaColision colision;
+    private final List<OyenteTiles> oyentes = new ArrayList<>();
+
+    /**
+     * Constructor sin copia: el escenario se queda con el array ya relleno.
+     *
+     * @param filas Número de filas.
+     * @param columnas Número de columnas.
+     * @param tiles Indices de paleta fila a fila, de longitud filas * columnas.
+     * @param paleta Caracter de cada indice (como mucho 256).
+     */
+    public Escenario(int filas, int columnas, byte[] tiles, char[] paleta) {
+        this(filas, columnas, paleta);
+        this.tiles = comprobarTiles(tiles, filas, columnas);
+        reconstruirColision();
+    }
+
+    /**
+     * Constructor para escenarios que guardan los tiles en otro sitio (ver
+     * EscenarioPaginado); no reserva el array de tiles ni la capa de colision.
+     * La subclase tiene que llamar a reconstruirColision cuando pueda leer sus
+     * tiles, o sobrescribirlo junto con esTransitable si guarda la colision
+     * a su manera.
+     *
+     * @param filas Número de filas.
+     * @param columnas Número de columnas.
+     * @param paleta Caracter de cada indice (como mucho 256).
+     */
+    protected Escenario(int filas, int columnas, char[] paleta) {
+        if (paleta == null || paleta.length > MAX_PALETA)
+            throw new IllegalArgumentException("Paleta nula o con mas de " + MAX_PALETA + " tipos");
+        this.filas = filas;
+        this.columnas = columnas;
+        System.arraycopy(paleta, 0, this.paleta, 0, paleta.length);
+        this.tamPaleta = paleta.length;
+    }
 
     /**
      * Constructor principal.
@@ -23,13 +72,21 @@ public class Escenario {
      * @param mapaTiles Matriz 2D con los caracteres de cada tile.
      */
     public Escenario(int filas, int columnas, char[][] mapaTiles) {
-        this.filas = filas;
-        this.columnas = columnas;
-        this.mapaTiles = mapaTiles;
+        this(filas, columnas, PALETA_BASE);
+        this.tiles = new byte[filas * columnas];
+        if (mapaTiles != null) {
+            for (int i = 0; i < filas && i < mapaTiles.length; i++) {
+                char[] fila = mapaTiles[i];
+                if (fila == null) continue;
+                int base = i * columnas;
+                for (int j = 0; j < columnas && j < fila.length; j++) tiles[base + j] = indiceDe(fila[j]);
+            }
+        }
+        reconstruirColision();
     }
 
     /**
-     * Constructor alternativo que toma List<String> y lo convierte a char[][].
+     * Constructor alternativo que toma List<String> y lo convierte a indices de paleta.
      * Útil si Sesion.cargarEscenario prefiere devolver List<String>
      * inicialmente.
      *
@@ -38,18 +95,49 @@ public class Escenario {
      * @param mapaLista Lista de Strings representando las filas del mapa.
      */
     public Escenario(int filas, int columnas, List<String> mapaLista) {
-        this.filas = filas;
-        this.columnas = columnas;
+        this(filas, columnas, PALETA_BASE);
+        this.tiles = new byte[filas * columnas];
         if (mapaLista != null && !mapaLista.isEmpty()) {
-            this.mapaTiles = new char[filas][columnas];
+            byte espacio = indiceDe(' ');
             for (int i = 0; i < filas; i++) {
                 String filaStr = (i < mapaLista.size()) ? mapaLista.get(i) : "";
-                for (int j = 0; j < columnas; j++) this.mapaTiles[i][j] = (j < filaStr.length()) ? filaStr.charAt(j) : ' ';
-                }
-        } else {
-            this.mapaTiles = new char[filas][columnas];
-            System.err.println("Advertencia: Se recibió una lista de mapa vacía o nula para Escenario.");
-        }
+                int base = i * columnas;
+                for (int j = 0; j < columnas; j++) tiles[base + j] = (j < filaStr.length()) ? indiceDe(filaStr.charAt(j)) : espacio;
+            }
+        } else System.err.println("Advertencia: Se recibió una lista de mapa vacía o nula para Escenario.");
+        reconstruirColision();
+    }
+
+    /**
+     * Comprueba que un array de tiles mide lo que dice el escenario
+     *
+     * @param tiles Indices de paleta fila a fila
+     * @param filas Número de filas.
+     * @param columnas Número de columnas.
+     * @return El mismo array
+     */
+    private static byte[] comprobarTiles(byte[] tiles, int filas, int columnas) {
+        if (tiles == null || tiles.length != (long) filas * columnas)
+            throw new IllegalArgumentException("El array de tiles no mide " + filas + "x" + columnas);
+        return tiles;
+    }
+
+    /**
+     * Paleta con la que empiezan todos los escenarios
+     * @return Copia de la paleta base; el indice 0 es el tile vacio
+     */
+    public static char[] paletaBase() {return PALETA_BASE.clone();}
+
+    /**
+     * Indice de un caracter en la paleta base, para los cargadores que escriben
+     * directamente el array de tiles.
+     *
+     * @param tipo Caracter del tile
+     * @return Su indice en PALETA_BASE, o 0 si no esta
+     */
+    public static byte indiceBase(char tipo) {
+        for (int i = 0; i < PALETA_BASE.length; i++) if (PALETA_BASE[i] == tipo) return (byte) i;
+        return 0;
     }
 
     /**
@@ -60,7 +148,7 @@ public class Escenario {
 
     /**
      * Getter de Columna
-     * 
+     *
      * @return Devuelve las columnas
      */
     public int getColumnas() {return columnas;}
@@ -73,20 +161,231 @@ public class Escenario {
      * @return El carácter en esa posición, o '\0' si está fuera de los límites.
      */
     public char getTile(int fila, int columna) {
-        if (mapaTiles != null && fila >= 0 && fila < filas && columna >= 0 && columna < columnas) 
-            return mapaTiles[fila][columna];
+        if (fila >= 0 && fila < filas && columna >= 0 && columna < columnas)
+            return paleta[tiles[fila * columnas + columna] & 0xFF];
         return '\0';
     }
 
     /**
      * Setter de Tile
-     * 
+     *
      * @param fila Fila que se encuentra el Objeto
      * @param columna Columna que se encuentra el Objeto
      * @param tipo El tipo del Objeto
      */
     public void setTile(int fila, int columna, char tipo) {
-        if (mapaTiles != null && fila >= 0 && fila < filas && columna >= 0 && columna < columnas)
-            mapaTiles[fila][columna] = tipo;
+        if (fila >= 0 && fila < filas && columna >= 0 && columna < columnas) {
+            int indice = buscarOAgregar(tipo);
+            if (indice < 0) {
+                System.err.println("Error: La paleta del escenario está llena, no se puede poner '" + tipo + "'.");
+                return;
+            }
+            tiles[fila * columnas + columna] = (byte) indice;
+            tileEscrito(fila, columna, indice);
+        }
+    }
+
+    /**
+     * Comprueba si se puede pisar un tile, consultando la capa de colision.
+     *
+     * @param fila Fila deseada.
+     * @param columna Columna deseada.
+     * @return false si el tile bloquea o esta fuera del mapa
+     */
+    public boolean esTransitable(int fila, int columna) {return !colision.bloqueado(fila, columna);}
+
+    /**
+     * Getter de la capa de colision, para consultas por rectangulos o pathfinding
+     * @return La capa, que se mantiene al dia con setTile; null en
+     * EscenarioPaginado, que guarda los bits en cada chunk
+     */
+    public CapaColision getColision() {return colision;}
+
+    /**
+     * Registra un oyente que se avisa con cada setTile
+     *
+     * @param oyente Oyente a agregar
+     */
+    public void agregarOyente(OyenteTiles oyente) {if (oyente != null && !oyentes.contains(oyente)) oyentes.add(oyente);}
+
+    /**
+     * Quita un oyente registrado
+     *
+     * @param oyente Oyente a quitar
+     */
+    public void quitarOyente(OyenteTiles oyente) {oyentes.remove(oyente);}
+
+    /**
+     * Vuelve a construir la capa de colision desde los tiles, segun TablaBloqueo.
+     * Hace falta si se cambia la tabla con el escenario ya cargado.
+     */
+    public void reconstruirColision() {
+        actualizarBloqueo();
+        CapaColision capa = new CapaColision(filas, columnas);
+        // Por bloques de filas, sin ir tile a tile
+        int filasPorBloque = Math.max(1, Math.min(filas, FILAS_POR_BLOQUE));
+        byte[] bloque = new byte[filasPorBloque * columnas];
+        for (int desde = 0; desde < filas; desde += filasPorBloque) {
+            int hasta = Math.min(filas, desde + filasPorBloque);
+            copiarFilas(desde, hasta, bloque, 0);
+            for (int f = desde; f < hasta; f++) {
+                int base = (f - desde) * columnas;
+                for (int c = 0; c < columnas; c++) if (bloqueaIndice[bloque[base + c] & 0xFF]) capa.poner(f, c, true);
+            }
+        }
+        colision = capa;
+    }
+
+    /**
+     * Vuelve a leer de TablaBloqueo que indices de la paleta bloquean
+     */
+    protected void actualizarBloqueo() {
+        for (int i = 0; i < tamPaleta; i++) bloqueaIndice[i] = TablaBloqueo.esBloqueante(paleta[i]);
+    }
+
+    /**
+     * Comprueba si un indice de la paleta bloquea
+     *
+     * @param indice Indice (0..255)
+     * @return true si bloquea, segun TablaBloqueo
+     */
+    protected boolean bloquea(int indice) {return bloqueaIndice[indice];}
+
+    /**
+     * Copia los indices de paleta de una fila completa.
+     *
+     * @param fila Fila a copiar
+     * @param destino Array donde se copia
+     * @param desde Posicion de destino donde empieza la fila
+     */
+    public void copiarFila(int fila, byte[] destino, int desde) {
+        System.arraycopy(tiles, fila * columnas, destino, desde, columnas);
+    }
+
+    /**
+     * Copia los indices de paleta de un bloque de filas seguidas, para volcar
+     * el mapa a disco o a otro array sin ir tile a tile.
+     *
+     * @param desde Primera fila
+     * @param hasta Fila final, excluida
+     * @param destino Array donde se copian, fila a fila
+     * @param posicion Posicion de destino de la primera fila
+     */
+    public void copiarFilas(int desde, int hasta, byte[] destino, int posicion) {
+        System.arraycopy(tiles, desde * columnas, destino, posicion, (hasta - desde) * columnas);
+    }
+
+    /**
+     * Copia los caracteres de una fila completa.
+     *
+     * @param fila Fila a copiar
+     * @param destino Array donde se copia
+     * @param desde Posicion de destino donde empieza la fila
+     */
+    public void copiarFila(int fila, char[] destino, int desde) {
+        int base = fila * columnas;
+        for (int j = 0; j < columnas; j++) destino[desde + j] = paleta[tiles[base + j] & 0xFF];
+    }
+
+    /**
+     * Sobrescribe una fila completa con indices de esta misma paleta.
+     *
+     * @param fila Fila a escribir
+     * @param origen Array con los indices
+     * @param desde Posicion de origen donde empieza la fila
+     */
+    public void escribirFila(int fila, byte[] origen, int desde) {
+        System.arraycopy(origen, desde, tiles, fila * columnas, columnas);
+        for (int j = 0; j < columnas; j++) tileEscrito(fila, j, origen[desde + j] & 0xFF);
+    }
+
+    /**
+     * Indice de paleta de un tile, sin traducir a caracter.
+     *
+     * @param fila Fila deseada.
+     * @param columna Columna deseada.
+     * @return El indice (0..255), o 0 fuera de los limites
+     */
+    public int getIndice(int fila, int columna) {
+        if (fila >= 0 && fila < filas && columna >= 0 && columna < columnas)
+            return tiles[fila * columnas + columna] & 0xFF;
+        return 0;
+    }
+
+    /**
+     * Getter de la paleta
+     * @return Copia de los caracteres de la paleta, en orden de indice
+     */
+    public char[] getPaleta() {return Arrays.copyOf(paleta, tamPaleta);}
+
+    /**
+     * Copia independiente en memoria, sin oyentes. Sirve tambien para sacar
+     * un EscenarioPaginado entero a un array plano.
+     *
+     * @return El escenario copiado
+     */
+    public Escenario copia() {
+        byte[] copia = new byte[filas * columnas];
+        copiarFilas(0, filas, copia, 0);
+        return new Escenario(filas, columnas, copia, getPaleta());
+    }
+
+    /**
+     * Se llama despues de escribir un tile: pone su bit de colision segun el
+     * tipo nuevo y avisa a los oyentes.
+     *
+     * @param fila Fila del tile
+     * @param columna Columna del tile
+     * @param indice Indice de paleta escrito
+     */
+    protected void tileEscrito(int fila, int columna, int indice) {
+        if (colision != null) colision.poner(fila, columna, bloqueaIndice[indice]);
+        for (int i = 0; i < oyentes.size(); i++) oyentes.get(i).tileCambiado(fila, columna);
+    }
+
+    /**
+     * Caracter de un indice de la paleta
+     *
+     * @param indice Indice (0..255)
+     * @return El caracter, o '\0' si el indice no esta en uso
+     */
+    protected char caracterDe(int indice) {return paleta[indice];}
+
+    /**
+     * Indice de un caracter, agregandolo a la paleta si hace falta
+     *
+     * @param tipo Caracter del tile
+     * @return El indice como byte (0 si la paleta esta llena)
+     */
+    private byte indiceDe(char tipo) {
+        int indice = buscarOAgregar(tipo);
+        return (byte) Math.max(indice, 0);
+    }
+
+    /**
+     * Busca un caracter en la paleta y lo agrega al final si no estaba
+     *
+     * @param tipo Caracter del tile
+     * @return El indice o -1 si la paleta esta llena
+     */
+    protected int buscarOAgregar(char tipo) {
+        for (int i = 0; i < tamPaleta; i++) if (paleta[i] == tipo) return i;
+        if (tamPaleta >= MAX_PALETA) return -1;
+        paleta[tamPaleta] = tipo;
+        bloqueaIndice[tamPaleta] = TablaBloqueo.esBloqueante(tipo);
+        return tamPaleta++;
+    }
+
+    /**
+     * Interesado en los cambios de tiles (renderizado, guardado de partida...)
+     */
+    public interface OyenteTiles {
+        /**
+         * Un tile ha cambiado con setTile o escribirFila
+         *
+         * @param fila Fila del tile
+         * @param columna Columna del tile
+         */
+        void tileCambiado(int fila, int columna);
     }
 }
@@ -0,0 +1,577 @@
+package Modelo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Escenario troceado en chunks de 64x64 que se cargan bajo demanda desde un
+ * archivo mapeado en memoria, para mapas que no caben en el heap.
+ *
+ * Solo se mantienen en memoria como mucho maxChunksResidentes chunks; al pasarse
+ * se expulsa el menos usado y, si setTile lo habia cambiado, se vuelca antes.
+ * Del archivo solo se mapean a la vez MAX_BANDAS_MAPEADAS bandas de 64 filas,
+ * tambien con expulsion del menos usado.
+ *
+ * En READ_WRITE los chunks cambiados se vuelcan a su banda y llegan al
+ * archivo. En los otros modos las bandas se mapean solo para leer y los
+ * chunks cambiados que se expulsan van a un archivo temporal de cambios, que
+ * se borra al cerrar: asi la memoria no crece con las copias de las paginas
+ * escritas. No es seguro entre hilos, igual que Escenario.
+ *
+ * La colision no es una capa del mapa entero: cada chunk calcula sus bits al
+ * cargarse (una palabra long por fila) y los pierde al expulsarse, asi que
+ * abrir un mapa no lee todos sus tiles.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class EscenarioPaginado extends Escenario implements AutoCloseable {
+
+    /** Lado de un chunk en tiles, como potencia de dos. */
+    public static final int BITS_CHUNK = 6;
+    public static final int LADO_CHUNK = 1 << BITS_CHUNK;
+    private static final int MASCARA_CHUNK = LADO_CHUNK - 1;
+    /** Bandas de filas que se mantienen mapeadas a la vez. */
+    public static final int MAX_BANDAS_MAPEADAS = 8;
+
+    private final FileChannel canal;
+    private final long inicioTiles;
+    private final FileChannel.MapMode modo;
+    private final int maxChunksResidentes;
+    private final int chunksPorFila;
+    private final LinkedHashMap<Integer, Banda> bandas = new LinkedHashMap<>(MAX_BANDAS_MAPEADAS * 2, 0.75f, true);
+    private final LinkedHashMap<Long, Chunk> residentes;
+
+    // Fuera de READ_WRITE: chunks cambiados y expulsados, con su posicion en el archivo de cambios
+    private FileChannel cambios;
+    private final Map<Long, Long> posicionCambios = new HashMap<>();
+
+    private long idCaliente = -1;
+    private Chunk chunkCaliente;
+
+    private long aciertos;
+    private long fallos;
+    private long expulsiones;
+
+    /**
+     * Constructor parametrizado. Normalmente se usa NivelBinario.abrirPaginado.
+     *
+     * @param filas Número de filas.
+     * @param columnas Número de columnas.
+     * @param paleta Caracter de cada indice.
+     * @param canal Canal abierto del archivo con los tiles
+     * @param inicioTiles Posicion del primer tile dentro del archivo
+     * @param modo READ_WRITE para que los cambios lleguen al archivo; con PRIVATE o READ_ONLY no llegan
+     * @param maxChunksResidentes Presupuesto de chunks en memoria (minimo 1)
+     */
+    public EscenarioPaginado(int filas, int columnas, char[] paleta, FileChannel canal, long inicioTiles, FileChannel.MapMode modo, int maxChunksResidentes) {
+        super(filas, columnas, paleta);
+        if ((long) LADO_CHUNK * columnas > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Demasiadas columnas para paginar: " + columnas);
+        this.canal = canal;
+        this.inicioTiles = inicioTiles;
+        this.modo = modo;
+        this.maxChunksResidentes = Math.max(1, maxChunksResidentes);
+        this.chunksPorFila = (columnas + MASCARA_CHUNK) >>> BITS_CHUNK;
+        this.residentes = new LinkedHashMap<>(Math.min(this.maxChunksResidentes, 1 << 16) * 2, 0.75f, true);
+        actualizarBloqueo();
+    }
+
+    /**
+     * Obtiene el carácter (tile) en una posición específica del mapa.
+     *
+     * @param fila Fila deseada.
+     * @param columna Columna deseada.
+     * @return El carácter en esa posición, o '\0' si está fuera de los límites.
+     */
+    @Override
+    public char getTile(int fila, int columna) {
+        if (fila < 0 || fila >= getFilas() || columna < 0 || columna >= getColumnas()) return '\0';
+        return caracterDe(chunk(fila, columna).datos[posicionEnChunk(fila, columna)] & 0xFF);
+    }
+
+    /**
+     * Indice de paleta de un tile, sin traducir a caracter.
+     *
+     * @param fila Fila deseada.
+     * @param columna Columna deseada.
+     * @return El indice (0..255), o 0 fuera de los limites
+     */
+    @Override
+    public int getIndice(int fila, int columna) {
+        if (fila < 0 || fila >= getFilas() || columna < 0 || columna >= getColumnas()) return 0;
+        return chunk(fila, columna).datos[posicionEnChunk(fila, columna)] & 0xFF;
+    }
+
+    /**
+     * Setter de Tile. Marca el chunk como modificado para volcarlo al expulsarlo.
+     *
+     * @param fila Fila que se encuentra el Objeto
+     * @param columna Columna que se encuentra el Objeto
+     * @param tipo El tipo del Objeto
+     */
+    @Override
+    public void setTile(int fila, int columna, char tipo) {
+        if (fila < 0 || fila >= getFilas() || columna < 0 || columna >= getColumnas()) return;
+        int indice = buscarOAgregar(tipo);
+        if (indice < 0) {
+            System.err.println("Error: La paleta del escenario está llena, no se puede poner '" + tipo + "'.");
+            return;
+        }
+        Chunk chunk = chunk(fila, columna);
+        chunk.datos[posicionEnChunk(fila, columna)] = (byte) indice;
+        chunk.sucio = true;
+        tileEscrito(fila, columna, indice);
+    }
+
+    /**
+     * Comprueba si se puede pisar un tile con los bits de colision de su
+     * chunk, que se carga si no estaba.
+     *
+     * @param fila Fila deseada.
+     * @param columna Columna deseada.
+     * @return false si el tile bloquea o esta fuera del mapa
+     */
+    @Override
+    public boolean esTransitable(int fila, int columna) {
+        if (fila < 0 || fila >= getFilas() || columna < 0 || columna >= getColumnas()) return false;
+        return (chunk(fila, columna).colision[fila & MASCARA_CHUNK] & (1L << (columna & MASCARA_CHUNK))) == 0;
+    }
+
+    /**
+     * Vuelve a leer TablaBloqueo y recalcula la colision de los chunks en
+     * memoria; los demas la calculan al cargarse.
+     */
+    @Override
+    public void reconstruirColision() {
+        actualizarBloqueo();
+        for (Chunk chunk : residentes.values()) calcularColision(chunk);
+    }
+
+    /**
+     * Pone el bit de colision del tile en su chunk y avisa a los oyentes
+     *
+     * @param fila Fila del tile
+     * @param columna Columna del tile
+     * @param indice Indice de paleta escrito
+     */
+    @Override
+    protected void tileEscrito(int fila, int columna, int indice) {
+        long[] colision = chunk(fila, columna).colision;
+        if (bloquea(indice)) colision[fila & MASCARA_CHUNK] |= 1L << (columna & MASCARA_CHUNK);
+        else colision[fila & MASCARA_CHUNK] &= ~(1L << (columna & MASCARA_CHUNK));
+        super.tileEscrito(fila, columna, indice);
+    }
+
+    /**
+     * Copia los indices de paleta de una fila completa, chunk a chunk.
+     *
+     * @param fila Fila a copiar
+     * @param destino Array donde se copia
+     * @param desde Posicion de destino donde empieza la fila
+     */
+    @Override
+    public void copiarFila(int fila, byte[] destino, int desde) {
+        int columnas = getColumnas();
+        for (int col = 0; col < columnas; col += LADO_CHUNK) {
+            int ancho = Math.min(LADO_CHUNK, columnas - col);
+            System.arraycopy(chunk(fila, col).datos, posicionEnChunk(fila, col), destino, desde + col, ancho);
+        }
+    }
+
+    /**
+     * Copia los caracteres de una fila completa.
+     *
+     * @param fila Fila a copiar
+     * @param destino Array donde se copia
+     * @param desde Posicion de destino donde empieza la fila
+     */
+    @Override
+    public void copiarFila(int fila, char[] destino, int desde) {
+        int columnas = getColumnas();
+        for (int col = 0; col < columnas; col += LADO_CHUNK) {
+            int ancho = Math.min(LADO_CHUNK, columnas - col);
+            byte[] datos = chunk(fila, col).datos;
+            int base = posicionEnChunk(fila, col);
+            for (int j = 0; j < ancho; j++) destino[desde + col + j] = caracterDe(datos[base + j] & 0xFF);
+        }
+    }
+
+    /**
+     * Sobrescribe una fila completa con indices de esta misma paleta.
+     *
+     * @param fila Fila a escribir
+     * @param origen Array con los indices
+     * @param desde Posicion de origen donde empieza la fila
+     */
+    @Override
+    public void escribirFila(int fila, byte[] origen, int desde) {
+        int columnas = getColumnas();
+        for (int col = 0; col < columnas; col += LADO_CHUNK) {
+            int ancho = Math.min(LADO_CHUNK, columnas - col);
+            Chunk chunk = chunk(fila, col);
+            System.arraycopy(origen, desde + col, chunk.datos, posicionEnChunk(fila, col), ancho);
+            chunk.sucio = true;
+        }
+        for (int j = 0; j < columnas; j++) tileEscrito(fila, j, origen[desde + j] & 0xFF);
+    }
+
+    /**
+     * Copia un bloque de filas directamente de las bandas, sin cargar chunks
+     * ni cambiar cuales estan en memoria. Encima se ponen los chunks cambiados:
+     * primero los del archivo de cambios y luego los residentes modificados.
+     *
+     * @param desde Primera fila
+     * @param hasta Fila final, excluida
+     * @param destino Array donde se copian, fila a fila
+     * @param posicion Posicion de destino de la primera fila
+     */
+    @Override
+    public void copiarFilas(int desde, int hasta, byte[] destino, int posicion) {
+        int columnas = getColumnas();
+        int fila = desde;
+        while (fila < hasta) {
+            int chunkFila = fila >>> BITS_CHUNK;
+            int finBanda = Math.min(hasta, (chunkFila + 1) << BITS_CHUNK);
+            List<Chunk> encima = cambiadosDeBanda(chunkFila);
+            MappedByteBuffer banda = banda(chunkFila);
+            for (; fila < finBanda; fila++, posicion += columnas) {
+                banda.get((fila & MASCARA_CHUNK) * columnas, destino, posicion, columnas);
+                for (Chunk chunk : encima) {
+                    int columnaInicio = chunk.columna << BITS_CHUNK;
+                    System.arraycopy(chunk.datos, posicionEnChunk(fila, columnaInicio), destino, posicion + columnaInicio, Math.min(LADO_CHUNK, columnas - columnaInicio));
+                }
+            }
+        }
+    }
+
+    /**
+     * Chunks de una banda cuya version buena no esta en el mapeo
+     *
+     * @param chunkFila Fila de chunks
+     * @return Los del archivo de cambios y despues los residentes modificados
+     */
+    private List<Chunk> cambiadosDeBanda(int chunkFila) {
+        List<Chunk> encima = new ArrayList<>();
+        if (!posicionCambios.isEmpty()) {
+            long primero = (long) chunkFila * chunksPorFila;
+            for (int c = 0; c < chunksPorFila; c++) {
+                Long posicion = posicionCambios.get(primero + c);
+                if (posicion == null) continue;
+                Chunk chunk = new Chunk(chunkFila, c);
+                leerCambios(chunk, posicion);
+                encima.add(chunk);
+            }
+        }
+        for (Chunk chunk : residentes.values()) if (chunk.fila == chunkFila && chunk.sucio) encima.add(chunk);
+        return encima;
+    }
+
+    /**
+     * Vuelca los chunks modificados. En READ_WRITE van a sus bandas y al
+     * disco; en los otros modos no hay donde volcarlos y se quedan en memoria.
+     */
+    public void volcar() {
+        if (modo != FileChannel.MapMode.READ_WRITE) return;
+        for (Chunk chunk : residentes.values()) escribirChunk(chunk);
+        for (Banda banda : bandas.values()) forzar(banda);
+    }
+
+    /**
+     * Vuelca los cambios y cierra el archivo y el de cambios
+     */
+    @Override
+    public void close() {
+        volcar();
+        residentes.clear();
+        chunkCaliente = null;
+        idCaliente = -1;
+        bandas.clear();
+        posicionCambios.clear();
+        try {
+            canal.close();
+            if (cambios != null) cambios.close();
+        } catch (IOException e) {System.err.println("Error al cerrar el escenario paginado: " + e.getMessage());}
+    }
+
+    /**
+     * Getter de aciertos
+     * @return Accesos a un chunk que ya estaba en memoria
+     */
+    public long getAciertos() {return aciertos;}
+
+    /**
+     * Getter de fallos
+     * @return Chunks que hubo que cargar del archivo
+     */
+    public long getFallos() {return fallos;}
+
+    /**
+     * Getter de expulsiones
+     * @return Chunks expulsados por falta de presupuesto
+     */
+    public long getExpulsiones() {return expulsiones;}
+
+    /**
+     * Getter de chunks residentes
+     * @return Chunks en memoria ahora mismo
+     */
+    public int getChunksResidentes() {return residentes.size();}
+
+    /**
+     * Getter de bandas mapeadas
+     * @return Bandas de filas mapeadas ahora mismo
+     */
+    public int getBandasMapeadas() {return bandas.size();}
+
+    /**
+     * Getter de chunks en el archivo de cambios
+     * @return Chunks cambiados y expulsados que no estan en el mapeo
+     */
+    public int getChunksEnCambios() {return posicionCambios.size();}
+
+    /**
+     * Chunk que contiene el tile. Si es el mismo que el ultimo no se toca el mapa.
+     *
+     * @param fila Fila del tile (ya validada)
+     * @param columna Columna del tile (ya validada)
+     * @return El chunk, cargado si no estaba
+     */
+    private Chunk chunk(int fila, int columna) {
+        long id = (long) (fila >>> BITS_CHUNK) * chunksPorFila + (columna >>> BITS_CHUNK);
+        if (id == idCaliente) return chunkCaliente;
+
+        Chunk chunk = residentes.get(id);
+        if (chunk != null) aciertos++;
+        else {
+            fallos++;
+            chunk = cargarChunk(fila >>> BITS_CHUNK, columna >>> BITS_CHUNK);
+            residentes.put(id, chunk);
+            if (residentes.size() > maxChunksResidentes) expulsarMasAntiguo();
+        }
+        idCaliente = id;
+        chunkCaliente = chunk;
+        return chunk;
+    }
+
+    /**
+     * Expulsa el chunk usado hace mas tiempo, volcandolo si estaba modificado
+     */
+    private void expulsarMasAntiguo() {
+        Iterator<Map.Entry<Long, Chunk>> it = residentes.entrySet().iterator();
+        Map.Entry<Long, Chunk> viejo = it.next();
+        escribirChunk(viejo.getValue());
+        if (viejo.getKey() == idCaliente) {
+            idCaliente = -1;
+            chunkCaliente = null;
+        }
+        it.remove();
+        expulsiones++;
+    }
+
+    /**
+     * Lee un chunk del archivo de cambios si se cambio, o si no de su banda de filas
+     *
+     * @param chunkFila Fila del chunk
+     * @param chunkColumna Columna del chunk
+     * @return El chunk con sus datos
+     */
+    private Chunk cargarChunk(int chunkFila, int chunkColumna) {
+        Chunk chunk = new Chunk(chunkFila, chunkColumna);
+        Long cambiado = posicionCambios.isEmpty() ? null : posicionCambios.get((long) chunkFila * chunksPorFila + chunkColumna);
+        if (cambiado != null) leerCambios(chunk, cambiado);
+        else {
+            MappedByteBuffer banda = banda(chunkFila);
+            int columnas = getColumnas();
+            int columnaInicio = chunkColumna << BITS_CHUNK;
+            int ancho = Math.min(LADO_CHUNK, columnas - columnaInicio);
+            int alto = altoBanda(chunkFila);
+            for (int r = 0; r < alto; r++) banda.get(r * columnas + columnaInicio, chunk.datos, r << BITS_CHUNK, ancho);
+        }
+        calcularColision(chunk);
+        return chunk;
+    }
+
+    /**
+     * Calcula los bits de colision de un chunk desde sus tiles. Los que
+     * sobran en el borde del mapa no se consultan nunca.
+     *
+     * @param chunk Chunk con sus datos ya cargados
+     */
+    private void calcularColision(Chunk chunk) {
+        for (int r = 0; r < LADO_CHUNK; r++) {
+            long bits = 0;
+            int base = r << BITS_CHUNK;
+            for (int c = 0; c < LADO_CHUNK; c++) if (bloquea(chunk.datos[base + c] & 0xFF)) bits |= 1L << c;
+            chunk.colision[r] = bits;
+        }
+    }
+
+    /**
+     * Vuelca un chunk modificado: a su banda en READ_WRITE, o al archivo de cambios
+     *
+     * @param chunk Chunk a volcar
+     */
+    private void escribirChunk(Chunk chunk) {
+        if (!chunk.sucio) return;
+        if (modo != FileChannel.MapMode.READ_WRITE) {
+            escribirCambios(chunk);
+            chunk.sucio = false;
+            return;
+        }
+        Banda banda = bandas.get(chunk.fila);
+        if (banda == null) {
+            banda(chunk.fila);
+            banda = bandas.get(chunk.fila);
+        }
+        int columnas = getColumnas();
+        int columnaInicio = chunk.columna << BITS_CHUNK;
+        int ancho = Math.min(LADO_CHUNK, columnas - columnaInicio);
+        int alto = altoBanda(chunk.fila);
+        for (int r = 0; r < alto; r++) banda.mapeo.put(r * columnas + columnaInicio, chunk.datos, r << BITS_CHUNK, ancho);
+        banda.escrita = true;
+        chunk.sucio = false;
+    }
+
+    /**
+     * Guarda un chunk entero en el archivo de cambios, que se crea la primera vez
+     *
+     * @param chunk Chunk modificado
+     */
+    private void escribirCambios(Chunk chunk) {
+        long id = (long) chunk.fila * chunksPorFila + chunk.columna;
+        try {
+            if (cambios == null) {
+                Path ruta = Files.createTempFile("escenario", ".cambios");
+                cambios = FileChannel.open(ruta, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            Long posicion = posicionCambios.get(id);
+            if (posicion == null) {
+                posicion = (long) posicionCambios.size() * chunk.datos.length;
+                posicionCambios.put(id, posicion);
+            }
+            ByteBuffer datos = ByteBuffer.wrap(chunk.datos);
+            while (datos.hasRemaining()) cambios.write(datos, posicion + datos.position());
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo guardar el chunk " + chunk.fila + "," + chunk.columna + " en el archivo de cambios", e);
+        }
+    }
+
+    /**
+     * Lee un chunk del archivo de cambios
+     *
+     * @param chunk Chunk a rellenar
+     * @param posicion Su posicion en el archivo
+     */
+    private void leerCambios(Chunk chunk, long posicion) {
+        ByteBuffer datos = ByteBuffer.wrap(chunk.datos);
+        try {
+            while (datos.hasRemaining())
+                if (cambios.read(datos, posicion + datos.position()) < 0) throw new IOException("Archivo de cambios truncado");
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo leer el chunk " + chunk.fila + "," + chunk.columna + " del archivo de cambios", e);
+        }
+    }
+
+    /**
+     * Mapeo de las filas de un chunk-fila completo. Se crea la primera vez que
+     * se usa y, si hay demasiadas bandas mapeadas, se suelta la menos usada.
+     *
+     * @param chunkFila Fila de chunks
+     * @return El buffer mapeado de esa banda
+     */
+    private MappedByteBuffer banda(int chunkFila) {
+        Banda banda = bandas.get(chunkFila);
+        if (banda == null) {
+            long posicion = inicioTiles + ((long) chunkFila << BITS_CHUNK) * getColumnas();
+            // Fuera de READ_WRITE nunca se escribe en el mapeo, asi que no hay paginas copiadas
+            FileChannel.MapMode modoMapeo = (modo == FileChannel.MapMode.READ_WRITE) ? modo : FileChannel.MapMode.READ_ONLY;
+            try {banda = new Banda(canal.map(modoMapeo, posicion, (long) altoBanda(chunkFila) * getColumnas()));}
+            catch (IOException e) {throw new IllegalStateException("No se pudo mapear la banda " + chunkFila + " del escenario", e);}
+            bandas.put(chunkFila, banda);
+            if (bandas.size() > MAX_BANDAS_MAPEADAS) {
+                Iterator<Banda> menosUsadas = bandas.values().iterator();
+                forzar(menosUsadas.next());
+                // Sin referencias, el mapeo se libera cuando el recolector recoge el buffer
+                menosUsadas.remove();
+            }
+        }
+        return banda.mapeo;
+    }
+
+    /**
+     * Lleva al disco lo escrito en una banda
+     *
+     * @param banda Banda mapeada
+     */
+    private void forzar(Banda banda) {
+        if (!banda.escrita) return;
+        banda.mapeo.force();
+        banda.escrita = false;
+    }
+
+    /**
+     * Filas reales de una banda (la ultima puede ser mas corta)
+     *
+     * @param chunkFila Fila de chunks
+     * @return Numero de filas
+     */
+    private int altoBanda(int chunkFila) {return Math.min(LADO_CHUNK, getFilas() - (chunkFila << BITS_CHUNK));}
+
+    /**
+     * Posicion del tile dentro del array de su chunk
+     *
+     * @param fila Fila del tile
+     * @param columna Columna del tile
+     * @return Indice en Chunk.datos
+     */
+    private static int posicionEnChunk(int fila, int columna) {return ((fila & MASCARA_CHUNK) << BITS_CHUNK) | (columna & MASCARA_CHUNK);}
+
+    /**
+     * Banda de 64 filas mapeada
+     */
+    private static class Banda {
+        final MappedByteBuffer mapeo;
+        boolean escrita;
+
+        /**
+         * Constructor parametrizado
+         * @param mapeo Buffer mapeado de la banda
+         */
+        Banda(MappedByteBuffer mapeo) {this.mapeo = mapeo;}
+    }
+
+    /**
+     * Bloque de 64x64 tiles en memoria
+     */
+    private static class Chunk {
+        final int fila, columna;
+        final byte[] datos = new byte[LADO_CHUNK * LADO_CHUNK];
+        // Un long por fila: el bit c es la columna c del chunk
+        final long[] colision = new long[LADO_CHUNK];
+        boolean sucio;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param fila Fila del chunk
+         * @param columna Columna del chunk
+         */
+        Chunk(int fila, int columna) {
+            this.fila = fila;
+            this.columna = columna;
+        }
+    }
+}
@@ -10,6 +10,7 @@ package Modelo;
 public class Puntuacion {
     private String nombre;
     private int puntuacion;
+    private long id;
 
     /**
      * Contructor defectuoso
@@ -27,6 +28,18 @@ public class Puntuacion {
         this.puntuacion = puntuacion;
     }
 
+    /**
+     * Constuctor parametrizado con el id de la fila
+     * 
+     * @param nombre Nombre del jugador
+     * @param puntuacion Puntuacion del jugador
+     * @param id Id de la fila en Puntuaciones
+     */
+    public Puntuacion(String nombre, int puntuacion, long id) {
+        this(nombre, puntuacion);
+        this.id = id;
+    }
+
     /**
      * Getter de Nombre
      * @return Nombre{String}
@@ -51,6 +64,12 @@ public class Puntuacion {
      */
     public void setPuntuacion(int puntuacion) {this.puntuacion = puntuacion;}
 
+    /**
+     * Getter de id
+     * @return Id de la fila en Puntuaciones, o 0 si no se conoce{long}
+     */
+    public long getId() {return id;}
+
     /**
      * Informacion completa
      * 
@@ -0,0 +1,39 @@
+package Modelo;
+
+import java.util.BitSet;
+
+/**
+ * Tabla de que tipos de tile bloquean el paso.
+ * Por defecto solo bloquea 'O' (muro); un tipo nuevo se da de alta aqui y no
+ * hay que tocar Movimiento.mover.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class TablaBloqueo {
+
+    private static final BitSet bloqueantes = new BitSet(Character.MAX_VALUE + 1);
+
+    // Tipos que bloquean desde el principio
+    static {
+        bloqueantes.set('O');
+    }
+
+    /**
+     * Comprueba si un tipo de tile bloquea el paso
+     *
+     * @param tipo Caracter del tile
+     * @return true si bloquea
+     */
+    public static synchronized boolean esBloqueante(char tipo) {return bloqueantes.get(tipo);}
+
+    /**
+     * Cambia si un tipo de tile bloquea. Los escenarios ya cargados tienen que
+     * llamar a Escenario.reconstruirColision para enterarse.
+     *
+     * @param tipo Caracter del tile
+     * @param bloquea true si debe bloquear el paso
+     */
+    public static synchronized void setBloqueante(char tipo, boolean bloquea) {bloqueantes.set(tipo, bloquea);}
+}
@@ -4,12 +4,19 @@ import Modelo.Puntuacion;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ScrollBar;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.cell.PropertyValueFactory;
 import java.io.IOException;
-import java.util.List;
+import Controlador.CargadorAsincrono;
+import Controlador.Clasificacion;
+import Controlador.GestorEscenas;
 import Controlador.SQLite;
 
 /**
@@ -20,7 +27,7 @@ import Controlador.SQLite;
  * @author Juan
  * @version 0.3.3
  */
-public class PantallaDeInicio {
+public class PantallaDeInicio implements GestorEscenas.CicloPantalla {
 
     @FXML private TableView<Puntuacion> tablaPuntuaciones;
     @FXML private TableColumn<Puntuacion, String> columnaNombre;
@@ -28,30 +35,94 @@ public class PantallaDeInicio {
 
     @FXML private Button btnIniciar;
 
+    private static final int TAMANO_PAGINA = 50;
+
     private ObservableList<Puntuacion> listaPuntuaciones = FXCollections.observableArrayList();
+    private Clasificacion.Cursor cursor = Clasificacion.Cursor.INICIO;
+    private boolean sinMasPaginas = false;
+    private boolean cargandoPagina = false;
+    private CargadorAsincrono cargas;
 
     /**
      * Metodo fxml para inicializar la escena
+     * Solo se ejecuta una vez; la escena se reutiliza en cada visita
      */
     @FXML
     public void initialize() {
         columnaNombre.setCellValueFactory(new PropertyValueFactory<>("nombre"));
         columnaPuntuacion.setCellValueFactory(new PropertyValueFactory<>("puntuacion"));
 
-        cargarPuntuaciones();
-
         tablaPuntuaciones.setItems(listaPuntuaciones);
+        // La barra de desplazamiento solo existe cuando la tabla tiene skin
+        tablaPuntuaciones.skinProperty().addListener((obs, antes, skin) -> vigilarDesplazamiento());
+    }
+
+    /**
+     * Cada vez que se muestra se vuelven a pedir las puntuaciones desde el principio.
+     * La tabla sigue mostrando las de la visita anterior hasta que llegan las nuevas.
+     *
+     * @param escena Escena de la pantalla
+     */
+    @Override
+    public void alMostrar(Scene escena) {
+        cargas = App.getCargas();
+        cursor = Clasificacion.Cursor.INICIO;
+        sinMasPaginas = false;
+        // Las cargas de la visita anterior se cancelaron y ya no van a bajar la marca
+        cargandoPagina = false;
+        if (listaPuntuaciones.isEmpty()) tablaPuntuaciones.setPlaceholder(new Label("Cargando puntuaciones..."));
+        cargarPuntuaciones();
     }
 
     /**
-     * Carga las puntuaciones en la tabla
+     * Carga las puntuaciones en la tabla, desde la clasificacion en memoria
+     * (la primera vez puede tener que consultar la base)
      */
     private void cargarPuntuaciones() {
-        List<Puntuacion> topPuntuaciones = SQLite.obtenerMejoresPuntuaciones();
-        if (topPuntuaciones != null) {
-            listaPuntuaciones.setAll(topPuntuaciones);
+        cargandoPagina = true;
+        cargas.cargar("puntuaciones", () -> SQLite.getClasificacion().primeraPagina(), primera -> {
+            cargandoPagina = false;
+            listaPuntuaciones.setAll(primera.getFilas());
+            // El cursor es la ultima fila mostrada, aunque la tabla haya cambiado desde que se copio
+            cursor = primera.getSiguiente();
+            tablaPuntuaciones.setPlaceholder(new Label("Aun no hay puntuaciones."));
             System.out.println("Puntuaciones cargadas en la tabla.");
-        } else System.err.println("No se pudieron cargar las puntuaciones.");
+            // Si la primera pagina no llena la tabla no habra barra, se pide otra
+            if (listaPuntuaciones.size() < TAMANO_PAGINA) cargarSiguientePagina();
+        }, e -> {
+            cargandoPagina = false;
+            tablaPuntuaciones.setPlaceholder(new Label("No se pudieron cargar las puntuaciones."));
+            System.err.println("No se pudieron cargar las puntuaciones: " + e);
+        });
+    }
+
+    /**
+     * Pide la siguiente pagina al acercarse al final de la tabla
+     */
+    private void vigilarDesplazamiento() {
+        for (Node nodo : tablaPuntuaciones.lookupAll(".scroll-bar")) {
+            if (nodo instanceof ScrollBar barra && barra.getOrientation() == Orientation.VERTICAL) {
+                barra.valueProperty().addListener((obs, antes, valor) -> {
+                    if (valor.doubleValue() >= barra.getMax() * 0.9) cargarSiguientePagina();
+                });
+            }
+        }
+    }
+
+    /**
+     * Anade la siguiente pagina de puntuaciones, desde donde acabo la anterior
+     */
+    private void cargarSiguientePagina() {
+        if (sinMasPaginas || cargandoPagina) return;
+        cargandoPagina = true;
+        Clasificacion.Cursor desde = cursor;
+        cargas.cargar("pagina", () -> Clasificacion.pagina(desde, TAMANO_PAGINA), pagina -> {
+            cargandoPagina = false;
+            if (pagina == null) return;
+            listaPuntuaciones.addAll(pagina.getFilas());
+            cursor = pagina.getSiguiente();
+            sinMasPaginas = pagina.esUltima();
+        }, e -> cargandoPagina = false);
     }
 
     /**
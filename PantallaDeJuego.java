@@ -2,12 +2,19 @@
 
 import Modelo.Escenario;
 import Modelo.Jugador;
+import Controlador.BucleJuego;
 import Controlador.Control;
+import Controlador.MotorSesion;
 import Controlador.Sesion;
+import Controlador.GestorEscenas;
 import Controlador.GestorTile;
+import Controlador.GuardadoPartida;
+import Controlador.RenderizadorCapas;
+import Controlador.RenderizadorMapa;
 import javafx.animation.AnimationTimer;
 import javafx.fxml.FXML;
 import javafx.geometry.Point2D;
+import javafx.scene.canvas.Canvas;
 import javafx.scene.Scene;
 import javafx.scene.control.TextArea;
 import javafx.scene.image.Image;
@@ -17,6 +24,7 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.GridPane;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -30,13 +38,15 @@ import java.util.HashSet;
  * @author Juan
  * @version 0.3.3
  */
-public class PantallaDeJuego {
+public class PantallaDeJuego implements GestorEscenas.CicloPantalla {
 
     @FXML
     private AnchorPane paneRaiz;
     @FXML
     private GridPane mapaJuego;
     @FXML
+    private Canvas lienzoMapa;
+    @FXML
     private ImageView jugador;
     @FXML
     private TextArea txtComentarios;
@@ -44,47 +54,129 @@ public class PantallaDeJuego {
     private Jugador jugadorActual;
     private Escenario escenarioActual;
     private AnimationTimer bucleJuego;
+    private BucleJuego motor;
+    private MotorSesion sesionJuego;
+    // Posicion en el tick anterior y la ultima dibujada, para interpolar
+    private int filaAnterior, columnaAnterior;
+    private double filaDibujada = Double.NaN, columnaDibujada = Double.NaN;
+    private RenderizadorMapa renderizador;
+    private GuardadoPartida guardado;
+    private final Control control = new Control();
+    // La escena se reutiliza: el oyente de foco de la ventana se pone una sola vez
+    private boolean focoVigilado = false;
 
     private final int TAMANO_TILE = 32;
+    // true: Canvas por capas (chunks horneados + sprites encima); false: un ImageView por tile en el GridPane
+    private static final boolean USAR_CANVAS = true;
+    // Frecuencia de la simulacion, independiente de la del monitor
+    private static final int TICKS_POR_SEGUNDO = BucleJuego.TICKS_DEFECTO;
+    // Autoguardado cada 5 segundos de juego
+    private static final int TICKS_AUTOGUARDADO = 5 * TICKS_POR_SEGUNDO;
+    private static final Path NIVEL = Path.of("escenarios", "nivel1.txt");
 
     /**
      * Incializa panatalla de juego
      */
     @FXML
-    public void initialize() {
-        System.out.println("Inicializando PantallaDeJuego...");
-        cargarDatosJuego();
-        if (escenarioActual == null || jugadorActual == null) {
+    public void initialize() {System.out.println("Inicializando PantallaDeJuego...");}
+
+    /**
+     * Empieza una partida cada vez que se muestra la pantalla
+     *
+     * @param escena Escena de la pantalla
+     */
+    @Override
+    public void alMostrar(Scene escena) {
+        jugadorActual = null;
+        escenarioActual = null;
+        renderizador = null;
+        filaDibujada = Double.NaN;
+        columnaDibujada = Double.NaN;
+        mapaJuego.setVisible(true);
+        if (lienzoMapa != null) lienzoMapa.setVisible(true);
+        txtComentarios.setText("Cargando escenario...\n");
+        setCapInp(escena);
+        App.getCargas().cargar("escenario", this::cargarDatosJuego, this::prepararJuego,
+                e -> txtComentarios.setText("Error crítico: No se pudo cargar el escenario o el jugador."));
+    }
+
+    /**
+     * Para la partida al salir de la pantalla
+     */
+    @Override
+    public void alOcultar() {paraJuego();}
+
+    /**
+     * Dibuja el escenario y arranca el bucle cuando ya estan cargados los datos
+     *
+     * @param datos Escenario y jugador cargados, o null si fallo la carga
+     */
+    private void prepararJuego(DatosJuego datos) {
+        if (datos == null) {
             txtComentarios.setText("Error crítico: No se pudo cargar el escenario o el jugador.");
             return;
         }
+        escenarioActual = datos.escenario;
+        jugadorActual = datos.jugador;
 
-        GestorTile.agregarTilesAlGrid(mapaJuego, escenarioActual);
+        if (USAR_CANVAS && lienzoMapa != null) {
+            mapaJuego.setVisible(false);
+            renderizador = new RenderizadorCapas(lienzoMapa, escenarioActual, TAMANO_TILE, RenderizadorCapas.PRESUPUESTO_DEFECTO);
+            renderizador.seguir(jugadorActual.getFilaActual(), jugadorActual.getColumnaActual());
+            renderizador.dibujarSiHaceFalta();
+        } else {
+            if (lienzoMapa != null) lienzoMapa.setVisible(false);
+            GestorTile.agregarTilesAlGrid(mapaJuego, escenarioActual);
+        }
         txtComentarios.appendText("Escenario dibujado.\n");
 
         visualizacionJug();
         if (jugadorActual != null) txtComentarios.appendText("Jugador '" + jugadorActual.getNombre() + "' listo.\n");
 
+        // Los invitados comparten nombre: su partida no se guarda
+        if (!datos.invitado) {
+            guardado = new GuardadoPartida(Sesion.rutaPartida(jugadorActual.getNombre()), NIVEL, jugadorActual, escenarioActual, GuardadoPartida.MAX_DELTAS_DEFECTO);
+            guardado.puntoDeControl();
+        }
+
         bucleJuego();
         paneRaiz.setFocusTraversable(true);
     }
 
     /**
-     * Carga los datos de los archivos
+     * Carga los datos de los archivos; se ejecuta fuera del hilo de JavaFX.
+     * No toca los campos: una carga cancelada de una visita anterior podria acabar tarde.
+     *
+     * @return Escenario y jugador, o null si no se pudo cargar el escenario
      */
-    private void cargarDatosJuego() {
-        escenarioActual = Sesion.cargarEscenario("escenarios/nivel1.txt");
-        if (escenarioActual == null) {
+    private DatosJuego cargarDatosJuego() {
+        Escenario escenario = Sesion.cargarEscenario(NIVEL.toString());
+        if (escenario == null) {
             System.err.println("Fallo al cargar escenario.");
-            return;
+            return null;
         }
+        Jugador jugadorCargado = null;
         String nombreJugador = App.getNombreJugadorActual();
-        if (nombreJugador != null) jugadorActual = Sesion.cargarJugadorPorNombre(nombreJugador);
+        if (nombreJugador != null) jugadorCargado = Sesion.cargarJugadorPorNombre(nombreJugador);
 
-        if (jugadorActual == null) {
+        if (jugadorCargado == null) {
             System.out.println("Creando jugador 'Invitado'.");
-            jugadorActual = new Jugador("Invitado", "", 1, 1, 0);
+            return new DatosJuego(escenario, new Jugador("Invitado", "", 1, 1, 0), true);
+        }
+
+        GuardadoPartida.Partida partida = GuardadoPartida.cargar(Sesion.rutaPartida(jugadorCargado.getNombre()));
+        if (partida != null && !partida.esDe(NIVEL)) {
+            System.out.println("La partida guardada de " + jugadorCargado.getNombre() + " es de otra version del nivel, se empieza de nuevo.");
+            partida = null;
         }
+        if (partida != null) {
+            System.out.println("Continuando la partida guardada de " + jugadorCargado.getNombre() + ".");
+            escenario = partida.getEscenario();
+            jugadorCargado.setFilaActual(partida.getJugador().getFilaActual());
+            jugadorCargado.setColumnaActual(partida.getJugador().getColumnaActual());
+            jugadorCargado.setPuntos(partida.getJugador().getPuntos());
+        }
+        return new DatosJuego(escenario, jugadorCargado, false);
     }
 
     /**
@@ -120,43 +212,98 @@ public class PantallaDeJuego {
         
         System.out.println("Configurando manejadores de entrada...");
 
-        escena.setOnKeyPressed((KeyEvent evento) -> {Control.agregarTecla(evento.getCode());});
-        escena.setOnKeyReleased((KeyEvent evento) -> {Control.eliminarTecla(evento.getCode());});
+        escena.setOnKeyPressed((KeyEvent evento) -> {control.agregarTecla(evento.getCode());});
+        escena.setOnKeyReleased((KeyEvent evento) -> {control.eliminarTecla(evento.getCode());});
         javafx.application.Platform.runLater(() -> paneRaiz.requestFocus());
 
-        escena.getWindow().focusedProperty().addListener((obs, viejoVal, nuevoVal) -> {if (!nuevoVal) Control.limpiarTeclas();});
+        if (!focoVigilado && escena.getWindow() != null) {
+            escena.getWindow().focusedProperty().addListener((obs, viejoVal, nuevoVal) -> {if (!nuevoVal) control.limpiarTeclas();});
+            focoVigilado = true;
+        }
 
         txtComentarios.appendText("Controles WASD activados.\n");
     }
 
     /**
      * Polling del juego
+     * El AnimationTimer solo marca el tiempo; el movimiento va en ticks fijos
+     * de BucleJuego y el dibujado interpola entre el tick anterior y el actual.
      */
     private void bucleJuego() {
         if (bucleJuego != null) bucleJuego.stop();
         System.out.println("Iniciando bucle del juego...");
+        filaAnterior = jugadorActual.getFilaActual();
+        columnaAnterior = jugadorActual.getColumnaActual();
+        sesionJuego = new MotorSesion(jugadorActual, escenarioActual);
+        motor = new BucleJuego(TICKS_POR_SEGUNDO, this::tick, this::presentar);
         bucleJuego = new AnimationTimer() {
             @Override
-            public void handle(long ahora) {
-                boolean seMovio = Control.mov(jugadorActual, escenarioActual);
-                if (seMovio) {
-                    actJugPos();
-                    txtComentarios.appendText("Movido a: [" + jugadorActual.getFilaActual() + "," + jugadorActual.getColumnaActual() + "] Pts: " + jugadorActual.getPuntos() + "\n");
-                    txtComentarios.setScrollTop(Double.MAX_VALUE);
-                }
-            }
+            public void handle(long ahora) {motor.avanzar(ahora);}
         };
         bucleJuego.start();
     }
 
+    /**
+     * Un paso de simulacion
+     *
+     * @param numeroTick Numero de tick
+     */
+    private void tick(long numeroTick) {
+        filaAnterior = jugadorActual.getFilaActual();
+        columnaAnterior = jugadorActual.getColumnaActual();
+        sesionJuego.setEntrada(control.entrada());
+        if (guardado != null && numeroTick % TICKS_AUTOGUARDADO == 0) guardado.puntoDeControl();
+        if (sesionJuego.tick()) {
+            txtComentarios.appendText("Movido a: [" + jugadorActual.getFilaActual() + "," + jugadorActual.getColumnaActual() + "] Pts: " + jugadorActual.getPuntos() + "\n");
+            txtComentarios.setScrollTop(Double.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Dibuja un frame interpolando la posicion del jugador
+     *
+     * @param alfa Fraccion del siguiente tick ya transcurrida
+     */
+    private void presentar(double alfa) {
+        double fila = filaAnterior + (jugadorActual.getFilaActual() - filaAnterior) * alfa;
+        double columna = columnaAnterior + (jugadorActual.getColumnaActual() - columnaAnterior) * alfa;
+        if (fila == filaDibujada && columna == columnaDibujada) {
+            if (renderizador != null) renderizador.dibujarSiHaceFalta();
+            return;
+        }
+        filaDibujada = fila;
+        columnaDibujada = columna;
+        if (renderizador != null) {
+            renderizador.seguir(fila, columna);
+            renderizador.dibujarSiHaceFalta();
+        }
+        actJugPos(fila, columna);
+    }
+
     /**
      * Actualiza la posicion del jugador
      */
     private void actJugPos() {
+        if (jugadorActual == null) return;
+        actJugPos(jugadorActual.getFilaActual(), jugadorActual.getColumnaActual());
+    }
+
+    /**
+     * Coloca la imagen del jugador en una posicion, puede ser fraccionaria
+     *
+     * @param fila Fila (interpolada)
+     * @param columna Columna (interpolada)
+     */
+    private void actJugPos(double fila, double columna) {
         if (jugadorActual == null || jugador == null || mapaJuego == null) return;
-        
-        double pixelX = jugadorActual.getColumnaActual() * TAMANO_TILE + mapaJuego.getLayoutX();
-        double pixelY = jugadorActual.getFilaActual() * TAMANO_TILE + mapaJuego.getLayoutY();
+
+        if (renderizador != null) {
+            jugador.setTranslateX(lienzoMapa.getLayoutX() + renderizador.pantallaX(columna));
+            jugador.setTranslateY(lienzoMapa.getLayoutY() + renderizador.pantallaY(fila));
+            return;
+        }
+        double pixelX = columna * TAMANO_TILE + mapaJuego.getLayoutX();
+        double pixelY = fila * TAMANO_TILE + mapaJuego.getLayoutY();
         jugador.setTranslateX(pixelX);
         jugador.setTranslateY(pixelY);
     }
@@ -167,8 +314,44 @@ public class PantallaDeJuego {
     public void paraJuego() {
         if (bucleJuego != null) {
             bucleJuego.stop();
+            bucleJuego = null;
             System.out.println("Bucle del juego detenido.");
+            if (motor != null) System.out.println("Estadisticas del bucle: " + motor.resumen());
+            System.out.println("Atlas de tiles: " + GestorTile.getAtlas().resumen());
+        }
+        if (renderizador != null) renderizador.desconectar();
+        if (guardado != null) {
+            // El punto de control se toma aqui; escribirlo y guardar el jugador van fuera del hilo de JavaFX
+            Jugador estado = new Jugador(jugadorActual.getNombre(), jugadorActual.getEmail(), jugadorActual.getFilaActual(), jugadorActual.getColumnaActual(), jugadorActual.getPuntos());
+            boolean registrado = App.getJugadorActual() != null;
+            Sesion.esperarAlCerrar(guardado.cerrar().whenComplete((escrito, error) -> {
+                // El jugador registrado guarda tambien su posicion y puntos
+                if (registrado) Sesion.guardarJugador(estado);
+            }));
+            guardado = null;
+        }
+        control.limpiarTeclas();
+    }
+
+    /**
+     * Lo que carga cargarDatosJuego fuera del hilo de JavaFX
+     */
+    private static class DatosJuego {
+        final Escenario escenario;
+        final Jugador jugador;
+        final boolean invitado;
+
+        /**
+         * Constructor parametrizado
+         *
+         * @param escenario Escenario a jugar
+         * @param jugador Jugador, ya con la partida guardada aplicada
+         * @param invitado true si no hay jugador registrado
+         */
+        DatosJuego(Escenario escenario, Jugador jugador, boolean invitado) {
+            this.escenario = escenario;
+            this.jugador = jugador;
+            this.invitado = invitado;
         }
-        Control.limpiarTeclas();
     }
 }
\ No newline at end of file
@@ -1,11 +1,13 @@
 
 
 import javafx.fxml.FXML;
+import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import java.io.IOException;
+import Controlador.GestorEscenas;
 import Controlador.Sesion;
 import Modelo.Jugador;
 
@@ -17,7 +19,7 @@ import Modelo.Jugador;
  * @author Juan
  * @version 0.3.3
  */
-public class RegistroJugadorController {
+public class RegistroJugadorController implements GestorEscenas.CicloPantalla {
 
     @FXML private TextField txtNombre;
     @FXML private TextField txtEmail;
@@ -43,6 +45,18 @@ public class RegistroJugadorController {
         System.out.println("Inicializando RegistroJugadorController...");
     }
 
+    /**
+     * Deja el formulario limpio con el nombre escrito al iniciar sesion
+     *
+     * @param escena Escena de la pantalla
+     */
+    @Override
+    public void alMostrar(Scene escena) {
+        setNombreInicial(App.getNombreJugadorActual());
+        txtEmail.clear();
+        txtNombre.requestFocus();
+    }
+
     /**
      * Registra al nuevo jugador
      */
@@ -59,13 +73,14 @@ public class RegistroJugadorController {
 
         Jugador nuevoJugador = new Jugador(nombre, email);
 
-        boolean guardado = Sesion.guardarJugador(nuevoJugador);
-
-        if (guardado) {
-            System.out.println("Jugador '" + nombre + "' registrado y guardado.");
-            App.setJugadorActual(nuevoJugador);
-            App.mostrarPantallaDeInicio();
-        } else mostrarAlerta("Error de Registro", "No se pudo guardar el jugador. Revisa la consola.");
+        // El guardado es E/S, se hace fuera del hilo de JavaFX
+        App.getCargas().cargar("guardar jugador", () -> Sesion.guardarJugador(nuevoJugador), guardado -> {
+            if (guardado) {
+                System.out.println("Jugador '" + nombre + "' registrado y guardado.");
+                App.setJugadorActual(nuevoJugador);
+                App.mostrarPantallaDeInicio();
+            } else mostrarAlerta("Error de Registro", "No se pudo guardar el jugador. Revisa la consola.");
+        });
     }
 
     /**
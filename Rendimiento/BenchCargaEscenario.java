@@ -0,0 +1,163 @@
+package Rendimiento;
+
+import Controlador.NivelBinario;
+import Controlador.Sesion;
+import Modelo.Escenario;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmark de carga de escenarios
+ * Compara el decodificador en streaming de Sesion.leerEscenarioTexto con el
+ * binario compilado (.nvb) y con el interprete anterior (regex + concatenacion
+ * de Strings).
+ *
+ * Uso: java -cp compilados Rendimiento.BenchCargaEscenario [tamano...]
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class BenchCargaEscenario {
+
+    private static final int[] TAMANOS_DEFECTO = {100, 1000, 5000};
+    private static final int MAX_TAMANO_LEGADO = 1000;
+    private static final int REPETICIONES = 5;
+
+    /**
+     * Ejecuta el benchmark
+     *
+     * @param args Lados de los mapas cuadrados a generar
+     * @throws IOException Error al escribir los archivos temporales
+     */
+    public static void main(String[] args) throws IOException {
+        int[] tamanos = TAMANOS_DEFECTO;
+        if (args.length > 0) {
+            tamanos = new int[args.length];
+            for (int i = 0; i < args.length; i++) tamanos[i] = Integer.parseInt(args[i]);
+        }
+
+        Path directorio = Files.createTempDirectory("bench_escenarios");
+        for (int lado : tamanos) {
+            Path archivo = directorio.resolve("mapa_" + lado + ".txt");
+            generarMapa(archivo, lado, lado);
+
+            Path binario = NivelBinario.rutaCompilada(archivo);
+            NivelBinario.guardar(binario, Sesion.leerEscenarioTexto(archivo), archivo);
+
+            double nuevo = medir(() -> Sesion.leerEscenarioTexto(archivo));
+            double compilado = medir(() -> NivelBinario.cargar(binario, archivo));
+            String legado = (lado <= MAX_TAMANO_LEGADO) ? String.format("%10.2f ms", medir(() -> cargarLegado(archivo))) : "  omitido";
+            System.out.printf("%5dx%-5d streaming: %10.2f ms | binario: %10.2f ms | anterior: %s%n", lado, lado, nuevo, compilado, legado);
+            Files.deleteIfExists(archivo);
+            Files.deleteIfExists(binario);
+        }
+        Files.deleteIfExists(directorio);
+    }
+
+    /**
+     * Mejor tiempo de varias repeticiones tras un calentamiento
+     *
+     * @param carga Carga a medir
+     * @return Milisegundos de la mejor repeticion
+     */
+    private static double medir(Carga carga) {
+        Escenario e = carga.cargar();
+        if (e == null) throw new IllegalStateException("La carga devolvio null");
+        long mejor = Long.MAX_VALUE;
+        for (int i = 0; i < REPETICIONES; i++) {
+            long inicio = System.nanoTime();
+            carga.cargar();
+            mejor = Math.min(mejor, System.nanoTime() - inicio);
+        }
+        return mejor / 1_000_000.0;
+    }
+
+    /**
+     * Escribe un mapa amurallado con pilares cada 7 columnas, asi hay varias rachas por fila
+     *
+     * @param archivo Destino
+     * @param filas Filas del mapa
+     * @param columnas Columnas del mapa
+     * @throws IOException Error de escritura
+     */
+    static void generarMapa(Path archivo, int filas, int columnas) throws IOException {
+        try (BufferedWriter escritor = Files.newBufferedWriter(archivo)) {
+            escritor.write(filas + "X" + columnas);
+            escritor.newLine();
+            for (int i = 0; i < filas; i++) {
+                if (i == 0 || i == filas - 1) escritor.write(columnas + "O");
+                else {
+                    escritor.write("1O");
+                    int col = 1;
+                    while (col < columnas - 1) {
+                        int racha = Math.min(6, columnas - 1 - col);
+                        escritor.write(racha + "E");
+                        col += racha;
+                        if (col < columnas - 1) {
+                            escritor.write("1O");
+                            col++;
+                        }
+                    }
+                    escritor.write("1O");
+                }
+                escritor.newLine();
+            }
+        }
+    }
+
+    /**
+     * Copia del interprete anterior de Sesion.cargarEscenario, solo para comparar
+     *
+     * @param rutaArchivo Archivo a cargar
+     * @return El escenario o null
+     */
+    private static Escenario cargarLegado(Path rutaArchivo) {
+        List<String> lineasMapa = new ArrayList<>();
+        try (BufferedReader lector = Files.newBufferedReader(rutaArchivo)) {
+            String primeraLinea = lector.readLine();
+            if (primeraLinea == null || !primeraLinea.matches("\\d+X\\d+")) return null;
+
+            String[] dims = primeraLinea.split("X");
+            int filas = Integer.parseInt(dims[0]);
+            int columnas = Integer.parseInt(dims[1]);
+            Pattern pattern = Pattern.compile("(\\d+)([EO])");
+            for (int i = 0; i < filas; i++) {
+                String lineaRLE = lector.readLine();
+                if (lineaRLE == null) return null;
+
+                String filaDecodificada = "";
+                Matcher matcher = pattern.matcher(lineaRLE.trim());
+                int colActual = 0;
+                while (matcher.find() && colActual < columnas) {
+                    int cantidad = Integer.parseInt(matcher.group(1));
+                    char tipo = matcher.group(2).charAt(0);
+                    for (int k = 0; k < cantidad && colActual < columnas; k++) {
+                        filaDecodificada += tipo;
+                        colActual++;
+                    }
+                }
+                while (filaDecodificada.length() < columnas) filaDecodificada += "E";
+                lineasMapa.add(filaDecodificada);
+            }
+            return new Escenario(filas, columnas, lineasMapa);
+        } catch (Exception e) {return null;}
+    }
+
+    /**
+     * Carga a medir
+     */
+    private interface Carga {
+        /**
+         * @return El escenario cargado
+         */
+        Escenario cargar();
+    }
+}
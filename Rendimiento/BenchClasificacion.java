@@ -0,0 +1,197 @@
+package Rendimiento;
+
+import Controlador.Clasificacion;
+import Controlador.EscritorPuntuaciones;
+import Controlador.SQLite;
+import Modelo.Puntuacion;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Prueba de la clasificacion con muchas puntuaciones
+ * Llena una base temporal y mide la posicion y el percentil de un jugador,
+ * la puntuacion de un percentil y la paginacion por cursor, comparando con
+ * las consultas directas (COUNT sobre Puntuaciones y OFFSET).
+ *
+ * Uso: java -cp "compilados;lib\sqlite-jdbc-3.49.1.0.jar" Rendimiento.BenchClasificacion [puntuaciones] [jugadores]
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class BenchClasificacion {
+
+    private static final int CONSULTAS = 1_000;
+    private static final int PAGINA = 50;
+    private static final int PAGINAS = 200;
+
+    /**
+     * Ejecuta la prueba
+     *
+     * @param args Numero de puntuaciones y de jugadores distintos
+     * @throws IOException Error con la base temporal
+     */
+    public static void main(String[] args) throws IOException {
+        int filas = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        int jugadores = (args.length > 1) ? Integer.parseInt(args[1]) : Math.max(1, filas / 10);
+
+        Path temporal = Files.createTempFile("bench_clasificacion", ".db");
+        try {
+            SQLite.setUrlBaseDatos("jdbc:sqlite:" + temporal);
+            SQLite.setEscritor(new EscritorPuntuaciones(100_000, 20_000, 200, 60_000, EscritorPuntuaciones.Durabilidad.NORMAL));
+            SQLite.inicializarBaseDatos();
+
+            long inicio = System.nanoTime();
+            SplittableRandom azar = new SplittableRandom(3);
+            for (int i = 0; i < filas; i++) SQLite.guardarPuntuacionAsincrona("jugador" + azar.nextInt(jugadores), azar.nextInt(1_000_000));
+            SQLite.getEscritor().vaciar().join();
+            System.out.printf("%d puntuaciones de %d jugadores insertadas en %.1f s%n", filas, Clasificacion.totalJugadores(), (System.nanoTime() - inicio) / 1e9);
+
+            String[] nombres = new String[CONSULTAS];
+            for (int i = 0; i < CONSULTAS; i++) nombres[i] = "jugador" + azar.nextInt(jugadores);
+
+            inicio = System.nanoTime();
+            long suma = 0;
+            for (String nombre : nombres) suma += Clasificacion.posicion(nombre);
+            imprimir("Clasificacion.posicion", inicio, CONSULTAS, suma);
+
+            inicio = System.nanoTime();
+            double sumaPercentil = 0;
+            for (String nombre : nombres) sumaPercentil += Clasificacion.percentil(nombre);
+            imprimir("Clasificacion.percentil", inicio, CONSULTAS, (long) sumaPercentil);
+
+            inicio = System.nanoTime();
+            suma = 0;
+            for (int i = 0; i < CONSULTAS; i++) suma += Clasificacion.puntuacionEnPercentil(i % 101);
+            imprimir("Clasificacion.puntuacionEnPercentil", inicio, CONSULTAS, suma);
+
+            int directas = 10;
+            inicio = System.nanoTime();
+            suma = 0;
+            for (int i = 0; i < directas; i++) suma += posicionDirecta(nombres[i]);
+            imprimir("posicion con COUNT (sin tablas de conteo)", inicio, directas, suma);
+            long sumaConteo = 0;
+            for (int i = 0; i < directas; i++) sumaConteo += Clasificacion.posicion(nombres[i]);
+            System.out.println("  las posiciones " + (sumaConteo == suma ? "coinciden" : "NO coinciden") + " con las calculadas con COUNT");
+
+            paginas(PAGINAS, 0);
+            paginas(PAGINAS, 0);
+            // A mitad de la tabla: OFFSET tiene que recorrer todas las filas anteriores
+            paginas(PAGINAS / 10, filas / 2);
+
+            inicio = System.nanoTime();
+            Puntuacion ultima = null;
+            suma = 0;
+            for (int i = 0; i < PAGINAS; i++) {
+                List<Puntuacion> pagina = Clasificacion.paginaJugadores(ultima, PAGINA);
+                suma += pagina.size();
+                if (!pagina.isEmpty()) ultima = pagina.get(pagina.size() - 1);
+            }
+            imprimir("Clasificacion.paginaJugadores (" + PAGINAS + " paginas)", inicio, PAGINAS, suma);
+        } finally {
+            SQLite.setEscritor(null);
+            SQLite.setUrlBaseDatos(null);
+            Files.deleteIfExists(temporal);
+            Files.deleteIfExists(Path.of(temporal + "-wal"));
+            Files.deleteIfExists(Path.of(temporal + "-shm"));
+        }
+    }
+
+    /**
+     * Recorre paginas seguidas con cursor y con OFFSET
+     *
+     * @param veces Paginas a recorrer
+     * @param desde Filas por delante de la primera pagina
+     */
+    private static void paginas(int veces, int desde) {
+        Clasificacion.Cursor cursor = Clasificacion.cursorTras(desde);
+
+        long inicio = System.nanoTime();
+        long suma = 0;
+        List<String> conCursor = new ArrayList<>(veces * PAGINA);
+        for (int i = 0; i < veces; i++) {
+            Clasificacion.Pagina pagina = Clasificacion.pagina(cursor, PAGINA);
+            suma += pagina.getFilas().get(0).getPuntuacion();
+            for (Puntuacion fila : pagina.getFilas()) conCursor.add(fila.toString());
+            cursor = pagina.getSiguiente();
+        }
+        imprimir("Clasificacion.pagina (cursor, desde " + desde + ")", inicio, veces, suma);
+
+        inicio = System.nanoTime();
+        suma = 0;
+        List<String> conOffset = new ArrayList<>(veces * PAGINA);
+        for (int i = 0; i < veces; i++) {
+            List<Puntuacion> pagina = paginaOffset(desde + i * PAGINA);
+            suma += pagina.get(0).getPuntuacion();
+            for (Puntuacion fila : pagina) conOffset.add(fila.toString());
+        }
+        imprimir("pagina con OFFSET (desde " + desde + ")", inicio, veces, suma);
+        System.out.println("  las filas " + (conCursor.equals(conOffset) ? "coinciden" : "NO coinciden") + " con las de OFFSET");
+    }
+
+    /**
+     * Posicion contando directamente sobre Puntuaciones, para comparar
+     *
+     * @param nombre Nombre del jugador
+     * @return Posicion desde 1
+     */
+    private static long posicionDirecta(String nombre) {
+        String sql = """
+                SELECT 1 + COUNT(*) FROM (SELECT nombre FROM Puntuaciones GROUP BY nombre
+                HAVING MAX(puntuacion) > (SELECT MAX(puntuacion) FROM Puntuaciones WHERE nombre = ?))""";
+        synchronized (SQLite.class) {
+            try {
+                PreparedStatement consulta = SQLite.getConexion().preparar(sql);
+                consulta.setString(1, nombre);
+                try (ResultSet r = consulta.executeQuery()) {return r.next() ? r.getLong(1) : -1;}
+            } catch (SQLException e) {
+                System.err.println("Error en la posicion directa: " + e.getMessage());
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Pagina con LIMIT/OFFSET, para comparar
+     *
+     * @param desde Filas que se saltan
+     * @return Filas de la pagina
+     */
+    private static List<Puntuacion> paginaOffset(int desde) {
+        String sql = "SELECT nombre, puntuacion FROM Puntuaciones ORDER BY puntuacion DESC, id LIMIT " + PAGINA + " OFFSET ?";
+        synchronized (SQLite.class) {
+            try {
+                PreparedStatement consulta = SQLite.getConexion().preparar(sql);
+                consulta.setInt(1, desde);
+                List<Puntuacion> filas = new ArrayList<>(PAGINA);
+                try (ResultSet r = consulta.executeQuery()) {
+                    while (r.next()) filas.add(new Puntuacion(r.getString(1), r.getInt(2)));
+                }
+                return filas;
+            } catch (SQLException e) {
+                System.err.println("Error en la pagina con OFFSET: " + e.getMessage());
+                return List.of();
+            }
+        }
+    }
+
+    /**
+     * Muestra el tiempo medio de una serie de consultas
+     *
+     * @param nombre Nombre de la consulta
+     * @param inicio System.nanoTime() al empezar
+     * @param veces Consultas hechas
+     * @param control Suma de los resultados, para que no se descarten
+     */
+    private static void imprimir(String nombre, long inicio, int veces, long control) {
+        double ms = (System.nanoTime() - inicio) / 1e6;
+        System.out.printf("%-50s %10.3f ms/consulta (control %d)%n", nombre, ms / veces, control);
+    }
+}
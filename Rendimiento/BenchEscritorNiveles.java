@@ -0,0 +1,246 @@
+package Rendimiento;
+
+import Controlador.EscritorNiveles;
+import Controlador.GeneradorMazmorras;
+import Controlador.NivelBinario;
+import Controlador.Sesion;
+import Modelo.Escenario;
+import Modelo.EscenarioPaginado;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark del guardado de escenarios en texto
+ * Primero comprueba ida y vuelta: lo que escribe EscritorNiveles se vuelve a
+ * leer con Sesion.leerEscenarioTexto y con el .nvb y tiene que dar los mismos
+ * tiles (mapas minimos, mazmorras con tiles cambiados, ruido y un escenario
+ * paginado), que el mapa por defecto sale byte a byte como antes y que un
+ * tile que el texto no admite no estropea el archivo que ya habia.
+ * Despues mide el guardado de mapas grandes con 1 hilo, con el pool comun y
+ * con la forma anterior (un String por fila y BufferedWriter).
+ *
+ * Uso: java -cp compilados Rendimiento.BenchEscritorNiveles [lado...]
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class BenchEscritorNiveles {
+
+    private static final int[] TAMANOS_DEFECTO = {1000, 5000};
+    private static final int REPETICIONES = 3;
+
+    private static int fallos = 0;
+
+    /**
+     * Ejecuta el benchmark
+     *
+     * @param args Lados de los mapas cuadrados a medir
+     * @throws IOException Error con los archivos temporales
+     */
+    public static void main(String[] args) throws IOException {
+        int[] tamanos = TAMANOS_DEFECTO;
+        if (args.length > 0) {
+            tamanos = new int[args.length];
+            for (int i = 0; i < args.length; i++) tamanos[i] = Integer.parseInt(args[i]);
+        }
+
+        Path directorio = Files.createTempDirectory("bench_escritor");
+        try {
+            Sesion.setDirectorioBase(directorio);
+            Files.createDirectories(directorio.resolve("escenarios"));
+            idaYVuelta(directorio.resolve("escenarios"));
+            System.out.println((fallos == 0) ? "Ida y vuelta: todo correcto." : "Ida y vuelta: " + fallos + " FALLOS.");
+
+            ForkJoinPool unHilo = new ForkJoinPool(1);
+            for (int lado : tamanos) {
+                Escenario mazmorra = new GeneradorMazmorras(lado, lado, lado).generarEnMemoria(ForkJoinPool.commonPool());
+                Escenario ruido = ruido(lado, lado, lado);
+                for (Escenario escenario : new Escenario[] {mazmorra, ruido}) {
+                    String tipo = (escenario == mazmorra) ? "mazmorra" : "ruido";
+                    Path archivo = directorio.resolve(tipo + "_" + lado + ".txt");
+                    double secuencial = medir(() -> EscritorNiveles.guardar(escenario, archivo, unHilo, false));
+                    double paralelo = medir(() -> EscritorNiveles.guardar(escenario, archivo, ForkJoinPool.commonPool(), false));
+                    double megas = Files.size(archivo) / 1e6;
+                    double anterior = medir(() -> guardarAnterior(escenario, archivo));
+                    System.out.printf("%-8s %5dx%-5d %7.1f MB | 1 hilo: %8.1f ms (%6.1f MB/s) | pool (%d): %8.1f ms (%6.1f MB/s) | anterior: %8.1f ms%n",
+                            tipo, lado, lado, megas, secuencial, megas / secuencial * 1000, ForkJoinPool.commonPool().getParallelism(),
+                            paralelo, megas / paralelo * 1000, anterior);
+                    Files.deleteIfExists(archivo);
+                }
+            }
+            unHilo.shutdown();
+        } finally {
+            Sesion.setDirectorioBase(null);
+            try (var archivos = Files.walk(directorio)) {
+                for (Path archivo : (Iterable<Path>) archivos.sorted((a, b) -> b.compareTo(a))::iterator) Files.deleteIfExists(archivo);
+            }
+        }
+    }
+
+    /**
+     * Comprobaciones de ida y vuelta
+     *
+     * @param carpeta Carpeta escenarios del directorio temporal
+     * @throws IOException Error con los archivos
+     */
+    private static void idaYVuelta(Path carpeta) throws IOException {
+        // El mapa por defecto tiene que salir igual que con el codigo anterior
+        Sesion.crearEscenarios(9);
+        String esperado = "8X10\n10O\n" + "1O8E1O\n".repeat(6) + "10O\n";
+        comprobar("nivel por defecto", Files.readString(carpeta.resolve("nivel_default9.txt")).equals(esperado));
+
+        comprobarIdaYVuelta("1x1", ruido(1, 1, 1), carpeta);
+        comprobarIdaYVuelta("1x777", ruido(1, 777, 2), carpeta);
+        comprobarIdaYVuelta("777x1", ruido(777, 1, 3), carpeta);
+        comprobarIdaYVuelta("ruido 600x900", ruido(600, 900, 4), carpeta);
+        // Mas columnas que tiles por bloque: un bloque por fila
+        comprobarIdaYVuelta("3x1100000", ruido(3, 1_100_000, 5), carpeta);
+
+        Escenario mazmorra = new GeneradorMazmorras(11, 1200, 1500).generarEnMemoria(ForkJoinPool.commonPool());
+        SplittableRandom azar = new SplittableRandom(6);
+        for (int i = 0; i < 10_000; i++) mazmorra.setTile(azar.nextInt(1200), azar.nextInt(1500), azar.nextBoolean() ? 'E' : 'O');
+        comprobarIdaYVuelta("mazmorra con setTile", mazmorra, carpeta);
+
+        // Paginado: se guarda con sus cambios en memoria y se compara con la misma edicion en plano
+        Path origen = carpeta.resolve("paginado.txt");
+        new GeneradorMazmorras(12, 700, 900).generar(origen, true, ForkJoinPool.commonPool());
+        Escenario plano = Sesion.leerEscenarioTexto(origen);
+        try (EscenarioPaginado paginado = Sesion.cargarEscenarioPaginado("paginado.txt", 16)) {
+            for (int i = 0; i < 500; i++) {
+                int f = azar.nextInt(700), c = azar.nextInt(900);
+                char tipo = azar.nextBoolean() ? 'E' : 'O';
+                paginado.setTile(f, c, tipo);
+                plano.setTile(f, c, tipo);
+            }
+            Path destino = carpeta.resolve("paginado_guardado.txt");
+            comprobar("paginado guardado", EscritorNiveles.guardar(paginado, destino));
+            comprobar("paginado releido", iguales(plano, Sesion.leerEscenarioTexto(destino)));
+            comprobar("paginado .nvb", iguales(plano, NivelBinario.cargar(NivelBinario.rutaCompilada(destino), destino)));
+            comprobar("paginado acotado", paginado.getChunksResidentes() <= 16 && paginado.getBandasMapeadas() <= EscenarioPaginado.MAX_BANDAS_MAPEADAS
+                    && paginado.getChunksEnCambios() > 0);
+        }
+
+        // Un tile que el texto no sabe escribir: falla y deja el archivo anterior
+        Path existente = carpeta.resolve("nivel_default9.txt");
+        Escenario conJugador = Sesion.leerEscenarioTexto(existente).copia();
+        conJugador.setTile(3, 3, 'P');
+        comprobar("tile no admitido rechazado", !EscritorNiveles.guardar(conJugador, existente));
+        boolean sinTemporales;
+        try (Stream<Path> archivos = Files.list(carpeta)) {sinTemporales = archivos.noneMatch(a -> a.toString().endsWith(".tmp"));}
+        comprobar("archivo anterior intacto", Files.readString(existente).equals(esperado) && sinTemporales);
+    }
+
+    /**
+     * Guarda, relee por texto y por .nvb y compara
+     *
+     * @param nombre Nombre del caso
+     * @param escenario Escenario a guardar
+     * @param carpeta Carpeta temporal
+     */
+    private static void comprobarIdaYVuelta(String nombre, Escenario escenario, Path carpeta) {
+        Path archivo = carpeta.resolve("ida_y_vuelta.txt");
+        comprobar(nombre + " guardado", EscritorNiveles.guardar(escenario, archivo));
+        comprobar(nombre + " releido", iguales(escenario, Sesion.leerEscenarioTexto(archivo)));
+        comprobar(nombre + " .nvb", iguales(escenario, NivelBinario.cargar(NivelBinario.rutaCompilada(archivo), archivo)));
+    }
+
+    /**
+     * Compara dos escenarios tile a tile
+     *
+     * @param a Uno
+     * @param b Otro, puede ser null
+     * @return true si tienen las mismas medidas y tiles
+     */
+    private static boolean iguales(Escenario a, Escenario b) {
+        if (b == null || a.getFilas() != b.getFilas() || a.getColumnas() != b.getColumnas()) return false;
+        char[] filaA = new char[a.getColumnas()], filaB = new char[b.getColumnas()];
+        for (int f = 0; f < a.getFilas(); f++) {
+            a.copiarFila(f, filaA, 0);
+            b.copiarFila(f, filaB, 0);
+            if (!Arrays.equals(filaA, filaB)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Apunta el resultado de una comprobacion; solo se muestran los fallos
+     *
+     * @param caso Nombre de la comprobacion
+     * @param correcto Resultado
+     */
+    private static void comprobar(String caso, boolean correcto) {
+        if (correcto) return;
+        fallos++;
+        System.out.println("FALLO: " + caso);
+    }
+
+    /**
+     * Mapa de 'E' y 'O' al azar, el peor caso para RLE
+     *
+     * @param filas Filas
+     * @param columnas Columnas
+     * @param semilla Semilla
+     * @return El escenario
+     */
+    private static Escenario ruido(int filas, int columnas, long semilla) {
+        SplittableRandom azar = new SplittableRandom(semilla);
+        byte e = Escenario.indiceBase('E'), o = Escenario.indiceBase('O');
+        byte[] tiles = new byte[filas * columnas];
+        for (int i = 0; i < tiles.length; i++) tiles[i] = azar.nextBoolean() ? e : o;
+        return new Escenario(filas, columnas, tiles, Escenario.paletaBase());
+    }
+
+    /**
+     * La forma anterior de escribir un mapa: un String por fila y BufferedWriter
+     *
+     * @param escenario Escenario
+     * @param archivo Destino
+     * @return true si se escribio
+     */
+    private static boolean guardarAnterior(Escenario escenario, Path archivo) {
+        try (BufferedWriter escritor = Files.newBufferedWriter(archivo)) {
+            escritor.write(escenario.getFilas() + "X" + escenario.getColumnas());
+            escritor.newLine();
+            for (int f = 0; f < escenario.getFilas(); f++) {
+                StringBuilder fila = new StringBuilder();
+                int c = 0;
+                while (c < escenario.getColumnas()) {
+                    char tipo = escenario.getTile(f, c);
+                    int fin = c;
+                    while (fin < escenario.getColumnas() && escenario.getTile(f, fin) == tipo) fin++;
+                    fila.append(fin - c).append(tipo);
+                    c = fin;
+                }
+                escritor.write(fila.toString());
+                escritor.newLine();
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Mejor tiempo de varias repeticiones
+     *
+     * @param tarea Guardado a medir
+     * @return Milisegundos
+     */
+    private static double medir(BooleanSupplier tarea) {
+        double mejor = Double.MAX_VALUE;
+        for (int i = 0; i < REPETICIONES; i++) {
+            long inicio = System.nanoTime();
+            if (!tarea.getAsBoolean()) System.out.println("FALLO al guardar");
+            mejor = Math.min(mejor, (System.nanoTime() - inicio) / 1e6);
+        }
+        return mejor;
+    }
+}
@@ -0,0 +1,135 @@
+package Rendimiento;
+
+import Controlador.GeneradorMazmorras;
+import Controlador.NivelBinario;
+import Controlador.Sesion;
+import Modelo.Escenario;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmark del generador de mazmorras
+ * Primero comprueba con un mapa mediano que el resultado no depende del
+ * numero de hilos, que todo el suelo es alcanzable desde (1,1) y que el .txt
+ * y el .nvb escritos se leen igual que el mapa generado en memoria. Despues
+ * genera el mapa grande a disco con 1 hilo y con todos, y apunta el tiempo
+ * y la memoria usada.
+ *
+ * Uso: java -cp compilados Rendimiento.BenchMazmorras [lado] [semilla]
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class BenchMazmorras {
+
+    private static final int LADO_DEFECTO = 10_000;
+    private static final int LADO_COMPROBACION = 1000;
+
+    /**
+     * Ejecuta el benchmark
+     *
+     * @param args Lado del mapa grande y semilla
+     * @throws IOException Error con los archivos temporales
+     */
+    public static void main(String[] args) throws IOException {
+        int lado = (args.length > 0) ? Integer.parseInt(args[0]) : LADO_DEFECTO;
+        long semilla = (args.length > 1) ? Long.parseLong(args[1]) : 42L;
+        Path directorio = Files.createTempDirectory("bench_mazmorras");
+        try {
+            comprobar(directorio, semilla);
+            Path archivo = directorio.resolve("mazmorra_" + lado + ".txt");
+            int nucleos = Runtime.getRuntime().availableProcessors();
+            for (int hilos : (nucleos > 1) ? new int[] {1, nucleos} : new int[] {1}) {
+                ForkJoinPool pool = new ForkJoinPool(hilos);
+                Runtime entorno = Runtime.getRuntime();
+                System.gc();
+                long memoriaAntes = entorno.totalMemory() - entorno.freeMemory();
+                long inicio = System.nanoTime();
+                boolean ok = new GeneradorMazmorras(semilla, lado, lado).generar(archivo, true, pool);
+                double ms = (System.nanoTime() - inicio) / 1e6;
+                long memoriaDespues = entorno.totalMemory() - entorno.freeMemory();
+                pool.shutdown();
+                System.out.printf("%dx%d con %2d hilos: %s en %8.1f ms | txt %6.1f MB | heap +%.1f MB%n", lado, lado, hilos, ok ? "ok" : "FALLO", ms,
+                        Files.size(archivo) / 1e6, Math.max(0, memoriaDespues - memoriaAntes) / 1e6);
+            }
+        } finally {
+            try (var archivos = Files.list(directorio)) {
+                for (Path archivo : (Iterable<Path>) archivos::iterator) Files.deleteIfExists(archivo);
+            }
+            Files.deleteIfExists(directorio);
+        }
+    }
+
+    /**
+     * Comprobaciones con un mapa mediano
+     *
+     * @param directorio Carpeta temporal
+     * @param semilla Semilla del generador
+     */
+    private static void comprobar(Path directorio, long semilla) {
+        GeneradorMazmorras generador = new GeneradorMazmorras(semilla, LADO_COMPROBACION + 7, LADO_COMPROBACION + 13);
+        ForkJoinPool unHilo = new ForkJoinPool(1);
+        Escenario secuencial = generador.generarEnMemoria(unHilo);
+        Escenario paralelo = generador.generarEnMemoria(ForkJoinPool.commonPool());
+        unHilo.shutdown();
+        System.out.println("Mismo mapa con 1 hilo y con varios: " + Arrays.equals(tiles(secuencial), tiles(paralelo)));
+
+        int[] cuenta = alcanzables(paralelo);
+        System.out.println("Suelo alcanzable desde (1,1): " + cuenta[0] + " de " + cuenta[1] + (cuenta[0] == cuenta[1] ? " (conexa)" : " (NO CONEXA)"));
+
+        Path archivo = directorio.resolve("comprobacion.txt");
+        generador.generar(archivo, true, ForkJoinPool.commonPool());
+        Escenario texto = Sesion.leerEscenarioTexto(archivo);
+        Escenario binario = NivelBinario.cargar(NivelBinario.rutaCompilada(archivo), archivo);
+        System.out.println("El .txt coincide: " + (texto != null && Arrays.equals(tiles(texto), tiles(paralelo)))
+                + " | el .nvb coincide: " + (binario != null && Arrays.equals(tiles(binario), tiles(paralelo))));
+    }
+
+    /**
+     * Tiles de un escenario en un array
+     *
+     * @param escenario Escenario
+     * @return Indices de paleta fila a fila
+     */
+    private static byte[] tiles(Escenario escenario) {
+        byte[] tiles = new byte[escenario.getFilas() * escenario.getColumnas()];
+        escenario.copiarFilas(0, escenario.getFilas(), tiles, 0);
+        return tiles;
+    }
+
+    /**
+     * Recorre en anchura el suelo desde (1,1)
+     *
+     * @param escenario Mapa generado
+     * @return {tiles alcanzados, tiles transitables}
+     */
+    private static int[] alcanzables(Escenario escenario) {
+        int filas = escenario.getFilas(), columnas = escenario.getColumnas();
+        boolean[] visto = new boolean[filas * columnas];
+        int[] cola = new int[filas * columnas];
+        int leidos = 0, escritos = 0;
+        if (escenario.esTransitable(1, 1)) {
+            cola[escritos++] = columnas + 1;
+            visto[columnas + 1] = true;
+        }
+        int[][] pasos = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+        while (leidos < escritos) {
+            int actual = cola[leidos++];
+            int fila = actual / columnas, columna = actual % columnas;
+            for (int[] paso : pasos) {
+                int f = fila + paso[0], c = columna + paso[1];
+                if (!escenario.esTransitable(f, c) || visto[f * columnas + c]) continue;
+                visto[f * columnas + c] = true;
+                cola[escritos++] = f * columnas + c;
+            }
+        }
+        int transitables = 0;
+        for (int f = 0; f < filas; f++)
+            for (int c = 0; c < columnas; c++) if (escenario.esTransitable(f, c)) transitables++;
+        return new int[] {escritos, transitables};
+    }
+}
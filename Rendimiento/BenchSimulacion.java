@@ -0,0 +1,52 @@
+package Rendimiento;
+
+import Controlador.MotorSesion;
+import Controlador.MotorSimulacion;
+import Controlador.Sesion;
+import Modelo.Escenario;
+import java.util.List;
+
+/**
+ * Prueba de carga de la simulacion sin interfaz
+ * Simula muchas sesiones con bots en todos los nucleos y muestra sesiones/s
+ * y ticks/s.
+ *
+ * Uso: java -cp compilados Rendimiento.BenchSimulacion [sesiones] [ticks] [nivel]
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+public class BenchSimulacion {
+
+    private static final int RONDAS = 5;
+
+    /**
+     * Ejecuta la prueba
+     *
+     * @param args Sesiones, ticks por sesion y nivel de escenarios/
+     */
+    public static void main(String[] args) {
+        int sesiones = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        int ticks = (args.length > 1) ? Integer.parseInt(args[1]) : 3_600;
+        String nivel = (args.length > 2) ? args[2] : "nivel_default0.txt";
+
+        Escenario base = Sesion.cargarEscenario(nivel);
+        if (base == null) {
+            System.err.println("No se pudo cargar el escenario " + nivel);
+            return;
+        }
+
+        MotorSimulacion motor = new MotorSimulacion();
+        System.out.println("Hilos: " + motor.getHilos() + " | Escenario: " + base.getFilas() + "x" + base.getColumnas());
+        try {
+            for (int ronda = 0; ronda < RONDAS; ronda++) {
+                List<MotorSesion> lote = MotorSimulacion.crearSesionesBot(base, sesiones, ronda);
+                MotorSimulacion.Resultado resultado = motor.ejecutar(lote, ticks);
+                System.out.println((ronda == 0 ? "calentamiento: " : "ronda " + ronda + ":      ") + resultado);
+            }
+        } finally {
+            motor.cerrar();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package Rendimiento;
+
+import Controlador.SQLite;
+import Modelo.Puntuacion;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insercion y top 10 de SQLite contra una base temporal. JMH ejecuta cada
+ * benchmark en su propio JVM, asi que cada uno empieza con su base.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BaseDatosJmh {
+
+    private static final int FILAS_TOP = 1000;
+
+    private Path temporal;
+    private int contador = 0;
+
+    /**
+     * Base nueva con FILAS_TOP puntuaciones
+     *
+     * @throws IOException Error al crear la carpeta
+     */
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        DatosJmh.silenciar();
+        temporal = Files.createTempDirectory("jmh_sqlite");
+        SQLite.setUrlBaseDatos("jdbc:sqlite:" + temporal.resolve("puntuaciones.db"));
+        SQLite.inicializarBaseDatos();
+        SplittableRandom azar = new SplittableRandom(7);
+        for (int i = 0; i < FILAS_TOP; i++) SQLite.guardarPuntuacionAsincrona("jugador" + (i % 100), azar.nextInt(100_000));
+        SQLite.getEscritor().vaciar().join();
+        SQLite.getClasificacion().calentar();
+    }
+
+    /**
+     * Vacia el escritor, cierra la base y borra la carpeta
+     *
+     * @throws IOException Error al borrar
+     */
+    @TearDown(Level.Trial)
+    public void terminar() throws IOException {
+        SQLite.getEscritor().vaciar().join();
+        SQLite.cerrar();
+        SQLite.setUrlBaseDatos(null);
+        DatosJmh.borrar(temporal);
+        DatosJmh.restaurar();
+    }
+
+    /**
+     * @return true si se inserto
+     */
+    @Benchmark
+    public boolean guardarPuntuacion() {return SQLite.guardarPuntuacion("bench", contador++);}
+
+    /**
+     * @return true si se encolo
+     */
+    @Benchmark
+    public boolean guardarPuntuacionAsincrona() {return SQLite.guardarPuntuacionAsincrona("bench", contador++);}
+
+    /**
+     * @return Las 10 mejores, de la base
+     */
+    @Benchmark
+    public List<Puntuacion> obtenerMejoresPuntuaciones() {return SQLite.obtenerMejoresPuntuaciones();}
+
+    /**
+     * @return Las mejores, de la cache en memoria
+     */
+    @Benchmark
+    public List<Puntuacion> clasificacionEnMemoria() {return SQLite.getClasificacion().obtener();}
+}
@@ -0,0 +1,96 @@
+package Rendimiento;
+
+import Controlador.RepositorioNiveles;
+import Controlador.Sesion;
+import Modelo.Escenario;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Carga de escenarios a varios tamanos: Sesion.cargarEscenario (con su .nvb),
+ * el decodificador de texto solo y un acierto del repositorio de niveles.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CargaEscenarioJmh {
+
+    @Param({"100", "500", "2000"})
+    public int lado;
+
+    private Path temporal;
+    private Path archivo;
+    private RepositorioNiveles repositorio;
+
+    /**
+     * Genera el mapa y deja el .nvb y el repositorio preparados
+     *
+     * @throws IOException Error al generar el mapa
+     */
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        DatosJmh.silenciar();
+        temporal = Files.createTempDirectory("jmh_carga");
+        Sesion.setDirectorioBase(temporal);
+        archivo = Files.createDirectories(temporal.resolve("escenarios")).resolve("mapa_" + lado + ".txt");
+        BenchCargaEscenario.generarMapa(archivo, lado, lado);
+        Sesion.cargarEscenario(archivo);
+        repositorio = new RepositorioNiveles(Sesion::cargarEscenario, RepositorioNiveles.PESO_MAXIMO_DEFECTO);
+        repositorio.obtener(archivo);
+    }
+
+    /**
+     * Borra la carpeta temporal
+     *
+     * @throws IOException Error al borrar
+     */
+    @TearDown(Level.Trial)
+    public void terminar() throws IOException {
+        Sesion.setDirectorioBase(null);
+        DatosJmh.borrar(temporal);
+        DatosJmh.restaurar();
+    }
+
+    /**
+     * La ruta directa siempre va a disco; por nombre pasaria por el repositorio
+     * @return Escenario cargado
+     */
+    @Benchmark
+    public Escenario cargarEscenario() {return Sesion.cargarEscenario(archivo);}
+
+    /**
+     * Solo el decodificador de texto, sin .nvb
+     * @return Escenario leido
+     */
+    @Benchmark
+    public Escenario leerEscenarioTexto() {return Sesion.leerEscenarioTexto(archivo);}
+
+    /**
+     * Nivel ya en memoria: se mide la copia que se entrega
+     * @return Copia del escenario
+     */
+    @Benchmark
+    public Escenario repositorioAcierto() {return repositorio.obtener(archivo);}
+}
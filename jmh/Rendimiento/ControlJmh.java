@@ -0,0 +1,64 @@
+package Rendimiento;
+
+import Controlador.Control;
+import Modelo.Escenario;
+import Modelo.Jugador;
+import java.util.concurrent.TimeUnit;
+import javafx.scene.input.KeyCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Control.mov con distintas teclas pulsadas; el jugador vuelve a su sitio
+ * antes de cada movimiento.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControlJmh {
+
+    @Param({"ninguna", "W", "SD", "WASD", "A_contra_muro"})
+    public String teclas;
+
+    private final Escenario escenario = new Escenario(100, 100, DatosJmh.matrizMapa(100));
+    private final Jugador jugador = new Jugador("bench", "", 3, 3, 0);
+    private final Control control = new Control();
+    private int columnaInicial;
+
+    /**
+     * Pulsa las teclas del caso. Junto a la columna 0 (muro) la A choca.
+     */
+    @Setup(Level.Trial)
+    public void preparar() {
+        columnaInicial = teclas.equals("A_contra_muro") ? 1 : 3;
+        for (char tecla : teclas.replace("_contra_muro", "").replace("ninguna", "").toCharArray())
+            control.agregarTecla(KeyCode.getKeyCode(String.valueOf(tecla)));
+    }
+
+    /**
+     * @return true si el jugador se movio
+     */
+    @Benchmark
+    public boolean mov() {
+        jugador.setFilaActual(3);
+        jugador.setColumnaActual(columnaInicial);
+        return control.mov(jugador, escenario);
+    }
+}
@@ -0,0 +1,71 @@
+package Rendimiento;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Utilidades comunes de los benchmarks JMH: mapas de prueba, carpetas
+ * temporales y la consola del JVM del benchmark.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+class DatosJmh {
+
+    private static PrintStream salidaOriginal;
+
+    /**
+     * Mapa amurallado con pilares, igual que el de BenchCargaEscenario
+     *
+     * @param lado Lado del mapa
+     * @return La matriz de caracteres
+     */
+    static char[][] matrizMapa(int lado) {
+        char[][] matriz = new char[lado][lado];
+        for (int f = 0; f < lado; f++)
+            for (int c = 0; c < lado; c++) {
+                boolean borde = f == 0 || c == 0 || f == lado - 1 || c == lado - 1;
+                matriz[f][c] = (borde || (f > 0 && c % 7 == 0)) ? 'O' : 'E';
+            }
+        return matriz;
+    }
+
+    /**
+     * Descarta System.out. Solo se llama desde el @Setup de un benchmark, que
+     * JMH ejecuta en un JVM propio: las rutas medidas escriben una linea por
+     * operacion y llenarian la consola de Gradle.
+     */
+    static synchronized void silenciar() {
+        if (salidaOriginal != null) return;
+        salidaOriginal = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Devuelve System.out a como estaba antes de silenciar()
+     */
+    static synchronized void restaurar() {
+        if (salidaOriginal == null) return;
+        System.setOut(salidaOriginal);
+        salidaOriginal = null;
+    }
+
+    /**
+     * Borra una carpeta temporal y su contenido
+     *
+     * @param carpeta Carpeta a borrar
+     * @throws IOException Error al borrar
+     */
+    static void borrar(Path carpeta) throws IOException {
+        if (carpeta == null) return;
+        try (Stream<Path> rutas = Files.walk(carpeta)) {
+            for (Path ruta : (Iterable<Path>) rutas.sorted(Comparator.reverseOrder())::iterator) Files.deleteIfExists(ruta);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package Rendimiento;
+
+import Modelo.Escenario;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Constructores de Escenario a varios tamanos y getTile en orden y al azar
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscenarioJmh {
+
+    private static final int ACCESOS_ALEATORIOS = 1 << 16;
+
+    @Param({"100", "1000"})
+    public int lado;
+
+    private char[][] matriz;
+    private List<String> lineas;
+    private Escenario escenario;
+    private int[] filas;
+    private int[] columnas;
+
+    /**
+     * Prepara el mapa en los dos formatos de entrada y las posiciones al azar
+     */
+    @Setup(Level.Trial)
+    public void preparar() {
+        matriz = DatosJmh.matrizMapa(lado);
+        lineas = new ArrayList<>(lado);
+        for (char[] fila : matriz) lineas.add(new String(fila));
+        escenario = new Escenario(lado, lado, matriz);
+
+        filas = new int[ACCESOS_ALEATORIOS];
+        columnas = new int[ACCESOS_ALEATORIOS];
+        SplittableRandom azar = new SplittableRandom(42);
+        for (int i = 0; i < ACCESOS_ALEATORIOS; i++) {
+            filas[i] = azar.nextInt(lado);
+            columnas[i] = azar.nextInt(lado);
+        }
+    }
+
+    /**
+     * @return Escenario construido desde char[][]
+     */
+    @Benchmark
+    public Escenario constructorMatriz() {return new Escenario(lado, lado, matriz);}
+
+    /**
+     * @return Escenario construido desde List&lt;String&gt;
+     */
+    @Benchmark
+    public Escenario constructorLista() {return new Escenario(lado, lado, lineas);}
+
+    /**
+     * Todo el mapa en orden de filas; cada operacion es el mapa entero
+     *
+     * @param sumidero Consume cada tile
+     */
+    @Benchmark
+    public void getTileSecuencial(Blackhole sumidero) {
+        for (int f = 0; f < lado; f++)
+            for (int c = 0; c < lado; c++) sumidero.consume(escenario.getTile(f, c));
+    }
+
+    /**
+     * 65536 tiles al azar; cada operacion son todos
+     *
+     * @param sumidero Consume cada tile
+     */
+    @Benchmark
+    public void getTileAleatorio(Blackhole sumidero) {
+        for (int i = 0; i < ACCESOS_ALEATORIOS; i++) sumidero.consume(escenario.getTile(filas[i], columnas[i]));
+    }
+}
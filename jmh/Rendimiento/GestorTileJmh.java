@@ -0,0 +1,64 @@
+package Rendimiento;
+
+import Controlador.GestorTile;
+import java.util.concurrent.TimeUnit;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GestorTile.getTileImage con un codigo del atlas (acierto) y con uno que no
+ * esta (fallo). Lee dungeon_tiles.png y tiles.atlas de la carpeta de trabajo,
+ * que con "gradle jmh" es la raiz del proyecto. Las Image necesitan el
+ * toolkit de JavaFX, asi que hace falta un entorno grafico.
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GestorTileJmh {
+
+    /**
+     * Arranca JavaFX y carga el atlas antes de medir; sin tiles no hay nada que medir
+     */
+    @Setup(Level.Trial)
+    public void preparar() {
+        Platform.startup(() -> {});
+        if (GestorTile.getAtlas().getTilesCargados() == 0) throw new IllegalStateException("No se cargo ningun tile de dungeon_tiles.png");
+    }
+
+    /**
+     * Para el toolkit de JavaFX
+     */
+    @TearDown(Level.Trial)
+    public void terminar() {Platform.exit();}
+
+    /**
+     * @return Imagen del suelo
+     */
+    @Benchmark
+    public Image acierto() {return GestorTile.getTileImage('E');}
+
+    /**
+     * @return Imagen por defecto de un codigo desconocido
+     */
+    @Benchmark
+    public Image fallo() {return GestorTile.getTileImage('Z');}
+}
@@ -0,0 +1,77 @@
+package Rendimiento;
+
+import Controlador.Sesion;
+import Modelo.Jugador;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Guardado y carga de jugadores en una carpeta de datos temporal
+ *
+ * @author Santiago
+ * @author Juan
+ * @version 0.3.3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JugadoresJmh {
+
+    private final Jugador jugador = new Jugador("bench", "bench@correo.es", 10, 20, 300);
+    private Path temporal;
+
+    /**
+     * Carpeta de datos vacia con el jugador ya guardado una vez
+     *
+     * @throws IOException Error al crear la carpeta
+     */
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        DatosJmh.silenciar();
+        temporal = Files.createTempDirectory("jmh_jugadores");
+        Sesion.setDirectorioBase(temporal);
+        Sesion.guardarJugador(jugador);
+    }
+
+    /**
+     * Cierra el almacen y borra la carpeta
+     *
+     * @throws IOException Error al borrar
+     */
+    @TearDown(Level.Trial)
+    public void terminar() throws IOException {
+        Sesion.cerrar();
+        Sesion.setDirectorioBase(null);
+        DatosJmh.borrar(temporal);
+        DatosJmh.restaurar();
+    }
+
+    /**
+     * @return true si se guardo
+     */
+    @Benchmark
+    public boolean guardarJugador() {return Sesion.guardarJugador(jugador);}
+
+    /**
+     * @return El jugador leido
+     */
+    @Benchmark
+    public Jugador cargarJugadorPorNombre() {return Sesion.cargarJugadorPorNombre("bench");}
+}